@@ -8,10 +8,12 @@ import java.awt.event.ActionListener;
 import java.io.*;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public enum Client {
     INSTANCE;
@@ -19,16 +21,30 @@ public enum Client {
     private Timer roundTimer;
     private ClientGameUI ui;
     private PlayerTableModel playerTableModel;
+    // reused while open so paging doesn't stack windows; EDT only
+    private LeaderboardDialog leaderboardDialog;
+    private RoomListDialog roomListDialog;
     private final ConcurrentHashMap<Long, User> knownClients = new ConcurrentHashMap<>();
     private final User myUser = new User();
     private Socket server = null;
-    private ObjectOutputStream out = null;
-    private ObjectInputStream in = null;
+    private DataOutputStream out = null;
+    private DataInputStream in = null;
+    private WireFormat wireFormat = WireFormat.JAVA;
     private volatile boolean isRunning = true;
     private String lastKnownAddress = null;
     private int lastKnownPort = -1;
     private String lastPick = "";
     private boolean cooldownEnabled = false;
+    // round timer refresh; the countdown itself is computed from the deadline
+    private static final int TIMER_TICK_MS = 200;
+    // server wall clock minus ours, estimated from each PING
+    private volatile long serverClockOffset = 0;
+    private volatile boolean hasServerClock = false;
+    private volatile long rttNanos = -1;
+    private final AtomicLong nextTraceId = new AtomicLong();
+    // the traced pick waiting for its PICKED status; EDT only
+    private long pendingPickTrace = 0;
+    private long pendingPickNanos = 0;
 
     private Client() {
         // Constructor is empty; logger is configured in start()
@@ -56,6 +72,7 @@ public enum Client {
         ui.getAwayButton().addActionListener(e -> sendCommand("/toggleaway"));
         ui.getListRoomsButton().addActionListener(e -> sendCommand("/listrooms"));
         ui.getCreateRoomButton().addActionListener(e -> handleCreateRoom());
+        ui.getLeaderboardButton().addActionListener(e -> sendCommand("/leaderboard"));
         ActionListener pickListener = e -> {
             JButton button = (JButton) e.getSource();
             sendPick(button.getText().toLowerCase());
@@ -105,12 +122,23 @@ public enum Client {
     }
     
     private void handleReady() {
+        handleReady("");
+    }
+
+    /**
+     * @param ruleSet game variant to ask for if we're the host (e.g. rps15);
+     *                blank to go by the Extra Options checkbox
+     */
+    private void handleReady(String ruleSet) {
         if (myUser.isSpectator()) return;
         
         ReadyPayload payload = new ReadyPayload();
         // The first player in the list is considered the host and can set rules
         if (knownClients.size() <= 1 || knownClients.keySet().iterator().next() == myUser.getClientId()) {
             payload.setExtraOptionsEnabled(ui.getExtraOptionsCheck().isSelected());
+            if (!ruleSet.isBlank()) {
+                payload.setRuleSet(ruleSet.trim());
+            }
             this.cooldownEnabled = ui.getCooldownCheck().isSelected(); // Update client-side rule
             payload.setCooldownEnabled(this.cooldownEnabled);
         }
@@ -130,12 +158,16 @@ public enum Client {
         String action = parts[0].toLowerCase();
         String argument = (parts.length > 1) ? parts[1] : "";
         switch (action) {
-            case "ready": handleReady(); break;
+            case "ready": handleReady(argument); break;
             case "toggleaway": sendToggleAway(); break;
             case "pick": sendGamePick(argument); break;
             case "listrooms": sendRoomAction(argument, RoomAction.LIST); break;
             case "createroom": sendRoomAction(argument, RoomAction.CREATE); break;
             case "joinroom": sendRoomAction(argument, RoomAction.JOIN); break;
+            case "stats": sendStatsRequest(); break;
+            case "queue": sendMatchQueue(argument); break;
+            case "unqueue": sendMatchLeave(); break;
+            case "leaderboard": sendLeaderboardRequest(argument.trim()); break;
             default: return false;
         }
         return true;
@@ -146,6 +178,60 @@ public enum Client {
         payload.setPayloadType(PayloadType.TOGGLE_AWAY);
         sendToServer(payload);
     }
+
+    /**
+     * Asks the server to match us into a game with the settings of the Extra
+     * Options and Cooldown boxes
+     *
+     * @param ruleSet game variant to play (e.g. rps15); blank to go by the
+     *                Extra Options checkbox
+     */
+    private void sendMatchQueue(String ruleSet) throws IOException {
+        if (myUser.isSpectator()) return;
+        ReadyPayload payload = new ReadyPayload();
+        payload.setPayloadType(PayloadType.MATCH_QUEUE);
+        payload.setExtraOptionsEnabled(ui.getExtraOptionsCheck().isSelected());
+        this.cooldownEnabled = ui.getCooldownCheck().isSelected();
+        payload.setCooldownEnabled(this.cooldownEnabled);
+        if (!ruleSet.isBlank()) {
+            payload.setRuleSet(ruleSet.trim());
+        }
+        sendToServer(payload);
+    }
+
+    private void sendMatchLeave() throws IOException {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.MATCH_LEAVE);
+        sendToServer(payload);
+    }
+
+    /**
+     * Asks for a page of the leaderboard
+     *
+     * @param target blank for the top, #rank for the page from that rank, or
+     *               a player's name for the page around them
+     */
+    private void sendLeaderboardRequest(String target) throws IOException {
+        LeaderboardPayload payload = new LeaderboardPayload();
+        payload.setCount(LeaderboardDialog.PAGE_SIZE);
+        if (target.startsWith("#")) {
+            try {
+                payload.setStartRank(Integer.parseInt(target.substring(1)));
+            } catch (NumberFormatException e) {
+                logToUI("Usage: /leaderboard [#rank | name]");
+                return;
+            }
+        } else if (!target.isEmpty()) {
+            payload.setPlayerName(target);
+        }
+        sendToServer(payload);
+    }
+
+    private void sendStatsRequest() throws IOException {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.STATS);
+        sendToServer(payload);
+    }
     
     private void processPayload(Payload p) {
         SwingUtilities.invokeLater(() -> {
@@ -187,7 +273,18 @@ public enum Client {
                     break;
                 case ROOM_LIST:
                     if (p instanceof RoomResultPayload rrp) {
-                        new RoomListDialog(ui.getFrame(), rrp.getRooms()).setVisible(true);
+                        if (roomListDialog == null || !roomListDialog.isDisplayable()) {
+                            roomListDialog = new RoomListDialog(ui.getFrame());
+                        }
+                        roomListDialog.showPage(rrp);
+                    }
+                    break;
+                case LEADERBOARD:
+                    if (p instanceof LeaderboardPayload lp) {
+                        if (leaderboardDialog == null || !leaderboardDialog.isDisplayable()) {
+                            leaderboardDialog = new LeaderboardDialog(ui.getFrame(), myUser.getClientName());
+                        }
+                        leaderboardDialog.showPage(lp);
                     }
                     break;
                 case SYNC_POINTS:
@@ -199,6 +296,11 @@ public enum Client {
                         }
                     }
                     break;
+                case ROUND_END:
+                    if (p instanceof RoundResultPayload rrp) {
+                        showRoundResult(rrp);
+                    }
+                    break;
                 case PLAYER_STATUS:
                     if (p instanceof PlayerStatusPayload psp) {
                         User user = knownClients.get(psp.getClientId());
@@ -206,12 +308,20 @@ public enum Client {
                             user.setStatus(psp.getStatus());
                             updatePlayerList();
                         }
+                        if (psp.getTraceId() != 0 && psp.getTraceId() == pendingPickTrace
+                                && psp.getClientId() == myUser.getClientId()) {
+                            long elapsed = System.nanoTime() - pendingPickNanos;
+                            pendingPickTrace = 0;
+                            LoggerUtil.INSTANCE.info(() -> String.format(
+                                    "Pick %d confirmed after %.1f ms (ping %.1f ms)", psp.getTraceId(),
+                                    elapsed / 1e6, rttNanos < 0 ? Double.NaN : rttNanos / 1e6));
+                        }
                     }
                     break;
                 case ROUND_START:
                     if (p instanceof RoundStartPayload rsp) {
                         logToUI(rsp.getMessage());
-                        startRoundTimer(rsp.getRoundDurationSeconds());
+                        startRoundTimer(rsp.getRoundDurationSeconds(), rsp.getDeadline());
                     }
                     ui.getReadyButton().setEnabled(false);
                     ui.getExtraOptionsCheck().setEnabled(false);
@@ -241,6 +351,7 @@ public enum Client {
                     ui.getCooldownCheck().setSelected(false);
                     ui.getCooldownCheck().setEnabled(true);
                     lastPick = "";
+                    playerTableModel.setLastRound(Map.of());
                     ui.getRockButton().setEnabled(true);
                     ui.getPaperButton().setEnabled(true);
                     ui.getScissorsButton().setEnabled(true);
@@ -259,14 +370,27 @@ public enum Client {
             }
         });
     }
-    private void startRoundTimer(int seconds) {
+    /**
+     * Counts down to the server's deadline instead of counting ticks, so the
+     * label can't drift from the server's round timer
+     *
+     * @param seconds  round length, used if the deadline can't be trusted yet
+     * @param deadline server wall clock millis when picks close, or 0
+     */
+    private void startRoundTimer(int seconds, long deadline) {
         if (roundTimer != null && roundTimer.isRunning()) {
             roundTimer.stop();
         }
-        AtomicInteger timeLeft = new AtomicInteger(seconds);
-        ui.getTimerLabel().setText("Time Remaining: " + timeLeft.get());
-        roundTimer = new Timer(1000, e -> {
-            int remaining = timeLeft.decrementAndGet();
+        long localDeadline = deadline > 0 && hasServerClock ? deadline - serverClockOffset
+                : System.currentTimeMillis() + seconds * 1000L;
+        int[] shown = { secondsUntil(localDeadline) };
+        ui.getTimerLabel().setText("Time Remaining: " + shown[0]);
+        roundTimer = new Timer(TIMER_TICK_MS, e -> {
+            int remaining = secondsUntil(localDeadline);
+            if (remaining == shown[0]) {
+                return;
+            }
+            shown[0] = remaining;
             ui.getTimerLabel().setText("Time Remaining: " + remaining);
             if (remaining <= 0) {
                 ((Timer)e.getSource()).stop();
@@ -280,6 +404,40 @@ public enum Client {
         });
         roundTimer.start();
     }
+    private static int secondsUntil(long localDeadline) {
+        long millis = localDeadline - System.currentTimeMillis();
+        return millis <= 0 ? 0 : (int) ((millis + 999) / 1000);
+    }
+    /**
+     * Renders a round's outcome: totals and each player's pick in the player
+     * table, and a one-line summary per pick in the event log
+     */
+    private void showRoundResult(RoundResultPayload result) {
+        result.getPlayerPoints().forEach((id, points) -> {
+            User user = knownClients.get(id);
+            if (user != null) {
+                user.setPoints(points);
+            }
+        });
+        Map<Long, String> outcomes = new HashMap<>();
+        result.getPlayerPicks().forEach((id, pick) -> outcomes.put(id, pick + " +" + result.getDelta(id)));
+        result.getMissedPicks().forEach(id -> outcomes.put(id, "no pick"));
+        playerTableModel.setLastRound(outcomes);
+        updatePlayerList();
+
+        StringBuilder summary = new StringBuilder("--- Round " + result.getRoundNumber() + " Results ---");
+        result.getChoiceCounts().forEach((pick, count) -> summary.append(String.format("%n%s x%d: +%d each", pick,
+                count, result.getChoicePoints().getOrDefault(pick, 0))));
+        if (!result.getMissedPicks().isEmpty()) {
+            List<String> names = new ArrayList<>();
+            for (long id : result.getMissedPicks()) {
+                User user = knownClients.get(id);
+                names.add(user == null ? "#" + id : user.getClientName());
+            }
+            summary.append(String.format("%nNo pick: %s", String.join(", ", names)));
+        }
+        logToUI(summary.toString());
+    }
     private void updatePlayerList() {
         List<User> currentUsers = new ArrayList<>();
         for (User user : knownClients.values()) {
@@ -317,6 +475,23 @@ public enum Client {
         logToUI("Picked " + pick.toUpperCase());
         sendCommand("/pick " + pick);
     }
+    /**
+     * Asks for a page of the room list
+     *
+     * @param query  text the room names contain; blank for every room
+     * @param cursor the cursor from the page before, or null for the first
+     */
+    public void requestRooms(String query, String cursor) {
+        RoomResultPayload payload = new RoomResultPayload();
+        payload.setQuery(query);
+        payload.setCursor(cursor);
+        try {
+            sendToServer(payload);
+        } catch (IOException e) {
+            logToUI("Error listing rooms: " + e.getMessage());
+        }
+    }
+
     public void sendCommand(String command) {
         try {
             processClientCommand(command);
@@ -333,8 +508,14 @@ public enum Client {
             this.lastKnownAddress = address;
             this.lastKnownPort = port;
             server = new Socket(address, port);
-            out = new ObjectOutputStream(server.getOutputStream());
-            in = new ObjectInputStream(server.getInputStream());
+            out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+            out.writeInt(FrameCodec.MAGIC_NEGOTIATE);
+            out.writeByte(WireFormat.BINARY.getId());
+            out.flush();
+            in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+            WireFormat accepted = WireFormat.fromId(in.readUnsignedByte());
+            wireFormat = accepted == null ? WireFormat.JAVA : accepted;
+            LoggerUtil.INSTANCE.info("Using wire format " + wireFormat);
             LoggerUtil.INSTANCE.info("Client connected");
             CompletableFuture.runAsync(this::listenToServer);
         } catch (IOException e) {
@@ -346,8 +527,11 @@ public enum Client {
     private void listenToServer() {
         try {
             while (isRunning && isRunning) {
-                Payload fromServer = (Payload) in.readObject();
-                if (fromServer != null) {
+                Payload fromServer = FrameCodec.readFrame(in, wireFormat);
+                if (fromServer instanceof PingPayload ping) {
+                    // answered here; a busy EDT would inflate the measurement
+                    answerPing(ping);
+                } else if (fromServer != null) {
                     processPayload(fromServer);
                 }
             }
@@ -360,9 +544,22 @@ public enum Client {
         ui.getEventLog().append(message + "\n");
         ui.getEventLog().setCaretPosition(ui.getEventLog().getDocument().getLength());
     }
-    private void sendToServer(Payload payload) throws IOException {
+    /**
+     * Echoes a PING and updates our estimate of the server's clock
+     */
+    private void answerPing(PingPayload ping) throws IOException {
+        long now = System.currentTimeMillis();
+        sendToServer(ping.toPong(now));
+        rttNanos = ping.getRttNanos();
+        // the ping took about half a round trip to get here
+        long halfRtt = Math.max(0, ping.getRttNanos()) / 2_000_000;
+        serverClockOffset = ping.getServerTime() + halfRtt - now;
+        hasServerClock = true;
+    }
+    // the reader thread answers PINGs while the EDT sends everything else
+    private synchronized void sendToServer(Payload payload) throws IOException {
         if (isConnected()) {
-            out.writeObject(payload);
+            FrameCodec.writeFrame(out, payload, wireFormat);
             out.flush();
         } else {
             logToUI("Not connected to server");
@@ -372,6 +569,11 @@ public enum Client {
         Payload payload = new Payload();
         payload.setPayloadType(PayloadType.GAME_PICK);
         payload.setMessage(choice);
+        // traced so the PICKED status that comes back can be timed
+        payload.setTraceId(nextTraceId.incrementAndGet());
+        payload.setSentAt(System.currentTimeMillis());
+        pendingPickTrace = payload.getTraceId();
+        pendingPickNanos = System.nanoTime();
         sendToServer(payload);
     }
      private void sendRoomAction(String roomName, RoomAction action) throws IOException {
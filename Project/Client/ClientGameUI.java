@@ -22,7 +22,7 @@ public class ClientGameUI {
     private JCheckBox extraOptionsCheck; // <-- ADD THIS
     private JCheckBox cooldownCheck; // <-- ADD THIS
     private JButton rockButton, paperButton, scissorsButton, lizardButton, spockButton;
-    private JButton listRoomsButton, createRoomButton;
+    private JButton listRoomsButton, createRoomButton, leaderboardButton;
 
     public ClientGameUI() {
         frame = new JFrame("RPS Multiplayer Game - Milestone 3");
@@ -78,8 +78,10 @@ public class ClientGameUI {
         roomActionsPanel.setBorder(BorderFactory.createTitledBorder("Rooms"));
         listRoomsButton = new JButton("List Rooms");
         createRoomButton = new JButton("Create Room");
+        leaderboardButton = new JButton("Leaderboard");
         roomActionsPanel.add(listRoomsButton);
         roomActionsPanel.add(createRoomButton);
+        roomActionsPanel.add(leaderboardButton);
         
         JPanel gameActionsPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         gameActionsPanel.setBorder(BorderFactory.createTitledBorder("Actions"));
@@ -142,6 +144,7 @@ public class ClientGameUI {
     public JButton getSpockButton() { return spockButton; }
     public JButton getListRoomsButton() { return listRoomsButton; }
     public JButton getCreateRoomButton() { return createRoomButton; }
+    public JButton getLeaderboardButton() { return leaderboardButton; }
 
     public static void main(String[] args) {
         Client.INSTANCE.start();
@@ -0,0 +1,85 @@
+package Project.Client;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import Project.Common.LeaderboardPayload;
+
+/**
+ * Shows one page of the server's leaderboard at a time. Stays open while
+ * the player pages through it; each button asks the server for a new page
+ * and the answer replaces the table.
+ */
+public class LeaderboardDialog extends JDialog {
+    // entries asked for per page
+    public static final int PAGE_SIZE = 20;
+
+    private final DefaultTableModel model = new DefaultTableModel(
+            new String[] { "Rank", "Player", "Points", "Wins", "Games" }, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JLabel summary = new JLabel(" ");
+    private final JButton previousButton = new JButton("Previous");
+    private final JButton nextButton = new JButton("Next");
+    private int startRank = 1;
+
+    /**
+     * @param parent the game window
+     * @param me     the player's own name, for "Around Me"
+     */
+    public LeaderboardDialog(JFrame parent, String me) {
+        super(parent, "Leaderboard", false);
+        setLayout(new BorderLayout());
+        setSize(420, 460);
+        setLocationRelativeTo(parent);
+
+        add(summary, BorderLayout.NORTH);
+        add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+
+        JButton topButton = new JButton("Top");
+        JButton meButton = new JButton("Around Me");
+        JButton closeButton = new JButton("Close");
+        topButton.addActionListener(e -> Client.INSTANCE.sendCommand("/leaderboard"));
+        meButton.addActionListener(e -> Client.INSTANCE.sendCommand("/leaderboard " + me));
+        previousButton.addActionListener(
+                e -> Client.INSTANCE.sendCommand("/leaderboard #" + Math.max(1, startRank - PAGE_SIZE)));
+        nextButton.addActionListener(e -> Client.INSTANCE.sendCommand("/leaderboard #" + (startRank + PAGE_SIZE)));
+        closeButton.addActionListener(e -> dispose());
+
+        JPanel bottomPanel = new JPanel();
+        bottomPanel.add(topButton);
+        bottomPanel.add(meButton);
+        bottomPanel.add(previousButton);
+        bottomPanel.add(nextButton);
+        bottomPanel.add(closeButton);
+        add(bottomPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Replaces the table with a page from the server
+     *
+     * @param page the server's answer
+     */
+    public void showPage(LeaderboardPayload page) {
+        model.setRowCount(0);
+        for (LeaderboardPayload.Entry entry : page.getEntries()) {
+            model.addRow(new Object[] { entry.getRank(), entry.getName(), entry.getPoints(), entry.getWins(),
+                    entry.getGames() });
+        }
+        startRank = page.getStartRank();
+        int shown = page.getEntries().size();
+        if (shown == 0) {
+            summary.setText(page.getTotalPlayers() == 0 ? " No one has finished a game yet."
+                    : String.format(" No players from rank %d; %d ranked.", startRank, page.getTotalPlayers()));
+        } else {
+            summary.setText(String.format(" Ranks %d-%d of %d", startRank, startRank + shown - 1,
+                    page.getTotalPlayers()));
+        }
+        previousButton.setEnabled(startRank > 1);
+        nextButton.setEnabled(startRank + shown <= page.getTotalPlayers());
+        setVisible(true);
+    }
+}
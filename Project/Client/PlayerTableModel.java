@@ -5,11 +5,15 @@ import Project.Common.User;
 import Project.Common.PlayerStatus; // Make sure this is imported
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PlayerTableModel extends AbstractTableModel {
     private final List<User> players;
-    private final String[] columnNames = {"Player", "Score", "Status"};
+    private final String[] columnNames = {"Player", "Score", "Status", "Last Round"};
+    // what each player did last round, e.g. "rock +2", by client id
+    private final Map<Long, String> lastRound = new HashMap<>();
 
     public PlayerTableModel() {
         this.players = new ArrayList<>();
@@ -23,6 +27,17 @@ public class PlayerTableModel extends AbstractTableModel {
         fireTableDataChanged();
     }
 
+    /**
+     * Replaces the "Last Round" column
+     *
+     * @param outcomes text per client id; players not in it show blank
+     */
+    public void setLastRound(Map<Long, String> outcomes) {
+        lastRound.clear();
+        lastRound.putAll(outcomes);
+        fireTableDataChanged();
+    }
+
     @Override
     public int getRowCount() {
         return players.size();
@@ -54,6 +69,8 @@ public class PlayerTableModel extends AbstractTableModel {
                 }
                 return player.getStatus().toString();
                 // ^^^ END OF CHANGE ^^^
+            case 3:
+                return lastRound.getOrDefault(player.getClientId(), "");
             default:
                 return null;
         }
@@ -2,53 +2,93 @@ package Project.Client;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
+import Project.Common.RoomResultPayload;
 
+/**
+ * Shows a page of the server's room list and searches it. Stays open while
+ * the player searches and pages; each answer from the server replaces the
+ * list.
+ */
 public class RoomListDialog extends JDialog {
+    private final JPanel roomsPanel = new JPanel();
+    private final JTextField searchField = new JTextField(12);
+    private final JButton nextButton = new JButton("Next Page");
+    private String query = "";
+    private String cursor;
 
-    public RoomListDialog(JFrame parent, List<String> rooms) {
-        super(parent, "Available Rooms", true);
+    public RoomListDialog(JFrame parent) {
+        super(parent, "Available Rooms", false);
         setLayout(new BorderLayout());
-        setSize(300, 400);
+        setSize(420, 400);
         setLocationRelativeTo(parent);
 
-        JPanel roomsPanel = new JPanel();
-        roomsPanel.setLayout(new BoxLayout(roomsPanel, BoxLayout.Y_AXIS));
-
-        if (rooms == null || rooms.isEmpty()) {
-            roomsPanel.add(new JLabel("No rooms available."));
-        } else {
-            for (String roomName : rooms) {
-                roomsPanel.add(createRoomEntryPanel(roomName));
-            }
-        }
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(e -> Client.INSTANCE.requestRooms(searchField.getText().trim(), null));
+        searchField.addActionListener(e -> Client.INSTANCE.requestRooms(searchField.getText().trim(), null));
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        add(searchPanel, BorderLayout.NORTH);
 
+        roomsPanel.setLayout(new BoxLayout(roomsPanel, BoxLayout.Y_AXIS));
         JScrollPane scrollPane = new JScrollPane(roomsPanel);
         add(scrollPane, BorderLayout.CENTER);
 
+        JButton firstButton = new JButton("First Page");
+        firstButton.addActionListener(e -> Client.INSTANCE.requestRooms(query, null));
+        nextButton.addActionListener(e -> Client.INSTANCE.requestRooms(query, cursor));
         JButton closeButton = new JButton("Close");
         closeButton.addActionListener(e -> dispose());
         
         JPanel bottomPanel = new JPanel();
+        bottomPanel.add(firstButton);
+        bottomPanel.add(nextButton);
         bottomPanel.add(closeButton);
         add(bottomPanel, BorderLayout.SOUTH);
     }
 
-    private JPanel createRoomEntryPanel(String roomName) {
+    /**
+     * Replaces the list with a page from the server
+     *
+     * @param page the server's answer
+     */
+    public void showPage(RoomResultPayload page) {
+        query = page.getQuery() == null ? "" : page.getQuery();
+        cursor = page.getCursor();
+        searchField.setText(query);
+        roomsPanel.removeAll();
+        if (page.getRooms() == null || page.getRooms().isEmpty()) {
+            roomsPanel.add(new JLabel("No rooms available."));
+        } else {
+            for (RoomResultPayload.RoomInfo room : page.getRooms()) {
+                roomsPanel.add(createRoomEntryPanel(room));
+            }
+        }
+        nextButton.setEnabled(cursor != null);
+        roomsPanel.revalidate();
+        roomsPanel.repaint();
+        setVisible(true);
+    }
+
+    private JPanel createRoomEntryPanel(RoomResultPayload.RoomInfo room) {
         JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         panel.setBorder(BorderFactory.createEtchedBorder());
         
-        JLabel nameLabel = new JLabel(roomName);
+        JLabel nameLabel = new JLabel(room.getName());
         nameLabel.setPreferredSize(new Dimension(150, 20));
+        JLabel detailLabel = new JLabel(String.format("%d in room, %s%s", room.getMembers(), room.getRuleSet(),
+                room.isInGame() ? ", in game" : ""));
+        detailLabel.setPreferredSize(new Dimension(150, 20));
         
         JButton joinButton = new JButton("Join");
         joinButton.addActionListener(e -> {
-            Client.INSTANCE.sendCommand("/joinroom " + roomName);
+            Client.INSTANCE.sendCommand("/joinroom " + room.getName());
             dispose();
         });
 
         panel.add(nameLabel);
+        panel.add(detailLabel);
         panel.add(joinButton);
         return panel;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,375 @@
+package Project.Common;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Logging handler that hands records to a background writer.
+ * <p>
+ * Callers only claim a slot in a preallocated ring and return; one writer
+ * thread formats the records and writes them in batches, to the log file
+ * through a large buffered channel (rotating like FileHandler) and to the
+ * console. When the ring is full the caller either drops the record or waits
+ * for room, see {@link Overflow}. {@link #close()} writes out everything
+ * still queued.
+ * </p>
+ */
+public class AsyncLogHandler extends Handler {
+    /**
+     * What a caller does when the ring is full
+     */
+    public enum Overflow {
+        // lose the record (counted and reported in the log)
+        DROP,
+        // wait until the writer frees a slot
+        BLOCK;
+
+        public static Overflow fromString(String value) {
+            return "block".equalsIgnoreCase(value) ? BLOCK : DROP;
+        }
+    }
+
+    private static final int BATCH = 256;
+    private static final int WRITE_BUFFER = 256 * 1024;
+
+    // Bounded multi-producer ring: a slot's sequence says whose turn it is.
+    // sequence == position: free for the producer claiming that position;
+    // sequence == position + 1: holds a record for the writer.
+    private final LogRecord[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    private final Overflow overflow;
+    private final LogFormatter formatter;
+    private final Level fileLevel;
+    private final Level consoleLevel;
+    private final AtomicLong dropped = new AtomicLong();
+    private final WriterThread writer;
+    private volatile boolean writerParked = false;
+    private volatile boolean closed = false;
+
+    // writer thread only
+    private final String filePattern;
+    private final long fileSizeLimit;
+    private final int fileCount;
+    private final ByteBuffer fileBuffer = ByteBuffer.allocate(WRITE_BUFFER);
+    private final StringBuilder consoleBuffer = new StringBuilder();
+    private final PrintStream console = System.err;
+    private FileChannel file;
+    private long fileSize;
+
+    /**
+     * Marks the writer so formatters can tell they aren't on the logging
+     * caller's thread
+     */
+    private static class WriterThread extends Thread {
+        private WriterThread(Runnable task) {
+            super(task, "AsyncLogWriter");
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * @param config    file location, rotation, levels, ring size and
+     *                  overflow policy
+     * @param formatter formats records on the writer thread
+     * @throws IOException if the log file can't be opened
+     */
+    public AsyncLogHandler(LoggerUtil.LoggerConfig config, LogFormatter formatter) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(2, config.getAsyncBufferSize() - 1)) << 1;
+        this.records = new LogRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.overflow = config.getAsyncOverflow();
+        this.formatter = formatter;
+        this.fileLevel = config.getFileLogLevel();
+        this.consoleLevel = config.getConsoleLogLevel();
+        this.filePattern = config.getLogLocation().replace(".log", "-%g.log");
+        this.fileSizeLimit = config.getFileSizeLimit();
+        this.fileCount = Math.max(1, config.getFileCount());
+        setFormatter(formatter);
+        setLevel(fileLevel.intValue() < consoleLevel.intValue() ? fileLevel : consoleLevel);
+        openFile();
+        writer = new WriterThread(this::writeLoop);
+        writer.start();
+    }
+
+    /**
+     * @return true if the calling thread is an async writer
+     */
+    public static boolean isWriterThread() {
+        return Thread.currentThread() instanceof WriterThread;
+    }
+
+    /**
+     * @return records lost to a full ring so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // the writer runs on another thread, so pin the caller down now (or
+        // explicitly leave it out so nothing infers it later)
+        record.setSourceClassName(formatter.wantsSource(record.getLevel()) ? LogFormatter.getCallingClassName() : null);
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    records[index] = record;
+                    sequences.set(index, position + 1);
+                    if (writerParked) {
+                        LockSupport.unpark(writer);
+                    }
+                    return;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the writer hasn't freed this slot yet: full
+                if (overflow == Overflow.DROP || closed) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Waits until everything published before the call has been written.
+     */
+    @Override
+    public void flush() {
+        if (isWriterThread()) {
+            return;
+        }
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (head < target && writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Writes out the queued records and stops the writer. Later records are
+     * ignored.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                int count = drain();
+                if (count > 0) {
+                    continue;
+                }
+                if (closed) {
+                    // a producer may have claimed a slot just before close
+                    if (drain() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                writerParked = true;
+                if (head == tail.get()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                writerParked = false;
+            }
+        } finally {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException e) {
+                reportError("Couldn't close log file", e, ErrorManager.CLOSE_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Writes up to one batch of records
+     *
+     * @return number of records written
+     */
+    private int drain() {
+        int count = 0;
+        long position = head;
+        while (count < BATCH) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            LogRecord record = records[index];
+            records[index] = null;
+            // hand the slot back to producers one lap ahead
+            sequences.set(index, position + records.length);
+            position++;
+            count++;
+            write(record);
+        }
+        if (count > 0) {
+            reportDropped();
+            flushBuffers();
+            head = position;
+        }
+        return count;
+    }
+
+    private void write(LogRecord record) {
+        String text;
+        try {
+            text = getFormatter().format(record);
+        } catch (RuntimeException e) {
+            reportError("Couldn't format log record", e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        int level = record.getLevel().intValue();
+        if (level >= consoleLevel.intValue() && consoleLevel != Level.OFF) {
+            consoleBuffer.append(text);
+        }
+        if (level >= fileLevel.intValue() && fileLevel != Level.OFF) {
+            writeFile(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void reportDropped() {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            String text = String.format("AsyncLogHandler: dropped %d log records, the buffer was full%n", lost);
+            if (Level.WARNING.intValue() >= consoleLevel.intValue()) {
+                consoleBuffer.append(text);
+            }
+            if (Level.WARNING.intValue() >= fileLevel.intValue()) {
+                writeFile(text.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private void writeFile(byte[] bytes) {
+        if (file == null) {
+            return;
+        }
+        if (fileSizeLimit > 0 && fileSize > 0 && fileSize + fileBuffer.position() + bytes.length > fileSizeLimit) {
+            flushFile();
+            rotate();
+        }
+        if (bytes.length > fileBuffer.remaining()) {
+            flushFile();
+        }
+        if (bytes.length > fileBuffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes));
+        } else {
+            fileBuffer.put(bytes);
+        }
+    }
+
+    private void flushBuffers() {
+        flushFile();
+        if (consoleBuffer.length() > 0) {
+            console.print(consoleBuffer);
+            console.flush();
+            consoleBuffer.setLength(0);
+        }
+    }
+
+    private void flushFile() {
+        if (fileBuffer.position() == 0) {
+            return;
+        }
+        fileBuffer.flip();
+        writeFully(fileBuffer);
+        fileBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) {
+        if (file == null) {
+            return;
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                fileSize += file.write(buffer);
+            }
+        } catch (IOException e) {
+            reportError("Couldn't write log file", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private Path logFile(int generation) {
+        return Paths.get(filePattern.replace("%g", Integer.toString(generation)));
+    }
+
+    private void openFile() throws IOException {
+        Path path = logFile(0);
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileSize = file.size();
+    }
+
+    /**
+     * Same scheme as FileHandler: -0 is current, older logs move up one
+     * generation and the oldest is deleted
+     */
+    private void rotate() {
+        try {
+            file.close();
+            for (int generation = fileCount - 2; generation >= 0; generation--) {
+                Path from = logFile(generation);
+                if (Files.exists(from)) {
+                    Files.move(from, logFile(generation + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (fileCount == 1) {
+                Files.deleteIfExists(logFile(0));
+            }
+            openFile();
+        } catch (IOException e) {
+            file = null;
+            reportError("Couldn't rotate log file", e, ErrorManager.OPEN_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package Project.Common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact hand-written encoding for the Payload hierarchy.
+ * <p>
+ * Every frame starts with the PayloadType ordinal, then a shape byte naming
+ * the Payload subclass (one PayloadType can travel as different classes, e.g.
+ * ROOM_JOIN as a plain Payload from the client and a ConnectionPayload from
+ * the server), then the common fields and the subclass fields. Numbers are
+ * zig-zag varints and strings are length-prefixed UTF-8, so a typical chat
+ * message is a few dozen bytes instead of several hundred. A traced payload
+ * sets the high bit of the shape byte and carries its trace id and send time
+ * after the common fields.
+ * </p>
+ * <p>
+ * Note: new PayloadTypes must be appended to the enum so existing ordinals
+ * stay stable on the wire.
+ * </p>
+ */
+public abstract class BinaryPayloadCodec {
+    private static final byte SHAPE_PAYLOAD = 0;
+    private static final byte SHAPE_CONNECTION = 1;
+    private static final byte SHAPE_POINTS = 2;
+    private static final byte SHAPE_PLAYER_STATUS = 3;
+    private static final byte SHAPE_ROUND_START = 4;
+    private static final byte SHAPE_GAME_RESULT = 5;
+    private static final byte SHAPE_ROOM_RESULT = 6;
+    private static final byte SHAPE_READY = 7;
+    private static final byte SHAPE_ROOM_LIST = 8;
+    private static final byte SHAPE_ROUND_RESULT = 9;
+    private static final byte SHAPE_PING = 10;
+    private static final byte SHAPE_LEADERBOARD = 11;
+    // set on the shape byte when the trace id and send time follow the common fields
+    private static final int TRACED = 0x80;
+    // a null enum, written as -1
+    private static final int NO_ORDINAL = 0xFF;
+
+    private static final PayloadType[] TYPES = PayloadType.values();
+    private static final PlayerStatus[] STATUSES = PlayerStatus.values();
+
+    /**
+     * Encodes a Payload into a new byte array.
+     *
+     * @param payload the Payload to encode
+     * @return the encoded bytes
+     * @throws IOException if the Payload class isn't supported
+     */
+    public static byte[] encode(Payload payload) throws IOException {
+        Writer out = new Writer(64);
+        write(out, payload);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a Payload previously produced by {@link #encode(Payload)}.
+     *
+     * @param data   buffer holding the encoded Payload
+     * @param offset start of the Payload in the buffer
+     * @param length number of bytes
+     * @return the decoded Payload
+     * @throws IOException if the data is truncated or malformed
+     */
+    public static Payload decode(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, length);
+        Payload payload = read(in);
+        if (in.position != in.limit) {
+            throw new IOException("Trailing bytes after " + payload.getPayloadType());
+        }
+        return payload;
+    }
+
+    private static void write(Writer out, Payload payload) throws IOException {
+        PayloadType type = payload.getPayloadType();
+        out.writeByte(type == null ? -1 : type.ordinal());
+        // subclasses first, most specific to least
+        if (payload instanceof ConnectionPayload cp) {
+            writeHeader(out, SHAPE_CONNECTION, payload);
+            out.writeString(cp.getClientName());
+            out.writeBoolean(cp.isSpectator());
+        } else if (payload instanceof PointsPayload pp) {
+            writeHeader(out, SHAPE_POINTS, payload);
+            out.writeString(pp.getClientName());
+            out.writeVarLong(pp.getPoints());
+        } else if (payload instanceof PlayerStatusPayload psp) {
+            writeHeader(out, SHAPE_PLAYER_STATUS, payload);
+            out.writeByte(psp.getStatus() == null ? -1 : psp.getStatus().ordinal());
+        } else if (payload instanceof RoundStartPayload rsp) {
+            writeHeader(out, SHAPE_ROUND_START, payload);
+            out.writeVarLong(rsp.getRoundNumber());
+            out.writeVarLong(rsp.getRoundDurationSeconds());
+            out.writeVarLong(rsp.getDeadline());
+        } else if (payload instanceof GameResultPayload grp) {
+            writeHeader(out, SHAPE_GAME_RESULT, payload);
+            out.writeString(grp.getWinnerName());
+            writeChoices(out, grp.getPlayerChoices());
+            writePoints(out, grp.getPlayerPoints());
+            writeUsers(out, grp.getEliminatedPlayers());
+        } else if (payload instanceof RoomResultPayload rrp) {
+            writeHeader(out, SHAPE_ROOM_RESULT, payload);
+            out.writeString(rrp.getQuery());
+            out.writeString(rrp.getCursor());
+            out.writeVarLong(rrp.getLimit());
+            writeRoomInfo(out, rrp.getRooms());
+        } else if (payload instanceof ReadyPayload rp) {
+            writeHeader(out, SHAPE_READY, payload);
+            out.writeBoolean(rp.areExtraOptionsEnabled());
+            out.writeBoolean(rp.isCooldownEnabled());
+            out.writeString(rp.getRuleSet());
+        } else if (payload instanceof RoomListPayload rlp) {
+            writeHeader(out, SHAPE_ROOM_LIST, payload);
+            writeStrings(out, rlp.getRooms());
+            out.writeString(rlp.getWinnerName());
+            writeChoices(out, rlp.getPlayerChoices());
+            writePoints(out, rlp.getPlayerPoints());
+            writeUsers(out, rlp.getEliminatedPlayers());
+        } else if (payload instanceof RoundResultPayload rrp) {
+            writeHeader(out, SHAPE_ROUND_RESULT, payload);
+            out.writeVarLong(rrp.getRoundNumber());
+            writeCounts(out, rrp.getChoicePoints());
+            writePicks(out, rrp.getPlayerPicks(), rrp.getChoicePoints());
+            writeIds(out, rrp.getMissedPicks());
+            writeTotals(out, rrp.getPlayerPoints());
+        } else if (payload instanceof PingPayload ping) {
+            writeHeader(out, SHAPE_PING, payload);
+            out.writeVarLong(ping.getPingNanos());
+            out.writeVarLong(ping.getServerTime());
+            out.writeVarLong(ping.getRttNanos());
+            out.writeVarLong(ping.getClientTime());
+        } else if (payload instanceof LeaderboardPayload lp) {
+            writeHeader(out, SHAPE_LEADERBOARD, payload);
+            out.writeString(lp.getPlayerName());
+            out.writeVarLong(lp.getStartRank());
+            out.writeVarLong(lp.getCount());
+            out.writeVarLong(lp.getTotalPlayers());
+            writeEntries(out, lp.getEntries());
+        } else if (payload.getClass() == Payload.class) {
+            writeHeader(out, SHAPE_PAYLOAD, payload);
+        } else {
+            throw new IOException("No binary encoding for " + payload.getClass().getName());
+        }
+    }
+
+    private static Payload read(Reader in) throws IOException {
+        int typeOrdinal = in.readByte() & 0xFF;
+        PayloadType type = null;
+        if (typeOrdinal != NO_ORDINAL) {
+            if (typeOrdinal >= TYPES.length) {
+                throw new IOException("Unknown PayloadType ordinal " + typeOrdinal);
+            }
+            type = TYPES[typeOrdinal];
+        }
+        int shape = in.readByte() & 0xFF;
+        long clientId = in.readVarLong();
+        String message = in.readString();
+        long traceId = 0;
+        long sentAt = 0;
+        if ((shape & TRACED) != 0) {
+            shape &= ~TRACED;
+            traceId = in.readVarLong();
+            sentAt = in.readVarLong();
+        }
+        Payload payload;
+        switch (shape) {
+            case SHAPE_PAYLOAD:
+                payload = new Payload();
+                break;
+            case SHAPE_CONNECTION: {
+                ConnectionPayload cp = new ConnectionPayload();
+                cp.setClientName(in.readString());
+                cp.setSpectator(in.readBoolean());
+                payload = cp;
+                break;
+            }
+            case SHAPE_POINTS: {
+                PointsPayload pp = new PointsPayload();
+                pp.setClientName(in.readString());
+                pp.setPoints((int) in.readVarLong());
+                payload = pp;
+                break;
+            }
+            case SHAPE_PLAYER_STATUS: {
+                payload = new PlayerStatusPayload(clientId, readStatus(in));
+                break;
+            }
+            case SHAPE_ROUND_START: {
+                int round = (int) in.readVarLong();
+                int duration = (int) in.readVarLong();
+                RoundStartPayload rsp = new RoundStartPayload(round, duration);
+                rsp.setDeadline(in.readVarLong());
+                payload = rsp;
+                break;
+            }
+            case SHAPE_GAME_RESULT: {
+                GameResultPayload grp = new GameResultPayload();
+                grp.setWinnerName(in.readString());
+                grp.setPlayerChoices(readChoices(in));
+                grp.setPlayerPoints(readPoints(in));
+                grp.setEliminatedPlayers(readUsers(in));
+                payload = grp;
+                break;
+            }
+            case SHAPE_ROOM_RESULT: {
+                RoomResultPayload rrp = new RoomResultPayload();
+                rrp.setQuery(in.readString());
+                rrp.setCursor(in.readString());
+                rrp.setLimit((int) in.readVarLong());
+                rrp.setRooms(readRoomInfo(in));
+                payload = rrp;
+                break;
+            }
+            case SHAPE_READY: {
+                ReadyPayload rp = new ReadyPayload();
+                rp.setExtraOptionsEnabled(in.readBoolean());
+                rp.setCooldownEnabled(in.readBoolean());
+                rp.setRuleSet(in.readString());
+                payload = rp;
+                break;
+            }
+            case SHAPE_ROOM_LIST: {
+                RoomListPayload rlp = new RoomListPayload();
+                rlp.setRooms(readStrings(in));
+                rlp.setWinnerName(in.readString());
+                rlp.setPlayerChoices(readChoices(in));
+                rlp.setPlayerPoints(readPoints(in));
+                rlp.setEliminatedPlayers(readUsers(in));
+                payload = rlp;
+                break;
+            }
+            case SHAPE_ROUND_RESULT: {
+                RoundResultPayload rrp = new RoundResultPayload();
+                rrp.setRoundNumber((int) in.readVarLong());
+                rrp.setChoicePoints(readCounts(in));
+                rrp.setPlayerPicks(readPicks(in, rrp.getChoicePoints()));
+                rrp.setMissedPicks(readIds(in));
+                rrp.setPlayerPoints(readTotals(in));
+                payload = rrp;
+                break;
+            }
+            case SHAPE_PING: {
+                PingPayload ping = new PingPayload();
+                ping.setPingNanos(in.readVarLong());
+                ping.setServerTime(in.readVarLong());
+                ping.setRttNanos(in.readVarLong());
+                ping.setClientTime(in.readVarLong());
+                payload = ping;
+                break;
+            }
+            case SHAPE_LEADERBOARD: {
+                LeaderboardPayload lp = new LeaderboardPayload();
+                lp.setPlayerName(in.readString());
+                lp.setStartRank((int) in.readVarLong());
+                lp.setCount((int) in.readVarLong());
+                lp.setTotalPlayers((int) in.readVarLong());
+                lp.setEntries(readEntries(in));
+                payload = lp;
+                break;
+            }
+            default:
+                throw new IOException("Unknown payload shape " + shape);
+        }
+        payload.setPayloadType(type);
+        payload.setClientId(clientId);
+        payload.setMessage(message);
+        payload.setTraceId(traceId);
+        payload.setSentAt(sentAt);
+        return payload;
+    }
+
+    /**
+     * Writes the shape byte and the fields every Payload has; untraced
+     * payloads don't pay for the trace fields
+     */
+    private static void writeHeader(Writer out, byte shape, Payload payload) {
+        boolean traced = payload.getTraceId() != 0;
+        out.writeByte(traced ? shape | TRACED : shape);
+        out.writeVarLong(payload.getClientId());
+        out.writeString(payload.getMessage());
+        if (traced) {
+            out.writeVarLong(payload.getTraceId());
+            out.writeVarLong(payload.getSentAt());
+        }
+    }
+
+    private static void writeUser(Writer out, User user) {
+        out.writeVarLong(user.getClientId());
+        out.writeString(user.getClientName());
+        out.writeVarLong(user.getPoints());
+        out.writeByte(user.getStatus() == null ? -1 : user.getStatus().ordinal());
+        out.writeBoolean(user.isSpectator());
+    }
+
+    private static User readUser(Reader in) throws IOException {
+        User user = new User();
+        user.setClientId(in.readVarLong());
+        user.setClientName(in.readString());
+        user.setPoints((int) in.readVarLong());
+        PlayerStatus status = readStatus(in);
+        boolean spectator = in.readBoolean();
+        // setSpectator also forces SPECTATING, so apply the status last
+        user.setSpectator(spectator);
+        user.setStatus(status);
+        return user;
+    }
+
+    private static PlayerStatus readStatus(Reader in) throws IOException {
+        int ordinal = in.readByte() & 0xFF;
+        if (ordinal == NO_ORDINAL) {
+            return null;
+        }
+        if (ordinal >= STATUSES.length) {
+            throw new IOException("Unknown PlayerStatus ordinal " + ordinal);
+        }
+        return STATUSES[ordinal];
+    }
+
+    private static void writeChoices(Writer out, Map<User, String> choices) {
+        out.writeVarLong(choices == null ? -1 : choices.size());
+        if (choices != null) {
+            for (Map.Entry<User, String> entry : choices.entrySet()) {
+                writeUser(out, entry.getKey());
+                out.writeString(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<User, String> readChoices(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        Map<User, String> choices = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            choices.put(readUser(in), in.readString());
+        }
+        return choices;
+    }
+
+    private static void writePoints(Writer out, Map<User, Integer> points) {
+        out.writeVarLong(points == null ? -1 : points.size());
+        if (points != null) {
+            for (Map.Entry<User, Integer> entry : points.entrySet()) {
+                writeUser(out, entry.getKey());
+                out.writeVarLong(entry.getValue() == null ? 0 : entry.getValue());
+            }
+        }
+    }
+
+    private static Map<User, Integer> readPoints(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        Map<User, Integer> points = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            points.put(readUser(in), (int) in.readVarLong());
+        }
+        return points;
+    }
+
+    private static void writeUsers(Writer out, Set<User> users) {
+        out.writeVarLong(users == null ? -1 : users.size());
+        if (users != null) {
+            for (User user : users) {
+                writeUser(out, user);
+            }
+        }
+    }
+
+    private static Set<User> readUsers(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        Set<User> users = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            users.add(readUser(in));
+        }
+        return users;
+    }
+
+    private static void writeCounts(Writer out, Map<String, Integer> counts) {
+        out.writeVarLong(counts == null ? -1 : counts.size());
+        if (counts != null) {
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeVarLong(entry.getValue() == null ? 0 : entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Integer> readCounts(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        // keeps the sender's order
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            counts.put(in.readString(), (int) in.readVarLong());
+        }
+        return counts;
+    }
+
+    /**
+     * Writes each pick as its position among the round's choices, so a
+     * player's pick costs a byte instead of the whole name
+     */
+    private static void writePicks(Writer out, Map<Long, String> picks, Map<String, Integer> choices) {
+        out.writeVarLong(picks == null ? -1 : picks.size());
+        if (picks == null) {
+            return;
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        if (choices != null) {
+            for (String choice : choices.keySet()) {
+                positions.put(choice, positions.size());
+            }
+        }
+        for (Map.Entry<Long, String> entry : picks.entrySet()) {
+            out.writeVarLong(entry.getKey());
+            Integer position = positions.get(entry.getValue());
+            out.writeVarLong(position == null ? -1 : position);
+            if (position == null) {
+                out.writeString(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<Long, String> readPicks(Reader in, Map<String, Integer> choices) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<String> order = choices == null ? new ArrayList<>() : new ArrayList<>(choices.keySet());
+        Map<Long, String> picks = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            long clientId = in.readVarLong();
+            int position = (int) in.readVarLong();
+            if (position < -1 || position >= order.size()) {
+                throw new IOException("Pick position " + position + " out of range");
+            }
+            picks.put(clientId, position < 0 ? in.readString() : order.get(position));
+        }
+        return picks;
+    }
+
+    private static void writeIds(Writer out, List<Long> ids) {
+        out.writeVarLong(ids == null ? -1 : ids.size());
+        if (ids != null) {
+            for (long id : ids) {
+                out.writeVarLong(id);
+            }
+        }
+    }
+
+    private static List<Long> readIds(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(in.readVarLong());
+        }
+        return ids;
+    }
+
+    private static void writeTotals(Writer out, Map<Long, Integer> totals) {
+        out.writeVarLong(totals == null ? -1 : totals.size());
+        if (totals != null) {
+            for (Map.Entry<Long, Integer> entry : totals.entrySet()) {
+                out.writeVarLong(entry.getKey());
+                out.writeVarLong(entry.getValue() == null ? 0 : entry.getValue());
+            }
+        }
+    }
+
+    private static Map<Long, Integer> readTotals(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        Map<Long, Integer> totals = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            totals.put(in.readVarLong(), (int) in.readVarLong());
+        }
+        return totals;
+    }
+
+    private static void writeRoomInfo(Writer out, List<RoomResultPayload.RoomInfo> rooms) {
+        out.writeVarLong(rooms == null ? -1 : rooms.size());
+        if (rooms != null) {
+            for (RoomResultPayload.RoomInfo room : rooms) {
+                out.writeString(room.getName());
+                out.writeVarLong(room.getMembers());
+                out.writeBoolean(room.isInGame());
+                out.writeString(room.getRuleSet());
+            }
+        }
+    }
+
+    private static List<RoomResultPayload.RoomInfo> readRoomInfo(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<RoomResultPayload.RoomInfo> rooms = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rooms.add(new RoomResultPayload.RoomInfo(in.readString(), (int) in.readVarLong(), in.readBoolean(),
+                    in.readString()));
+        }
+        return rooms;
+    }
+
+    /**
+     * Writes a page of leaderboard entries; ranks are consecutive, so only
+     * the first is sent
+     */
+    private static void writeEntries(Writer out, List<LeaderboardPayload.Entry> entries) {
+        out.writeVarLong(entries == null ? -1 : entries.size());
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        out.writeVarLong(entries.get(0).getRank());
+        for (LeaderboardPayload.Entry entry : entries) {
+            out.writeString(entry.getName());
+            out.writeVarLong(entry.getPoints());
+            out.writeVarLong(entry.getWins());
+            out.writeVarLong(entry.getGames());
+        }
+    }
+
+    private static List<LeaderboardPayload.Entry> readEntries(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<LeaderboardPayload.Entry> entries = new ArrayList<>(size);
+        if (size == 0) {
+            return entries;
+        }
+        int rank = (int) in.readVarLong();
+        for (int i = 0; i < size; i++) {
+            entries.add(new LeaderboardPayload.Entry(rank + i, in.readString(), in.readVarLong(),
+                    (int) in.readVarLong(), (int) in.readVarLong()));
+        }
+        return entries;
+    }
+
+    private static void writeStrings(Writer out, List<String> values) {
+        out.writeVarLong(values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                out.writeString(value);
+            }
+        }
+    }
+
+    private static List<String> readStrings(Reader in) throws IOException {
+        int size = in.readLength();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readString());
+        }
+        return values;
+    }
+
+    /**
+     * Growable byte buffer with varint helpers
+     */
+    private static class Writer {
+        private byte[] buffer;
+        private int position = 0;
+
+        private Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                byte[] larger = new byte[Math.max(buffer.length * 2, position + extra)];
+                System.arraycopy(buffer, 0, larger, 0, position);
+                buffer = larger;
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarLong(-1);
+                return;
+            }
+            int length = value.length();
+            // fast path for ASCII, which is nearly everything we send
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if (ascii) {
+                writeVarLong(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+            } else {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(utf8.length);
+                ensure(utf8.length);
+                System.arraycopy(utf8, 0, buffer, position, utf8.length);
+                position += utf8.length;
+            }
+        }
+
+        private byte[] toByteArray() {
+            byte[] result = new byte[position];
+            System.arraycopy(buffer, 0, result, 0, position);
+            return result;
+        }
+    }
+
+    /**
+     * Bounds-checked reader over an encoded Payload
+     */
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+        private final int limit;
+
+        private Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Truncated payload");
+            }
+            return data[position++];
+        }
+
+        private boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        private long readVarLong() throws IOException {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readLength() throws IOException {
+            long length = readVarLong();
+            if (length < -1 || length > limit - position) {
+                throw new IOException("Invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        private String readString() throws IOException {
+            int length = readLength();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
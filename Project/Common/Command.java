@@ -22,7 +22,10 @@ public enum Command {
 
     // Milestone 2 game session commands
     READY("ready"),   // Used to signal that a player is ready
-    PICK("pick");     // Used to pick a move like rock, paper, scissors
+    PICK("pick"),     // Used to pick a move like rock, paper, scissors
+
+    // Admin commands
+    STATS("stats");   // Shows the server's metrics report
 
     // Map to link command strings to enum
     private static final HashMap<String, Command> BY_COMMAND = new HashMap<>();
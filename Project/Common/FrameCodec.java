@@ -0,0 +1,189 @@
+package Project.Common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Length-prefixed framing for Payloads.
+ * <p>
+ * A framed connection starts with {@link #MAGIC} and then sends each Payload as
+ * a 4 byte length followed by that many bytes of a self-contained serialized
+ * Payload. Unlike a long-lived ObjectOutputStream, every frame can be decoded
+ * on its own, which is what the non-blocking server needs.
+ * </p>
+ * <p>
+ * Clients that open with {@link #MAGIC_NEGOTIATE} follow it with the id of
+ * their preferred {@link WireFormat}; the server answers with one byte naming
+ * the format both sides use from then on.
+ * </p>
+ */
+public abstract class FrameCodec {
+    /**
+     * Connection header sent by framed clients ("RPS1")
+     */
+    public static final int MAGIC = 0x52505331;
+    /**
+     * Connection header for clients that negotiate a WireFormat ("RPS2")
+     */
+    public static final int MAGIC_NEGOTIATE = 0x52505332;
+    /**
+     * Largest frame we are willing to buffer for a single Payload
+     */
+    public static final int MAX_FRAME_SIZE = 1024 * 1024;
+    private static final int OBJECT_STREAM_MAGIC = 0xACED;
+
+    /**
+     * Checks whether the first 4 bytes of a connection are a Java
+     * ObjectOutputStream header (legacy clients).
+     *
+     * @param header first 4 bytes read from the socket
+     * @return true if the client is speaking plain object streams
+     */
+    public static boolean isObjectStreamHeader(int header) {
+        return (header >>> 16) == OBJECT_STREAM_MAGIC;
+    }
+
+    /**
+     * Validates a frame length read off the wire.
+     *
+     * @param length declared frame length
+     * @throws IOException if the length is negative or larger than
+     *                     {@link #MAX_FRAME_SIZE}
+     */
+    public static void checkFrameLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length);
+        }
+    }
+
+    /**
+     * Picks the format the server will use for a client's preference.
+     *
+     * @param requested format id sent by the client
+     * @return the requested format if known, otherwise JAVA
+     */
+    public static WireFormat negotiate(int requested) {
+        WireFormat format = WireFormat.fromId(requested);
+        return format == null ? WireFormat.JAVA : format;
+    }
+
+    /**
+     * Encodes a single Payload with the given format.
+     *
+     * @param payload the Payload to encode
+     * @param format  the body encoding
+     * @return the encoded bytes (without the length prefix)
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encode(Payload payload, WireFormat format) throws IOException {
+        return format == WireFormat.BINARY ? BinaryPayloadCodec.encode(payload) : encode(payload);
+    }
+
+    /**
+     * Decodes a frame body with the given format.
+     *
+     * @param data   buffer holding the frame
+     * @param offset start of the frame in the buffer
+     * @param length number of bytes in the frame
+     * @param format the body encoding
+     * @return the decoded Payload
+     * @throws IOException            if the frame is corrupt
+     * @throws ClassNotFoundException if a JAVA frame references an unknown class
+     */
+    public static Payload decode(byte[] data, int offset, int length, WireFormat format)
+            throws IOException, ClassNotFoundException {
+        return format == WireFormat.BINARY ? BinaryPayloadCodec.decode(data, offset, length)
+                : decode(data, offset, length);
+    }
+
+    /**
+     * Serializes a single Payload into a standalone byte array.
+     *
+     * @param payload the Payload to encode
+     * @return the encoded bytes (without the length prefix)
+     * @throws IOException if serialization fails
+     */
+    public static byte[] encode(Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(payload);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a Payload previously produced by {@link #encode(Payload)}.
+     *
+     * @param data   buffer holding the frame
+     * @param offset start of the frame in the buffer
+     * @param length number of bytes in the frame
+     * @return the decoded Payload
+     * @throws IOException            if the frame is corrupt
+     * @throws ClassNotFoundException if the frame references an unknown class
+     */
+    public static Payload decode(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return (Payload) in.readObject();
+        }
+    }
+
+    /**
+     * Writes one length-prefixed frame. The caller is responsible for flushing.
+     *
+     * @param out     destination stream
+     * @param payload the Payload to send
+     * @throws IOException if the write fails
+     */
+    public static void writeFrame(DataOutputStream out, Payload payload) throws IOException {
+        writeFrame(out, payload, WireFormat.JAVA);
+    }
+
+    /**
+     * Writes one length-prefixed frame in the given format. The caller is
+     * responsible for flushing.
+     *
+     * @param out     destination stream
+     * @param payload the Payload to send
+     * @param format  the body encoding
+     * @throws IOException if the write fails
+     */
+    public static void writeFrame(DataOutputStream out, Payload payload, WireFormat format) throws IOException {
+        byte[] data = encode(payload, format);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * Blocks until one full frame is read and decodes it.
+     *
+     * @param in source stream
+     * @return the decoded Payload
+     * @throws IOException            if the stream closes or the frame is invalid
+     * @throws ClassNotFoundException if the frame references an unknown class
+     */
+    public static Payload readFrame(DataInputStream in) throws IOException, ClassNotFoundException {
+        return readFrame(in, WireFormat.JAVA);
+    }
+
+    /**
+     * Blocks until one full frame is read and decodes it with the given format.
+     *
+     * @param in     source stream
+     * @param format the body encoding
+     * @return the decoded Payload
+     * @throws IOException            if the stream closes or the frame is invalid
+     * @throws ClassNotFoundException if a JAVA frame references an unknown class
+     */
+    public static Payload readFrame(DataInputStream in, WireFormat format) throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        checkFrameLength(length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return decode(data, 0, length, format);
+    }
+}
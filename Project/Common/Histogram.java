@@ -0,0 +1,203 @@
+package Project.Common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-memory, lock-free histogram of non-negative long values (usually
+ * nanoseconds).
+ * <p>
+ * Buckets are log-linear like HdrHistogram: values below 64 get a bucket
+ * each, and every power of two above that is split into 32 equal buckets, so
+ * any recorded value is known to within about 3%. That's 1888 counters for
+ * the whole long range, allocated once. Recording is a couple of atomic
+ * increments and never blocks.
+ * </p>
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * A point-in-time copy of a histogram's statistics
+     */
+    public static class Snapshot {
+        private final String name;
+        private final long count;
+        private final long[] counts;
+        private final double mean;
+        private final long max;
+
+        private Snapshot(String name, long[] counts, long sum, long max) {
+            this.name = name;
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.mean = total == 0 ? 0 : sum / (double) total;
+            this.max = max;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile 0 to 100
+         * @return the highest value equivalent to the one at that percentile,
+         *         or 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(max, highestEquivalentValue(i));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return e.g. "decode: n=120 mean=4.1us p50=3.9us p90=6.0us p99=11.9us
+         *         p99.9=40.2us max=40.2us", treating the values as nanoseconds
+         */
+        @Override
+        public String toString() {
+            return String.format("%s: n=%d mean=%s p50=%s p90=%s p99=%s p99.9=%s max=%s", name, count,
+                    formatNanos(mean), formatNanos(getValueAtPercentile(50)), formatNanos(getValueAtPercentile(90)),
+                    formatNanos(getValueAtPercentile(99)), formatNanos(getValueAtPercentile(99.9)),
+                    formatNanos(max));
+        }
+    }
+
+    /**
+     * @param name shown in snapshots
+     */
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a value. Negative values count as 0.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time since a System.nanoTime() reading
+     *
+     * @param startNanos the earlier reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return values recorded so far
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Copies the current statistics. Values recorded while copying may or may
+     * not be included.
+     *
+     * @return the copy
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(name, copy, sum.sum(), max.get());
+    }
+
+    /**
+     * Clears every count
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        if (shift <= 0) {
+            return index;
+        }
+        return (long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        return index + 1 < BUCKETS ? lowestEquivalentValue(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param nanos a duration
+     * @return it in the most readable of ns, us, ms or s
+     */
+    public static String formatNanos(double nanos) {
+        if (nanos < 1_000) {
+            return String.format("%.0fns", nanos);
+        } else if (nanos < 1_000_000) {
+            return String.format("%.1fus", nanos / 1_000);
+        } else if (nanos < 1_000_000_000) {
+            return String.format("%.1fms", nanos / 1_000_000);
+        }
+        return String.format("%.2fs", nanos / 1_000_000_000);
+    }
+}
@@ -0,0 +1,147 @@
+package Project.Common;
+
+/**
+ * Minimal JSON builder for diagnostics output (admin endpoint, log tools).
+ * Commas between members and elements are inserted automatically.
+ *
+ * <pre>
+ * new JsonWriter().beginObject().name("rooms").value(3).endObject().toString()
+ * </pre>
+ */
+public class JsonWriter {
+    private final StringBuilder sb = new StringBuilder();
+    // true when the next value or name needs a comma in front of it
+    private boolean needsComma = false;
+
+    public JsonWriter beginObject() {
+        separate();
+        sb.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        sb.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        sb.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        sb.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Starts an object member; follow it with a value or begin call
+     *
+     * @param name member name
+     * @return this
+     */
+    public JsonWriter name(String name) {
+        separate();
+        quote(sb, name);
+        sb.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(sb, value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        separate();
+        // JSON has no NaN or Infinity
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    private void separate() {
+        if (needsComma) {
+            sb.append(',');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    /**
+     * @param value a string, or null
+     * @return it as a JSON string literal, or null
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2);
+        quote(out, value);
+        return out.toString();
+    }
+
+    private static void quote(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,143 @@
+package Project.Common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the server-wide leaderboard, asked for and answered with the
+ * same payload.
+ * <p>
+ * The client sets either a {@link #getPlayerName() player}, for the page
+ * around that player's rank, or a {@link #getStartRank() start rank}, for
+ * the page from there down; rank 1 is the top. The server echoes both,
+ * with the start rank of the page it found, and fills in the entries and
+ * the number of ranked players.
+ * </p>
+ */
+public class LeaderboardPayload extends Payload {
+    private String playerName;
+    private int startRank = 1;
+    private int count;
+    private int totalPlayers;
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * One ranked player
+     */
+    public static class Entry implements Serializable {
+        private final int rank;
+        private final String name;
+        private final long points;
+        private final int wins;
+        private final int games;
+
+        public Entry(int rank, String name, long points, int wins, int games) {
+            this.rank = rank;
+            this.name = name;
+            this.points = points;
+            this.wins = wins;
+            this.games = games;
+        }
+
+        /**
+         * @return 1 for the top player
+         */
+        public int getRank() {
+            return rank;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return points over every finished game
+         */
+        public long getPoints() {
+            return points;
+        }
+
+        /**
+         * @return games won, ties included
+         */
+        public int getWins() {
+            return wins;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %d points, %d wins in %d games", rank, name, points, wins, games);
+        }
+    }
+
+    public LeaderboardPayload() {
+        setPayloadType(PayloadType.LEADERBOARD);
+    }
+
+    /**
+     * @return the player whose page this is, or null for a page by rank
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public void setPlayerName(String playerName) {
+        this.playerName = playerName;
+    }
+
+    /**
+     * @return the rank of the page's first entry
+     */
+    public int getStartRank() {
+        return startRank;
+    }
+
+    public void setStartRank(int startRank) {
+        this.startRank = startRank;
+    }
+
+    /**
+     * @return entries wanted; the server caps it
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * @return how many players are ranked in all
+     */
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    public void setTotalPlayers(int totalPlayers) {
+        this.totalPlayers = totalPlayers;
+    }
+
+    /**
+     * @return the page, best rank first
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(" Leaderboard [%s from #%d, %d of %d]",
+                playerName == null ? "top" : playerName, startRank, entries == null ? 0 : entries.size(),
+                totalPlayers);
+    }
+}
@@ -0,0 +1,195 @@
+package Project.Common;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats log records as
+ *
+ * <pre>
+ * MM/dd/yyyy HH:mm:ss [calling.Class] (LEVEL):
+ * &gt; message
+ * </pre>
+ *
+ * without per-record garbage beyond the returned String: the timestamp is
+ * rendered once per second and shared, the line is built in a per-thread
+ * StringBuilder, and the level names are constants. Finding the calling class
+ * walks the stack, so it's only done for records at or above the source
+ * level; below it the source prints as "-".
+ */
+public class LogFormatter extends Formatter {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static final String LOGGER_PACKAGE = LogFormatter.class.getPackage().getName();
+    private static final String RESET = "\u001B[0m";
+    private static final String RED = "\u001B[31m";
+    private static final String GREEN = "\u001B[32m";
+    private static final String YELLOW = "\u001B[33m";
+    private static final String BLUE = "\u001B[34m";
+    private static final String PURPLE = "\u001B[35m";
+    private static final String CYAN = "\u001B[36m";
+    private static final String WHITE = "\u001B[37m";
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /**
+     * Timestamp text for one second
+     */
+    private static class Stamp {
+        private final long second;
+        private final String text;
+
+        private Stamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    private static volatile Stamp stamp = new Stamp(Long.MIN_VALUE, "");
+
+    private final int stackTraceLimit;
+    private final int sourceLevel;
+
+    /**
+     * @param stackTraceLimit maximum stack trace elements shown per throwable
+     * @param sourceLevel     records at or above this level show the calling
+     *                        class
+     */
+    public LogFormatter(int stackTraceLimit, Level sourceLevel) {
+        this.stackTraceLimit = stackTraceLimit;
+        this.sourceLevel = sourceLevel.intValue();
+    }
+
+    /**
+     * @param level a record's level
+     * @return true if records at this level show the calling class
+     */
+    public boolean wantsSource(Level level) {
+        return level.intValue() >= sourceLevel;
+    }
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        sb.append(timestamp(record.getMillis())).append(" [");
+        if (wantsSource(record.getLevel())) {
+            // the async writer can't see the caller; it was recorded when the record was queued
+            String source = AsyncLogHandler.isWriterThread() ? null : getCallingClassName();
+            if (source == null) {
+                source = record.getSourceClassName();
+            }
+            sb.append(source != null ? source : "unknown");
+        } else {
+            sb.append('-');
+        }
+        sb.append("] (").append(getColoredLevel(record.getLevel())).append("):\n> ");
+        String message = formatMessage(record);
+        sb.append(message != null ? message : "null");
+        if (record.getThrown() != null) {
+            sb.append('\n');
+            appendStackTrace(sb, record.getThrown(), stackTraceLimit);
+        }
+        sb.append('\n');
+        String text = sb.toString();
+        // don't let one huge stack trace pin a big buffer to the thread
+        if (sb.capacity() > 16 * 1024) {
+            BUILDER.remove();
+        }
+        return text;
+    }
+
+    private static String timestamp(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        Stamp current = stamp;
+        if (current.second != second) {
+            current = new Stamp(second, DATE_FORMAT.format(Instant.ofEpochSecond(second)));
+            stamp = current;
+        }
+        return current.text;
+    }
+
+    /**
+     * Determines the name of the class that called the logging method.
+     *
+     * @return the name of the calling class, skipping the logging framework
+     *         and the package of LoggerUtil
+     */
+    public static String getCallingClassName() {
+        return WALKER.walk(frames -> frames
+                .map(StackWalker.StackFrame::getClassName)
+                .filter(className -> !className.startsWith("java.util.logging")
+                        && !className.startsWith(LOGGER_PACKAGE)
+                        && !className.equals(Thread.class.getName()))
+                .findFirst()
+                .orElse(null));
+    }
+
+    /**
+     * Returns a colored log level string based on the severity.
+     *
+     * @param level the log level
+     * @return the colored log level string
+     */
+    private static String getColoredLevel(Level level) {
+        switch (level.getName()) {
+            case "SEVERE":
+                return RED + "SEVERE" + RESET;
+            case "WARNING":
+                return YELLOW + "WARNING" + RESET;
+            case "INFO":
+                return GREEN + "INFO" + RESET;
+            case "CONFIG":
+                return CYAN + "CONFIG" + RESET;
+            case "FINE":
+                return BLUE + "FINE" + RESET;
+            case "FINER":
+                return PURPLE + "FINER" + RESET;
+            case "FINEST":
+                return WHITE + "FINEST" + RESET;
+            default:
+                return level.getName();
+        }
+    }
+
+    /**
+     * Appends the exception class name, message (if any) and up to
+     * maxElements stack trace elements, then any suppressed exceptions and
+     * the cause the same way.
+     *
+     * @param sb          where to append
+     * @param throwable   the throwable to extract the stack trace from
+     * @param maxElements the maximum number of stack trace elements to show
+     */
+    private static void appendStackTrace(StringBuilder sb, Throwable throwable, int maxElements) {
+        sb.append(throwable.getClass().getName());
+        if (throwable.getMessage() != null) {
+            sb.append(": ").append(throwable.getMessage());
+        }
+        sb.append('\n');
+
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        int length = stackTrace.length;
+        int displayLimit = Math.min(maxElements, length);
+        for (int i = 0; i < displayLimit; i++) {
+            sb.append("\tat ").append(stackTrace[i]).append('\n');
+        }
+        if (length > maxElements) {
+            sb.append("\t... ").append(length - maxElements).append(" more elements truncated ...\n");
+        }
+
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            sb.append("Suppressed: ");
+            appendStackTrace(sb, suppressed, maxElements);
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null && cause != throwable) {
+            sb.append("Caused by: ");
+            appendStackTrace(sb, cause, maxElements);
+        }
+    }
+}
@@ -1,13 +1,11 @@
 package Project.Common;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
-import java.util.logging.Formatter;
 import java.util.logging.Level;
-import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 /**
@@ -21,6 +19,12 @@ public enum LoggerUtil {
     private Logger logger;
     private LoggerConfig config;
     private boolean isConfigured = false;
+    private AsyncLogHandler asyncHandler;
+    // lowest level any handler writes; anything below is dropped before formatting
+    private volatile int handlerLevel = Level.ALL.intValue();
+    // child loggers ("ApplicationLogger.<category>") so each category's level
+    // can be changed on its own, including at runtime through the logging MXBean
+    private final ConcurrentHashMap<String, Logger> categories = new ConcurrentHashMap<>();
 
     LoggerUtil() {
     }
@@ -35,138 +39,6 @@ public enum LoggerUtil {
         setupLogger();
     }
 
-    /**
-     * CustomFormatter class for formatting the log messages.
-     * This class formats the log messages to include the date, log level, source,
-     * and message.
-     */
-    private static class CustomFormatter extends Formatter {
-        private static final String PATTERN = "MM/dd/yyyy HH:mm:ss";
-        private static final String RESET = "\u001B[0m";
-        private static final String RED = "\u001B[31m";
-        private static final String GREEN = "\u001B[32m";
-        private static final String YELLOW = "\u001B[33m";
-        private static final String BLUE = "\u001B[34m";
-        private static final String PURPLE = "\u001B[35m";
-        private static final String CYAN = "\u001B[36m";
-        private static final String WHITE = "\u001B[37m";
-
-        @Override
-        public String format(LogRecord record) {
-            SimpleDateFormat dateFormat = new SimpleDateFormat(PATTERN);
-            String date = dateFormat.format(new Date(record.getMillis()));
-            String callingClass = getCallingClassName();
-            String source = callingClass != null ? callingClass
-                    : record.getSourceClassName() != null ? record.getSourceClassName() : "unknown";
-
-            String message = formatMessage(record);
-            if (message == null)
-                message = "null";
-            String level = getColoredLevel(record.getLevel());
-            String throwable = "";
-            if (record.getThrown() != null) {
-                // Use stackTraceLimit from LoggerConfig to truncate stack trace
-                throwable = "\n"
-                        + getFormattedStackTrace(record.getThrown(), LoggerUtil.INSTANCE.config.getStackTraceLimit());
-            }
-            return String.format("%s [%s] (%s):\n> %s%s\n", date, source, level, message, throwable);
-        }
-
-        /**
-         * Determines the name of the class that called the logging method.
-         * 
-         * @return the name of the calling class
-         */
-        private static String getCallingClassName() {
-            String loggerUtilPackage = LoggerUtil.class.getPackage().getName();
-            StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-            for (StackTraceElement element : stackTrace) {
-                String className = element.getClassName();
-                // Skip all classes in the logging framework and the package of LoggerUtil
-                if (!className.startsWith("java.util.logging") &&
-                        !className.startsWith(loggerUtilPackage) &&
-                        !className.equals(Thread.class.getName())) {
-                    return className;
-                }
-            }
-            return null;
-        }
-
-        /**
-         * Returns a colored log level string based on the severity.
-         * 
-         * @param level the log level
-         * @return the colored log level string
-         */
-        private static String getColoredLevel(Level level) {
-            switch (level.getName()) {
-                case "SEVERE":
-                    return RED + level.getName() + RESET;
-                case "WARNING":
-                    return YELLOW + level.getName() + RESET;
-                case "INFO":
-                    return GREEN + level.getName() + RESET;
-                case "CONFIG":
-                    return CYAN + level.getName() + RESET;
-                case "FINE":
-                    return BLUE + level.getName() + RESET;
-                case "FINER":
-                    return PURPLE + level.getName() + RESET;
-                case "FINEST":
-                    return WHITE + level.getName() + RESET;
-                default:
-                    return level.getName();
-            }
-        }
-
-        /**
-         * Generates the stack trace string from the given Throwable.
-         * The format includes the exception class name, message (if any),
-         * and the stack trace elements up to the specified maxElements.
-         * 
-         * @param throwable   the throwable to extract the stack trace from
-         * @param maxElements the maximum number of stack trace elements to show
-         * @return the formatted stack trace as a string
-         */
-        private static String getFormattedStackTrace(Throwable throwable, int maxElements) {
-            StringBuilder sb = new StringBuilder();
-
-            // Add the exception class name and message
-            sb.append(throwable.getClass().getName());
-            if (throwable.getMessage() != null) {
-                sb.append(": ").append(throwable.getMessage());
-            }
-            sb.append("\n");
-
-            // Stack trace elements (limit output)
-            StackTraceElement[] stackTrace = throwable.getStackTrace();
-            int length = stackTrace.length;
-            int displayLimit = Math.min(maxElements, length);
-
-            for (int i = 0; i < displayLimit; i++) {
-                sb.append("\tat ").append(stackTrace[i]).append("\n");
-            }
-
-            if (length > maxElements) {
-                sb.append("\t... ").append(length - maxElements).append(" more elements truncated ...\n");
-            }
-
-            // Recursively log suppressed exceptions
-            for (Throwable suppressed : throwable.getSuppressed()) {
-                sb.append("Suppressed: ").append(getFormattedStackTrace(suppressed, maxElements));
-            }
-
-            // Recursively log the cause
-            Throwable cause = throwable.getCause();
-            if (cause != null && cause != throwable) {
-                sb.append("Caused by: ").append(getFormattedStackTrace(cause, maxElements));
-            }
-
-            return sb.toString();
-        }
-
-    }
-
     /**
      * Ensures the logger is configured only once.
      */
@@ -186,6 +58,17 @@ public enum LoggerUtil {
                 rootLogger.removeHandler(handler);
             }
 
+            LogFormatter formatter = new LogFormatter(config.getStackTraceLimit(), config.getSourceLogLevel());
+            handlerLevel = Math.min(config.getFileLogLevel().intValue(), config.getConsoleLogLevel().intValue());
+            if (config.isAsync()) {
+                // one background writer for both the file and the console
+                asyncHandler = new AsyncLogHandler(config, formatter);
+                logger.addHandler(asyncHandler);
+                logger.setLevel(Level.ALL);
+                isConfigured = true;
+                return;
+            }
+
             // Customize the file naming pattern
             String logPattern = config.getLogLocation().replace(".log", "-%g.log");
             // FileHandler writes log messages to a specified file, with support for
@@ -195,13 +78,13 @@ public enum LoggerUtil {
                     config.getFileSizeLimit(),
                     config.getFileCount(),
                     true);
-            fileHandler.setFormatter(new CustomFormatter());
+            fileHandler.setFormatter(formatter);
             fileHandler.setLevel(config.getFileLogLevel());
             logger.addHandler(fileHandler);
 
             // ConsoleHandler prints log messages to the console
             ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setFormatter(new CustomFormatter());
+            consoleHandler.setFormatter(formatter);
             consoleHandler.setLevel(config.getConsoleLogLevel());
             logger.addHandler(consoleHandler);
 
@@ -212,6 +95,118 @@ public enum LoggerUtil {
         }
     }
 
+    /**
+     * Writes out any queued log records and stops the async writer. Call last
+     * thing on shutdown; later messages are dropped in async mode.
+     */
+    public synchronized void shutdown() {
+        if (asyncHandler != null) {
+            asyncHandler.close();
+        }
+    }
+
+    /**
+     * Checks if a message at this level would be written anywhere. Use it to
+     * skip building expensive messages.
+     * 
+     * @param level the level of the log message
+     * @return true if the message would be logged
+     */
+    public boolean isLoggable(Level level) {
+        if (!isConfigured)
+            setupLogger();
+        return level.intValue() >= handlerLevel && logger.isLoggable(level);
+    }
+
+    /**
+     * Checks if a message in a category at this level would be written
+     * anywhere.
+     * 
+     * @param category the log category, e.g. "payload"
+     * @param level    the level of the log message
+     * @return true if the message would be logged
+     */
+    public boolean isLoggable(String category, Level level) {
+        return isLoggable(level) && category(category).isLoggable(level);
+    }
+
+    /**
+     * Sets the level of one category. Messages in it below the level are
+     * dropped; null goes back to the global level.
+     * 
+     * @param category the log category
+     * @param level    the category's level, or null to inherit
+     */
+    public void setCategoryLevel(String category, Level level) {
+        category(category).setLevel(level);
+    }
+
+    /**
+     * Gets the level set for one category.
+     * 
+     * @param category the log category
+     * @return the category's level, or null if it inherits the global level
+     */
+    public Level getCategoryLevel(String category) {
+        return category(category).getLevel();
+    }
+
+    /**
+     * Sets category levels from a list like "payload=OFF,room=WARNING".
+     * Malformed entries are reported and skipped.
+     * 
+     * @param levels comma separated category=LEVEL pairs; null or blank does
+     *               nothing
+     */
+    public void setCategoryLevels(String levels) {
+        if (levels == null || levels.isBlank()) {
+            return;
+        }
+        for (String entry : levels.split(",")) {
+            String[] parts = entry.split("=", 2);
+            try {
+                setCategoryLevel(parts[0].trim(), Level.parse(parts[1].trim().toUpperCase()));
+            } catch (RuntimeException e) {
+                warning("Ignoring log level setting \"" + entry.trim() + "\"");
+            }
+        }
+    }
+
+    private Logger category(String category) {
+        if (!isConfigured)
+            setupLogger();
+        Logger child = categories.get(category);
+        return child != null ? child
+                : categories.computeIfAbsent(category, name -> Logger.getLogger(logger.getName() + "." + name));
+    }
+
+    /**
+     * Logs a message at the specified level, building it only if it will be
+     * written.
+     * 
+     * @param level   the level of the log message
+     * @param message supplies the log message
+     */
+    public void log(Level level, Supplier<String> message) {
+        if (isLoggable(level)) {
+            logger.log(level, message.get());
+        }
+    }
+
+    /**
+     * Logs a message in a category, building it only if the category and the
+     * level let it through.
+     * 
+     * @param category the log category, e.g. "payload"
+     * @param level    the level of the log message
+     * @param message  supplies the log message
+     */
+    public void log(String category, Level level, Supplier<String> message) {
+        if (isLoggable(category, level)) {
+            category(category).log(level, message.get());
+        }
+    }
+
     /**
      * Logs a message at the specified level.
      * 
@@ -280,6 +275,15 @@ public enum LoggerUtil {
         log(Level.INFO, message);
     }
 
+    /**
+     * Logs an informational message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
     /**
      * Logs an informational message, overloaded to accept an Object.
      * 
@@ -308,6 +312,15 @@ public enum LoggerUtil {
         log(Level.WARNING, message);
     }
 
+    /**
+     * Logs a warning message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void warning(Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+
     /**
      * Logs a warning message, overloaded to accept an Object.
      * 
@@ -336,6 +349,15 @@ public enum LoggerUtil {
         log(Level.SEVERE, message);
     }
 
+    /**
+     * Logs a severe error message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void severe(Supplier<String> message) {
+        log(Level.SEVERE, message);
+    }
+
     /**
      * Logs a severe error message, overloaded to accept an Object.
      * 
@@ -364,6 +386,15 @@ public enum LoggerUtil {
         log(Level.FINE, message);
     }
 
+    /**
+     * Logs a fine-grained informational message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void fine(Supplier<String> message) {
+        log(Level.FINE, message);
+    }
+
     /**
      * Logs a fine-grained informational message, overloaded to accept an Object.
      * 
@@ -382,6 +413,15 @@ public enum LoggerUtil {
         log(Level.FINER, message);
     }
 
+    /**
+     * Logs a finer-grained informational message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void finer(Supplier<String> message) {
+        log(Level.FINER, message);
+    }
+
     /**
      * Logs a finer-grained informational message, overloaded to accept an Object.
      * 
@@ -400,6 +440,15 @@ public enum LoggerUtil {
         log(Level.FINEST, message);
     }
 
+    /**
+     * Logs the finest-grained informational message, building it only if it will be written.
+     * 
+     * @param message supplies the log message
+     */
+    public void finest(Supplier<String> message) {
+        log(Level.FINEST, message);
+    }
+
     /**
      * Logs the finest-grained informational message, overloaded to accept an
      * Object.
@@ -421,6 +470,10 @@ public enum LoggerUtil {
         private Level fileLogLevel = Level.ALL; // default log level for file
         private Level consoleLogLevel = Level.ALL; // default log level for console
         private int stackTraceLimit = 10; // default maximum number of stack trace elements
+        private Level sourceLogLevel = Level.ALL; // records at or above this show the calling class
+        private boolean async = false; // write from a background thread
+        private int asyncBufferSize = 8192; // records the async ring holds
+        private AsyncLogHandler.Overflow asyncOverflow = AsyncLogHandler.Overflow.DROP; // when the ring is full
 
         // Getters and Setters for each property
 
@@ -531,6 +584,82 @@ public enum LoggerUtil {
         public void setStackTraceLimit(int stackTraceLimit) {
             this.stackTraceLimit = stackTraceLimit;
         }
+
+        /**
+         * Gets the lowest level whose records show the calling class.
+         * 
+         * @return the source log level
+         */
+        public Level getSourceLogLevel() {
+            return sourceLogLevel;
+        }
+
+        /**
+         * Sets the lowest level whose records show the calling class. Finding
+         * the caller walks the stack, so raising this makes busy lower-level
+         * logging cheaper.
+         * 
+         * @param sourceLogLevel the source log level
+         */
+        public void setSourceLogLevel(Level sourceLogLevel) {
+            this.sourceLogLevel = sourceLogLevel;
+        }
+
+        /**
+         * Checks if records are written by a background thread.
+         * 
+         * @return true for async logging
+         */
+        public boolean isAsync() {
+            return async;
+        }
+
+        /**
+         * Sets whether records are queued and written by a background thread
+         * instead of on the logging thread.
+         * 
+         * @param async true for async logging
+         */
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        /**
+         * Gets the number of records the async ring holds.
+         * 
+         * @return the ring capacity
+         */
+        public int getAsyncBufferSize() {
+            return asyncBufferSize;
+        }
+
+        /**
+         * Sets the number of records the async ring holds (rounded up to a
+         * power of two).
+         * 
+         * @param asyncBufferSize the ring capacity
+         */
+        public void setAsyncBufferSize(int asyncBufferSize) {
+            this.asyncBufferSize = asyncBufferSize;
+        }
+
+        /**
+         * Gets what happens to a record when the async ring is full.
+         * 
+         * @return the overflow policy
+         */
+        public AsyncLogHandler.Overflow getAsyncOverflow() {
+            return asyncOverflow;
+        }
+
+        /**
+         * Sets what happens to a record when the async ring is full.
+         * 
+         * @param asyncOverflow DROP to lose it, BLOCK to wait for room
+         */
+        public void setAsyncOverflow(AsyncLogHandler.Overflow asyncOverflow) {
+            this.asyncOverflow = asyncOverflow;
+        }
     }
 
     /**
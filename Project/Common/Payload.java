@@ -3,9 +3,14 @@ package Project.Common;
 import java.io.Serializable;
 
 public class Payload implements Serializable {
+    // the UID before the trace fields were added, so object-stream clients built before them still connect
+    private static final long serialVersionUID = -2325651570813183523L;
     private PayloadType payloadType;
     private long clientId;
     private String message;
+    // optional end-to-end trace; 0 when the payload isn't traced
+    private long traceId;
+    private long sentAt;
 
     /**
      * @return the payloadType
@@ -49,6 +54,35 @@ public class Payload implements Serializable {
         this.message = message;
     }
 
+    /**
+     * @return the sender's trace id, or 0 if this payload isn't traced
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * @param traceId id the sender picked to follow this payload, and the
+     *                replies it causes, through the server
+     */
+    public void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
+
+    /**
+     * @return wall clock millis on the sender when a traced payload was sent
+     */
+    public long getSentAt() {
+        return sentAt;
+    }
+
+    /**
+     * @param sentAt wall clock millis on the sender
+     */
+    public void setSentAt(long sentAt) {
+        this.sentAt = sentAt;
+    }
+
     @Override
     public String toString() {
         return String.format("Payload[%s] Client Id [%s] Message: [%s]", getPayloadType(), getClientId(), getMessage());
@@ -27,5 +27,11 @@ public enum PayloadType {
     SESSION_START,
     RESET_GAME_STATE, // For resetting UI after a game
     SYNC_POINTS,
-    SESSION_END
+    SESSION_END,
+    STATS, // client asks for the server's metrics report
+    PING, // server clock sample, the client echoes it back as PONG
+    PONG,
+    MATCH_QUEUE, // a ReadyPayload with the game the client wants to be matched into
+    MATCH_LEAVE,
+    LEADERBOARD // a LeaderboardPayload page, asked for and answered
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package Project.Common;
+
+/**
+ * Latency probe sent by the server to each client every few seconds.
+ * <p>
+ * The client answers straight away with the same payload as a PONG, adding
+ * its own wall clock; the server times the round trip from the echoed
+ * {@link #getPingNanos()} so neither side has to trust the other's clock.
+ * The server's current smoothed RTT rides along so the client can estimate
+ * the server clock from {@link #getServerTime()}.
+ * </p>
+ */
+public class PingPayload extends Payload {
+    private long pingNanos;
+    private long serverTime;
+    private long rttNanos;
+    private long clientTime;
+
+    public PingPayload() {
+        setPayloadType(PayloadType.PING);
+    }
+
+    /**
+     * @param clientTime the client's wall clock millis when it answered
+     * @return the PONG echoing this ping
+     */
+    public PingPayload toPong(long clientTime) {
+        PingPayload pong = new PingPayload();
+        pong.setPayloadType(PayloadType.PONG);
+        pong.pingNanos = pingNanos;
+        pong.serverTime = serverTime;
+        pong.rttNanos = rttNanos;
+        pong.clientTime = clientTime;
+        return pong;
+    }
+
+    /**
+     * @return the server's monotonic clock when it sent the ping; only
+     *         meaningful to the server
+     */
+    public long getPingNanos() {
+        return pingNanos;
+    }
+
+    public void setPingNanos(long pingNanos) {
+        this.pingNanos = pingNanos;
+    }
+
+    /**
+     * @return the server's wall clock millis when it sent the ping
+     */
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    public void setServerTime(long serverTime) {
+        this.serverTime = serverTime;
+    }
+
+    /**
+     * @return the server's smoothed round trip time for this connection, or
+     *         -1 before the first PONG
+     */
+    public long getRttNanos() {
+        return rttNanos;
+    }
+
+    public void setRttNanos(long rttNanos) {
+        this.rttNanos = rttNanos;
+    }
+
+    /**
+     * @return the client's wall clock millis when it answered; 0 on a PING
+     */
+    public long getClientTime() {
+        return clientTime;
+    }
+
+    public void setClientTime(long clientTime) {
+        this.clientTime = clientTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Payload[%s] Server time [%d] RTT [%d ns]", getPayloadType(), serverTime, rttNanos);
+    }
+}
@@ -1,8 +1,12 @@
 package Project.Common;
 
 public class ReadyPayload extends Payload {
+    // the UID before the rule set was added, for older object-stream clients
+    private static final long serialVersionUID = -8363346600535527110L;
     private boolean extraOptionsEnabled;
     private boolean cooldownEnabled;
+    // name of the game variant the host picked; null for the default
+    private String ruleSet;
 
     public ReadyPayload() {
         setPayloadType(PayloadType.GAME_READY);
@@ -23,4 +27,12 @@ public class ReadyPayload extends Payload {
     public void setCooldownEnabled(boolean cooldownEnabled) {
         this.cooldownEnabled = cooldownEnabled;
     }
+
+    public String getRuleSet() {
+        return ruleSet;
+    }
+
+    public void setRuleSet(String ruleSet) {
+        this.ruleSet = ruleSet;
+    }
 }
\ No newline at end of file
@@ -2,26 +2,167 @@
 // Date: 2025-08-05 (Corrected)
 package Project.Common;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A page of the room list, asked for and answered with the same payload.
+ * <p>
+ * Rooms come in order of their lowercased name. The client sends the
+ * {@link #getQuery() query} and, for a later page, the {@link #getCursor()
+ * cursor} from the page before; the server answers with the rooms after
+ * it and the cursor for the next page, or null on the last one. A plain
+ * ROOM_LIST Payload with the query as its message asks for the first page.
+ * </p>
+ * <p>
+ * Object-stream clients built before the room details still know this
+ * class with a list of room names, so they're sent a {@link #toNamesOnly()
+ * names-only} copy.
+ * </p>
+ */
 public class RoomResultPayload extends Payload {
-    private List<String> rooms = new ArrayList<>();
+    // the UID from when rooms were plain names, which those clients still check
+    private static final long serialVersionUID = 8157013103153094048L;
+    private String query = "";
+    private String cursor;
+    private int limit;
+    private List<RoomInfo> rooms = new ArrayList<>();
+    // true on a copy bound for a legacy object stream
+    private transient boolean namesOnly;
+
+    /**
+     * What the list shows about a room. The server keeps one per room and
+     * replaces it whenever any of this changes.
+     */
+    public static class RoomInfo implements Serializable {
+        private final String name;
+        private final int members;
+        private final boolean inGame;
+        private final String ruleSet;
+
+        public RoomInfo(String name, int members, boolean inGame, String ruleSet) {
+            this.name = name;
+            this.members = members;
+            this.inGame = inGame;
+            this.ruleSet = ruleSet;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return players and spectators in the room
+         */
+        public int getMembers() {
+            return members;
+        }
+
+        /**
+         * @return true while a game is being played
+         */
+        public boolean isInGame() {
+            return inGame;
+        }
+
+        /**
+         * @return the current or last game's rules
+         */
+        public String getRuleSet() {
+            return ruleSet;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%d, %s%s)", name, members, ruleSet, inGame ? ", in game" : "");
+        }
+    }
 
     public RoomResultPayload() {
         setPayloadType(PayloadType.ROOM_LIST);
     }
 
-    public List<String> getRooms() {
+    /**
+     * @return text the room names contain, any case; blank for every room
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    /**
+     * @return in a request, where the page starts (just after this); in an
+     *         answer, what to send for the next page, or null if this is the
+     *         last
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return rooms wanted; 0 for the server's default, which also caps it
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public List<RoomInfo> getRooms() {
         return this.rooms;
     }
 
-    public void setRooms(List<String> rooms) {
+    public void setRooms(List<RoomInfo> rooms) {
         this.rooms = rooms;
     }
 
+    /**
+     * @return a copy whose rooms serialize as plain names, the shape
+     *         object-stream clients from before {@link RoomInfo} expect
+     */
+    public RoomResultPayload toNamesOnly() {
+        RoomResultPayload copy = new RoomResultPayload();
+        copy.setClientId(getClientId());
+        copy.setMessage(getMessage());
+        copy.query = query;
+        copy.cursor = cursor;
+        copy.limit = limit;
+        copy.rooms = rooms;
+        copy.namesOnly = true;
+        return copy;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("query", query);
+        fields.put("cursor", cursor);
+        fields.put("limit", limit);
+        if (namesOnly) {
+            List<String> names = new ArrayList<>(rooms.size());
+            for (RoomInfo room : rooms) {
+                names.add(room.getName());
+            }
+            fields.put("rooms", names);
+        } else {
+            fields.put("rooms", rooms);
+        }
+        out.writeFields();
+    }
+
     @Override
     public String toString() {
-        return super.toString() + " Rooms [" + String.join(",", rooms) + "]";
+        return super.toString() + " Rooms " + rooms + (cursor == null ? "" : " more after " + cursor);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package Project.Common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of one round, sent once to the whole room instead of chat lines
+ * and points updates per battle. It carries everything the client needs to
+ * render the round: who picked what, who didn't pick, what each pick scored
+ * and the running totals. A player's delta is the score of their pick.
+ */
+public class RoundResultPayload extends Payload {
+    private int roundNumber;
+    // pick by client id, for the players who picked
+    private Map<Long, String> playerPicks = new HashMap<>();
+    // active players who let the timer run out
+    private List<Long> missedPicks = new ArrayList<>();
+    // points each player with that pick scored this round
+    private Map<String, Integer> choicePoints = new LinkedHashMap<>();
+    // running totals by client id
+    private Map<Long, Integer> playerPoints = new HashMap<>();
+
+    public RoundResultPayload() {
+        setPayloadType(PayloadType.ROUND_END);
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public void setRoundNumber(int roundNumber) {
+        this.roundNumber = roundNumber;
+    }
+
+    public Map<Long, String> getPlayerPicks() {
+        return playerPicks;
+    }
+
+    public void setPlayerPicks(Map<Long, String> playerPicks) {
+        this.playerPicks = playerPicks;
+    }
+
+    public List<Long> getMissedPicks() {
+        return missedPicks;
+    }
+
+    public void setMissedPicks(List<Long> missedPicks) {
+        this.missedPicks = missedPicks;
+    }
+
+    public Map<String, Integer> getChoicePoints() {
+        return choicePoints;
+    }
+
+    public void setChoicePoints(Map<String, Integer> choicePoints) {
+        this.choicePoints = choicePoints;
+    }
+
+    public Map<Long, Integer> getPlayerPoints() {
+        return playerPoints;
+    }
+
+    public void setPlayerPoints(Map<Long, Integer> playerPoints) {
+        this.playerPoints = playerPoints;
+    }
+
+    /**
+     * @param clientId a player
+     * @return points the player scored this round; 0 if they didn't pick
+     */
+    public int getDelta(long clientId) {
+        String pick = playerPicks.get(clientId);
+        return pick == null ? 0 : choicePoints.getOrDefault(pick, 0);
+    }
+
+    /**
+     * @return number of players per pick, in the order of
+     *         {@link #getChoicePoints()}
+     */
+    public Map<String, Integer> getChoiceCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String pick : choicePoints.keySet()) {
+            counts.put(pick, 0);
+        }
+        for (String pick : playerPicks.values()) {
+            counts.merge(pick, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()
+                + "\nRound: " + this.roundNumber
+                + "\nPicks: " + this.getChoiceCounts()
+                + "\nPoints per pick: " + this.choicePoints
+                + "\nMissed: " + this.missedPicks.size()
+                + "\nTotals: " + this.playerPoints.size() + " players";
+    }
+}
@@ -3,8 +3,11 @@
 package Project.Common;
 
 public class RoundStartPayload extends Payload {
+    // the UID before the deadline was added, for older object-stream clients
+    private static final long serialVersionUID = -3381781536063659568L;
     private int roundNumber;
     private int roundDurationSeconds;
+    private long deadline;
 
     public RoundStartPayload(int roundNumber, int roundDurationSeconds) {
         setPayloadType(PayloadType.ROUND_START);
@@ -20,4 +23,18 @@ public class RoundStartPayload extends Payload {
     public int getRoundDurationSeconds() {
         return roundDurationSeconds;
     }
+
+    /**
+     * @return the server's wall clock millis when picks close, or 0 if not sent
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @param deadline the server's wall clock millis when picks close
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
 }
\ No newline at end of file
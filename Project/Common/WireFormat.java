@@ -0,0 +1,34 @@
+package Project.Common;
+
+/**
+ * Encoding used for the body of each frame on a framed connection.
+ */
+public enum WireFormat {
+    JAVA((byte) 0), // java.io serialization of the Payload object
+    BINARY((byte) 1); // BinaryPayloadCodec
+
+    private final byte id;
+
+    WireFormat(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Looks up a format by its wire id.
+     *
+     * @param id the byte sent during negotiation
+     * @return the matching format, or null if unknown
+     */
+    public static WireFormat fromId(int id) {
+        for (WireFormat format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
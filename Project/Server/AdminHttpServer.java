@@ -0,0 +1,229 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import Project.Common.Histogram;
+import Project.Common.JsonWriter;
+import Project.Common.LoggerUtil;
+import Project.Common.PayloadType;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+
+/**
+ * Read-only JSON view of the running server on a loopback-only HTTP port.
+ * <p>
+ * Endpoints (all GET):
+ * </p>
+ * <ul>
+ * <li>/rooms: each room with its member count, pending mailbox messages and
+ * game state</li>
+ * <li>/connections: each client's transport, outbound queue depth, bytes,
+ * throughput and round trip time (-1 until it has answered a PING)</li>
+ * <li>/threads: JVM thread counts by state</li>
+ * <li>/metrics: the {@link Metrics} counters and histograms, and the
+ * {@link Matchmaker} queue</li>
+ * </ul>
+ * Everything is read from concurrent maps, volatile fields and atomic
+ * counters; no Room mailbox or lock is involved, so a scrape can't hold up a
+ * game. Requests are served one at a time on a single daemon thread.
+ */
+public class AdminHttpServer {
+    private static final PayloadType[] TYPES = PayloadType.values();
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    /**
+     * Binds to the loopback address and starts serving.
+     *
+     * @param port port to listen on (0 picks a free one)
+     * @throws IOException if the port can't be bound
+     */
+    public AdminHttpServer(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "AdminHttp");
+            thread.setDaemon(true);
+            return thread;
+        });
+        http.setExecutor(executor);
+        route("/rooms", AdminHttpServer::rooms);
+        route("/connections", AdminHttpServer::connections);
+        route("/threads", AdminHttpServer::threads);
+        route("/metrics", AdminHttpServer::metrics);
+        http.start();
+        info("Admin endpoint listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + getPort());
+    }
+
+    private void info(String message) {
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize("AdminHttp: " + message, Color.YELLOW));
+    }
+
+    /**
+     * @return the port actually bound
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public void stop() {
+        http.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void route(String path, Supplier<String> body) {
+        http.createContext(path, exchange -> {
+            try {
+                if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    respond(exchange, 405, "{\"error\":\"GET only\"}");
+                } else if (!exchange.getRequestURI().getPath().equals(path)) {
+                    respond(exchange, 404, "{\"error\":\"not found\"}");
+                } else {
+                    respond(exchange, 200, body.get());
+                }
+            } catch (RuntimeException e) {
+                LoggerUtil.INSTANCE.warning("Admin request failed: " + path, e);
+                respond(exchange, 500, "{\"error\":" + JsonWriter.quote(String.valueOf(e.getMessage())) + "}");
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String rooms() {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Room room : Server.INSTANCE.getRooms()) {
+            int players = 0;
+            int spectators = 0;
+            for (ServerThread client : room.getClients()) {
+                if (client.isSpectator()) {
+                    spectators++;
+                } else {
+                    players++;
+                }
+            }
+            GameSession game = room.getGameSession();
+            json.beginObject()
+                    .name("name").value(room.getName())
+                    .name("members").value(players + spectators)
+                    .name("players").value(players)
+                    .name("spectators").value(spectators)
+                    .name("pendingMessages").value(room.getPendingMessages())
+                    .name("game").beginObject()
+                    .name("inProgress").value(game.isInProgress())
+                    .name("round").value(game.getRound())
+                    .name("rules").value(game.getRules().getName())
+                    .endObject()
+                    .endObject();
+        }
+        return json.endArray().toString();
+    }
+
+    private static String connections() {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Room room : Server.INSTANCE.getRooms()) {
+            for (ServerThread client : room.getClients()) {
+                OutboundQueue queue = client.getOutboundQueue();
+                double seconds = Math.max(1e-3, client.getConnectedNanos() / 1e9);
+                json.beginObject()
+                        .name("id").value(client.getClientId())
+                        .name("name").value(client.getClientName())
+                        .name("room").value(room.getName())
+                        .name("spectator").value(client.isSpectator())
+                        .name("transport").value(client.getTransportName())
+                        .name("connectedSeconds").value((long) seconds)
+                        .name("queueDepth").value(queue.getDepth())
+                        .name("queueCapacity").value(queue.getCapacity())
+                        .name("queueHighWater").value(queue.getHighWaterMark())
+                        .name("dropped").value(queue.getDroppedCount())
+                        .name("coalesced").value(queue.getCoalescedCount())
+                        .name("bytesIn").value(client.getBytesIn())
+                        .name("bytesOut").value(client.getBytesOut())
+                        .name("bytesInPerSecond").value(Math.round(client.getBytesIn() / seconds))
+                        .name("bytesOutPerSecond").value(Math.round(client.getBytesOut() / seconds))
+                        .name("rttNanos").value(client.getRttNanos())
+                        .name("minRttNanos").value(client.getMinRttNanos())
+                        .name("clockOffsetMillis").value(client.getClockOffsetMillis())
+                        .endObject();
+            }
+        }
+        return json.endArray().toString();
+    }
+
+    private static String threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<Thread.State, Integer> states = new EnumMap<>(Thread.State.class);
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null) {
+                states.merge(info.getThreadState(), 1, Integer::sum);
+            }
+        }
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("count").value(threads.getThreadCount())
+                .name("daemon").value(threads.getDaemonThreadCount())
+                .name("peak").value(threads.getPeakThreadCount())
+                .name("started").value(threads.getTotalStartedThreadCount())
+                .name("states").beginObject();
+        for (Map.Entry<Thread.State, Integer> entry : states.entrySet()) {
+            json.name(entry.getKey().name()).value(entry.getValue());
+        }
+        return json.endObject().endObject().toString();
+    }
+
+    private static String metrics() {
+        Metrics metrics = Metrics.INSTANCE;
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("bytesIn").value(metrics.getBytesIn())
+                .name("bytesOut").value(metrics.getBytesOut())
+                .name("payloads").beginObject();
+        for (PayloadType type : TYPES) {
+            long in = metrics.getPayloadsIn(type);
+            long out = metrics.getPayloadsOut(type);
+            if (in > 0 || out > 0) {
+                json.name(type.name()).beginObject().name("in").value(in).name("out").value(out).endObject();
+            }
+        }
+        json.endObject().name("timingsNanos").beginObject();
+        for (Histogram histogram : metrics.getHistograms()) {
+            Histogram.Snapshot snapshot = histogram.snapshot();
+            json.name(snapshot.getName()).beginObject()
+                    .name("count").value(snapshot.getCount())
+                    .name("mean").value(Math.round(snapshot.getMean()))
+                    .name("p50").value(snapshot.getValueAtPercentile(50))
+                    .name("p90").value(snapshot.getValueAtPercentile(90))
+                    .name("p99").value(snapshot.getValueAtPercentile(99))
+                    .name("p999").value(snapshot.getValueAtPercentile(99.9))
+                    .name("max").value(snapshot.getMax())
+                    .endObject();
+        }
+        Matchmaker matchmaker = Server.INSTANCE.getMatchmaker();
+        return json.endObject().name("matchmaking").beginObject()
+                .name("queued").value(matchmaker.getQueued())
+                .name("matched").value(matchmaker.getMatched())
+                .name("expired").value(matchmaker.getExpired())
+                .endObject().endObject().toString();
+    }
+}
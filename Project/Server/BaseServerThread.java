@@ -1,18 +1,72 @@
 package Project.Server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import Project.Common.FrameCodec;
+import Project.Common.LoggerUtil;
 import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.PingPayload;
 import Project.Common.User;
+import Project.Common.WireFormat;
 
 public abstract class BaseServerThread extends Thread {
-    protected boolean isRunning = false;
+    private static final long HANDSHAKE_TIMEOUT_MS = 3000;
+    // disconnect clients that send nothing for this long: -Dclient.idleTimeout=seconds (0 = never)
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("client.idleTimeout", 0));
+    // measure each client's round trip this often: -Dclient.pingSeconds=seconds (0 = never)
+    private static final long PING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("client.pingSeconds", 5));
+    // weight of a new round trip sample in the smoothed RTT (RFC 6298's alpha)
+    private static final int RTT_SMOOTHING_SHIFT = 3;
+    // drains blocking-mode outbound queues; a writer only exists while its
+    // client has something queued
+    private static final Executor OUTBOUND_WRITERS = VirtualThreads.newPerTaskExecutor("OutboundWriter");
+    private static final int FIRST_HIGH_WATER_REPORT = 64;
+    // per-payload tracing: -Dlog.levels=payload=OFF turns it off
+    protected static final String PAYLOAD_LOG = "payload";
+    protected volatile boolean isRunning = false;
     protected ObjectOutputStream out;
+    protected DataOutputStream frameOut;
+    protected volatile WireFormat wireFormat = WireFormat.JAVA;
     protected Socket client;
+    protected NioConnection connection;
     private User user = new User();
-    protected Room currentRoom;
+    // written by whichever thread moves the client, read by its reader
+    protected volatile Room currentRoom;
+    protected final OutboundQueue outbound = new OutboundQueue();
+    private final AtomicInteger nextHighWaterReport = new AtomicInteger(FIRST_HIGH_WATER_REPORT);
+    private volatile Thread runner;
+    private TimerWheel.Timeout handshakeCheck;
+    private volatile TimerWheel.Timeout idleCheck;
+    private volatile TimerWheel.Timeout pingTimer;
+    // written by the reader when a PONG arrives, -1 until the first one
+    private volatile long rttNanos = -1;
+    private volatile long minRttNanos = -1;
+    // client wall clock minus the server's, estimated from the latest PONG
+    private volatile long clockOffsetMillis = 0;
+    private volatile long lastActivity = System.nanoTime();
+    private final long connectedAt = System.nanoTime();
+    // size of the frame readFrame just returned; reader thread only
+    private int lastFrameSize = -1;
+    // each is only written by one thread at a time (the reader, or whoever is
+    // draining the outbound queue), but read by the metrics snapshot
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
 
     public User getUser() {
         return this.user;
@@ -38,6 +92,9 @@ public abstract class BaseServerThread extends Thread {
     public void setClientId(long clientId) {
         this.user.setClientId(clientId);
     }
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
     public long getClientId() {
         return this.user.getClientId();
     }
@@ -48,59 +105,400 @@ public abstract class BaseServerThread extends Thread {
     public String getClientName() {
         return this.user.getClientName();
     }
+    /**
+     * @return bytes read from this client so far
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+    /**
+     * @return bytes written to this client so far
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+    /**
+     * @return nanoseconds since the connection was accepted
+     */
+    public long getConnectedNanos() {
+        return System.nanoTime() - connectedAt;
+    }
+    /**
+     * @return smoothed PING round trip time, or -1 before the first PONG
+     */
+    public long getRttNanos() {
+        return rttNanos;
+    }
+    /**
+     * @return fastest PING round trip seen, or -1 before the first PONG
+     */
+    public long getMinRttNanos() {
+        return minRttNanos;
+    }
+    /**
+     * @return the client's wall clock minus the server's, in millis; 0 until
+     *         the first PONG
+     */
+    public long getClockOffsetMillis() {
+        return clockOffsetMillis;
+    }
+    /**
+     * @return how the client is connected, e.g. "nio/BINARY" or "object
+     *         stream"
+     */
+    public String getTransportName() {
+        if (connection != null) {
+            return "nio/" + connection.getFormat();
+        }
+        return frameOut != null ? "blocking/" + wireFormat : "object stream";
+    }
+    /**
+     * @return true for a legacy client on a plain object stream, which may
+     *         only understand the original shape of some payloads
+     */
+    protected boolean isObjectStream() {
+        return connection == null && frameOut == null;
+    }
+    protected void countBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+        Metrics.INSTANCE.addBytesIn(bytes);
+    }
+    protected void countBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+        Metrics.INSTANCE.addBytesOut(bytes);
+    }
     public String getDisplayName() {
         return this.user.getDisplayName();
     }
     protected abstract void info(String message);
+    /**
+     * @return true if per-payload trace messages are being logged; check it
+     *         before building one
+     */
+    protected boolean isTracing() {
+        return LoggerUtil.INSTANCE.isLoggable(PAYLOAD_LOG, Level.FINE);
+    }
+    /**
+     * Logs a per-payload trace message in the payload category
+     * 
+     * @param message the trace message
+     */
+    protected void trace(String message) {
+        LoggerUtil.INSTANCE.log(PAYLOAD_LOG, Level.FINE, () -> message);
+    }
+    /**
+     * Adds a payload event to the structured event log, if it's enabled
+     * 
+     * @param sent    true if it's going to the client, false if it came from
+     *                it
+     * @param payload the payload; its message, if any, is the argument
+     */
+    private void recordPayload(boolean sent, Payload payload) {
+        EventLog events = Server.INSTANCE.getEvents();
+        if (events.isEnabled()) {
+            Room room = currentRoom;
+            String message = payload.getMessage();
+            if (message == null) {
+                events.record(Level.FINE, PAYLOAD_LOG, getClientId(), room == null ? null : room.getName(),
+                        payload.getPayloadType(), sent ? "sent" : "received");
+            } else {
+                events.record(Level.FINE, PAYLOAD_LOG, getClientId(), room == null ? null : room.getName(),
+                        payload.getPayloadType(), sent ? "sent {}" : "received {}", message);
+            }
+        }
+    }
     protected abstract void onInitialized();
     protected abstract void processPayload(Payload payload);
     protected boolean sendToClient(Payload payload) {
+        return sendToClient(new EncodedPayload(payload));
+    }
+    /**
+     * Queues a Payload that may be shared with other recipients. The caller
+     * never waits on the socket; a writer task (or the NIO loop) drains the
+     * queue. Framed transports write the cached frame; only legacy object
+     * streams serialize it again.
+     * 
+     * @param encoded the Payload to send
+     * @return false if the client is gone or fell too far behind and was
+     *         disconnected
+     */
+    protected boolean sendToClient(EncodedPayload encoded) {
         if (!isRunning) {
             return true;
         }
+        if (connection != null && !connection.isOpen()) {
+            return false;
+        }
+        if (isTracing()) {
+            trace("Sending to client: " + encoded.getPayload());
+        }
+        recordPayload(true, encoded.getPayload());
+        switch (outbound.offer(encoded)) {
+            case REJECTED:
+                info("Outbound queue overflow, disconnecting slow client: " + outbound);
+                dropConnection();
+                return false;
+            case DROPPED:
+            case COALESCED:
+                return true;
+            default:
+                break;
+        }
+        Metrics.INSTANCE.countOut(encoded.getPayload().getPayloadType());
+        // log each doubling of the high-water mark once
+        int reportAt = nextHighWaterReport.get();
+        int highWater = outbound.getHighWaterMark();
+        if (highWater >= reportAt && nextHighWaterReport.compareAndSet(reportAt, highWater * 2)) {
+            info("Outbound queue high-water mark: " + outbound);
+        }
+        if (connection != null) {
+            connection.requestWrite();
+        } else if (outbound.startDrain()) {
+            OUTBOUND_WRITERS.execute(this::drainOutbound);
+        }
+        return true;
+    }
+    /**
+     * Writes queued Payloads to a blocking socket, flushing once the queue is
+     * empty so a burst goes out in as few packets as possible.
+     */
+    private void drainOutbound() {
         try {
-            info("Sending to client: " + payload);
-            out.writeObject(payload);
-            out.flush();
-            return true;
+            while (true) {
+                EncodedPayload next = outbound.poll();
+                if (next != null) {
+                    ServerEvents.PayloadSent event = new ServerEvents.PayloadSent();
+                    event.begin();
+                    int size = -1;
+                    if (frameOut != null) {
+                        byte[] frame = next.getFrame(wireFormat);
+                        frameOut.write(frame);
+                        size = frame.length;
+                    } else {
+                        out.writeObject(next.getPayload());
+                    }
+                    if (event.shouldCommit()) {
+                        event.payloadType = next.getPayload().getPayloadType().name();
+                        event.size = size;
+                        event.clientId = getClientId();
+                        event.commit();
+                    }
+                    continue;
+                }
+                if (frameOut != null) {
+                    frameOut.flush();
+                } else {
+                    out.flush();
+                }
+                if (outbound.finishDrain()) {
+                    return;
+                }
+            }
         } catch (IOException e) {
+            // keep the drainer role so nothing restarts writing to a dead socket
             info("Error sending message to client (most likely disconnected)");
-            cleanup();
-            return false;
+            dropConnection();
         }
     }
+    /**
+     * Closes a connection the server gave up on. The room hears about it
+     * first, so the others see the player leave and the game stops waiting
+     * on them; cleanup() forgets the room.
+     */
+    private void dropConnection() {
+        Room room = currentRoom;
+        if (room != null) {
+            room.handleDisconnect((ServerThread) this);
+        }
+        isRunning = false;
+        cleanup();
+    }
     protected void disconnect() {
         if (!isRunning) {
             return;
         }
         info("Thread being disconnected by server");
         isRunning = false;
-        this.interrupt();
+        // in virtual mode run() executes on a separate thread, not this object
+        Thread current = runner;
+        if (current != null) {
+            current.interrupt();
+        } else {
+            this.interrupt();
+        }
+        cleanup();
+    }
+    /**
+     * Logs and dispatches a Payload read from the client, regardless of which
+     * transport received it.
+     * 
+     * @param fromClient the decoded Payload
+     * @param frameSize  bytes it took on the wire, or -1 if unknown
+     */
+    protected void handleIncoming(Payload fromClient, int frameSize) {
+        ServerEvents.PayloadReceived event = new ServerEvents.PayloadReceived();
+        event.begin();
+        // automatic PONGs don't count, or no connected client would ever go idle
+        if (fromClient.getPayloadType() != PayloadType.PONG) {
+            lastActivity = System.nanoTime();
+        }
+        Metrics.INSTANCE.countIn(fromClient.getPayloadType());
+        if (isTracing()) {
+            trace("Received from my client: " + fromClient);
+        }
+        recordPayload(false, fromClient);
+        processPayload(fromClient);
+        if (event.shouldCommit()) {
+            event.payloadType = fromClient.getPayloadType().name();
+            event.size = frameSize;
+            event.clientId = getClientId();
+            event.commit();
+        }
+    }
+
+    protected void checkClientName() {
+        if (getClientName() == null || getClientName().isBlank()) {
+            info("Client name not received. Disconnecting");
+            disconnect();
+        }
+    }
+
+    /**
+     * Re-arms itself for the remaining idle time instead of being reset on
+     * every Payload, so a busy client costs no timer work at all.
+     */
+    private void checkIdle() {
+        if (!isRunning) {
+            return;
+        }
+        long idle = System.nanoTime() - lastActivity;
+        if (idle < IDLE_TIMEOUT_NANOS) {
+            idleCheck = Server.INSTANCE.getTimers().schedule(this::checkIdle, IDLE_TIMEOUT_NANOS - idle,
+                    TimeUnit.NANOSECONDS);
+            return;
+        }
+        info("Client idle too long. Disconnecting");
+        Room room = currentRoom;
+        if (room != null) {
+            // lets the room tell the others before it disconnects us
+            room.handleDisconnect((ServerThread) this);
+        } else {
+            disconnect();
+        }
+    }
+
+    /**
+     * Sends the next PING and schedules the one after it. The PING carries the
+     * monotonic send time, so the PONG can be timed without trusting the
+     * client's clock.
+     */
+    private void sendPing() {
+        if (!isRunning) {
+            return;
+        }
+        PingPayload ping = new PingPayload();
+        ping.setPingNanos(System.nanoTime());
+        ping.setServerTime(System.currentTimeMillis());
+        ping.setRttNanos(rttNanos);
+        if (sendToClient(ping)) {
+            pingTimer = Server.INSTANCE.getTimers().schedule(this::sendPing, PING_INTERVAL_NANOS,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Folds a PONG into the smoothed RTT and the clock offset estimate.
+     *
+     * @param pong the client's echo of one of our PINGs
+     */
+    protected void handlePong(PingPayload pong) {
+        long sample = System.nanoTime() - pong.getPingNanos();
+        if (pong.getPingNanos() == 0 || sample < 0) {
+            return;
+        }
+        long smoothed = rttNanos;
+        rttNanos = smoothed < 0 ? sample : smoothed + ((sample - smoothed) >> RTT_SMOOTHING_SHIFT);
+        if (minRttNanos < 0 || sample < minRttNanos) {
+            minRttNanos = sample;
+        }
+        // assumes the two legs took equally long
+        long serverTimeAtReply = pong.getServerTime() + TimeUnit.NANOSECONDS.toMillis(sample / 2);
+        clockOffsetMillis = pong.getClientTime() - serverTimeAtReply;
+        Metrics.INSTANCE.getRoundTripTime().record(sample);
+    }
+
+    /**
+     * Arms the connection deadlines and the PING schedule on the server's
+     * shared timer.
+     */
+    private void startTimers() {
+        TimerWheel timers = Server.INSTANCE.getTimers();
+        handshakeCheck = timers.schedule(this::checkClientName, HANDSHAKE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (IDLE_TIMEOUT_NANOS > 0) {
+            lastActivity = System.nanoTime();
+            idleCheck = timers.schedule(this::checkIdle, IDLE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        }
+        // legacy object-stream clients don't know PING and would fail to read it
+        if (PING_INTERVAL_NANOS > 0 && !isObjectStream()) {
+            pingTimer = timers.schedule(this::sendPing, PING_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Starts a connection served by a NioEventLoop instead of this thread.
+     */
+    protected void startNioSession() {
+        info("NIO session starting");
+        isRunning = true;
+        startTimers();
+    }
+
+    /**
+     * Shared teardown once the client's connection is gone.
+     */
+    protected void onConnectionClosed() {
+        if (currentRoom != null) {
+            currentRoom.handleDisconnect((ServerThread) this);
+        }
+        isRunning = false;
+        info("Exited thread loop. Cleaning up connection");
         cleanup();
     }
+
     @Override
     public void run() {
+        runner = Thread.currentThread();
         info("Thread starting");
-        try (ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream());
-                ObjectInputStream in = new ObjectInputStream(client.getInputStream());) {
-            this.out = out;
+        try (BufferedInputStream buffered = new BufferedInputStream(new CountingInputStream(client.getInputStream()));
+                DataInputStream header = new DataInputStream(buffered)) {
+            // framed clients open with FrameCodec.MAGIC or MAGIC_NEGOTIATE, legacy
+            // clients with an ObjectOutputStream header
+            buffered.mark(4);
+            int magic = header.readInt();
+            ObjectInputStream in = null;
+            if (FrameCodec.isObjectStreamHeader(magic)) {
+                buffered.reset();
+                this.out = new ObjectOutputStream(new CountingOutputStream(client.getOutputStream()));
+                in = new ObjectInputStream(buffered);
+            } else if (magic == FrameCodec.MAGIC) {
+                this.frameOut = new DataOutputStream(new BufferedOutputStream(new CountingOutputStream(client.getOutputStream())));
+            } else if (magic == FrameCodec.MAGIC_NEGOTIATE) {
+                this.wireFormat = FrameCodec.negotiate(header.readUnsignedByte());
+                this.frameOut = new DataOutputStream(new BufferedOutputStream(new CountingOutputStream(client.getOutputStream())));
+                frameOut.writeByte(wireFormat.getId());
+                frameOut.flush();
+                info("Negotiated wire format " + wireFormat);
+            } else {
+                throw new IOException("Unexpected connection header " + Integer.toHexString(magic));
+            }
             isRunning = true;
-            new java.util.Timer().schedule(new java.util.TimerTask() {
-                @Override
-                public void run() {
-                    if (getClientName() == null || getClientName().isBlank()) {
-                        info("Client name not received. Disconnecting");
-                        disconnect();
-                    }
-                }
-            }, 3000);
+            startTimers();
             Payload fromClient;
             while (isRunning) {
                 try {
-                    fromClient = (Payload) in.readObject();
+                    fromClient = in != null ? (Payload) in.readObject() : readFrame(header);
                     if (fromClient != null) {
-                        info("Received from my client: " + fromClient);
-                        processPayload(fromClient);
+                        handleIncoming(fromClient, in != null ? -1 : lastFrameSize);
                     } else {
                         throw new IOException("Connection interrupted");
                     }
@@ -118,21 +516,94 @@ public abstract class BaseServerThread extends Thread {
         } catch (Exception e) {
             info("My Client disconnected");
         } finally {
-            if (currentRoom != null) {
-                currentRoom.handleDisconnect((ServerThread) this);
+            onConnectionClosed();
+        }
+    }
+    /**
+     * Blocks until one full frame is read, then decodes it (timed for the
+     * metrics).
+     */
+    private Payload readFrame(DataInputStream in) throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        FrameCodec.checkFrameLength(length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        lastFrameSize = 4 + length;
+        long start = System.nanoTime();
+        Payload payload = FrameCodec.decode(data, 0, length, wireFormat);
+        Metrics.INSTANCE.getDecodeTime().recordSince(start);
+        return payload;
+    }
+    /**
+     * Counts the bytes read from a blocking socket
+     */
+    private class CountingInputStream extends FilterInputStream {
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                countBytesIn(1);
+            }
+            return b;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                countBytesIn(read);
             }
-            isRunning = false;
-            info("Exited thread loop. Cleaning up connection");
-            cleanup();
+            return read;
+        }
+    }
+    /**
+     * Counts the bytes written to a blocking socket
+     */
+    private class CountingOutputStream extends FilterOutputStream {
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            countBytesOut(1);
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream would write it a byte at a time
+            out.write(b, off, len);
+            countBytesOut(len);
         }
     }
     protected void cleanup() {
         info("ServerThread cleanup() start");
         try {
+            if (handshakeCheck != null) {
+                handshakeCheck.cancel();
+            }
+            TimerWheel.Timeout idle = idleCheck;
+            if (idle != null) {
+                idle.cancel();
+            }
+            TimerWheel.Timeout ping = pingTimer;
+            if (ping != null) {
+                ping.cancel();
+            }
             currentRoom = null;
-            if (out != null) out.close();
+            // the socket before the streams: closing a stream flushes it, which would block
+            // for good on a slow client that stopped reading, and this may run on a room's mailbox
             if (client != null) client.close();
+            if (connection != null) connection.close();
+            outbound.clear();
             user.reset();
+            try {
+                if (out != null) out.close();
+                if (frameOut != null) frameOut.close();
+            } catch (IOException e) {
+                // the socket is gone, nothing left to flush to
+            }
             info("Closed Server-side Socket");
         } catch (Exception e) {
             info("Error during cleanup: " + e.getMessage());
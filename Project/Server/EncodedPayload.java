@@ -0,0 +1,57 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import Project.Common.FrameCodec;
+import Project.Common.Payload;
+import Project.Common.WireFormat;
+
+/**
+ * A Payload that is encoded at most once per WireFormat and then shared.
+ * <p>
+ * Room broadcasts wrap the Payload once and hand the same instance to every
+ * recipient, so a room of N members costs one encode per format in use
+ * instead of N. The cached frames are never modified after creation; each
+ * recipient gets its own read-only view. The wrapped Payload must not be
+ * changed once it has been handed out.
+ * </p>
+ */
+public class EncodedPayload {
+    private final Payload payload;
+    private final byte[][] frames = new byte[WireFormat.values().length][];
+
+    public EncodedPayload(Payload payload) {
+        this.payload = payload;
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns the length-prefixed frame for a format, encoding it on first use.
+     *
+     * @param format the recipient's wire format
+     * @return the shared frame bytes (don't modify)
+     * @throws IOException if the Payload can't be encoded
+     */
+    public synchronized byte[] getFrame(WireFormat format) throws IOException {
+        // encoding never blocks, so this monitor is safe for virtual threads
+        byte[] frame = frames[format.ordinal()];
+        if (frame == null) {
+            byte[] data = FrameCodec.encode(payload, format);
+            frame = ByteBuffer.allocate(4 + data.length).putInt(data.length).put(data).array();
+            frames[format.ordinal()] = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * @param format the recipient's wire format
+     * @return a read-only view of the frame with its own position
+     * @throws IOException if the Payload can't be encoded
+     */
+    public ByteBuffer getFrameBuffer(WireFormat format) throws IOException {
+        return ByteBuffer.wrap(getFrame(format)).asReadOnlyBuffer();
+    }
+}
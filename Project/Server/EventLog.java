@@ -0,0 +1,373 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import Project.Common.LoggerUtil;
+import Project.Common.PayloadType;
+
+/**
+ * Structured binary event log.
+ * <p>
+ * Each event is a compact record (time, level, category, client id, room,
+ * payload type, message template plus arguments) appended to a memory-mapped
+ * segment file. Categories, rooms and templates are written once per segment
+ * as dictionary entries and referenced by id afterwards, so a typical event is
+ * a handful of bytes and has no ANSI codes. When a segment fills up the next
+ * one starts and the oldest beyond the retention count is deleted. Use
+ * Project.Tools.EventLogDecoder to read the segments.
+ * </p>
+ * <p>
+ * Segment layout: {@link #MAGIC}, a version byte and the segment's base time
+ * (8 bytes, epoch millis), then records, each a varint length followed by
+ * that many bytes. A zero length marks the end. A record starts with its kind:
+ * </p>
+ * <ul>
+ * <li>{@link #KIND_DEFINE}: dictionary type byte, varint id, string</li>
+ * <li>{@link #KIND_EVENT}: varint millis since the base time, level byte,
+ * varint category id, zig-zag varint client id, varint room id (0 = none),
+ * payload type byte (ordinal + 1, 0 = none), varint template id, argument
+ * count byte, then the arguments as strings</li>
+ * </ul>
+ * Strings are a varint byte length followed by UTF-8.
+ */
+public class EventLog implements AutoCloseable {
+    public static final byte[] MAGIC = { 'R', 'P', 'S', 'E' };
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = MAGIC.length + 1 + 8;
+    public static final byte KIND_DEFINE = 0;
+    public static final byte KIND_EVENT = 1;
+    public static final byte DICT_CATEGORY = 0;
+    public static final byte DICT_ROOM = 1;
+    public static final byte DICT_TEMPLATE = 2;
+    public static final String SEGMENT_PREFIX = "events-";
+    public static final String SEGMENT_SUFFIX = ".bin";
+    // index = level byte on disk
+    public static final Level[] LEVELS = { Level.SEVERE, Level.WARNING, Level.INFO, Level.CONFIG, Level.FINE,
+            Level.FINER, Level.FINEST };
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentSize;
+    private final int segmentCount;
+    // everything below is guarded by this
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final byte[] scratch = new byte[64 * 1024];
+    private int length;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long baseMillis;
+    private boolean closed = false;
+
+    private EventLog() {
+        this.enabled = false;
+        this.dir = null;
+        this.segmentSize = 0;
+        this.segmentCount = 0;
+    }
+
+    /**
+     * @param dir          directory for the segment files; created if needed
+     * @param segmentSize  bytes per segment
+     * @param segmentCount segments to keep
+     * @throws IOException if the first segment can't be created
+     */
+    public EventLog(Path dir, int segmentSize, int segmentCount) throws IOException {
+        this.enabled = true;
+        this.dir = dir;
+        this.segmentSize = Math.max(HEADER_SIZE + 1024, segmentSize);
+        this.segmentCount = Math.max(1, segmentCount);
+        for (int i = 0; i < 3; i++) {
+            dictionaries.add(new HashMap<>());
+        }
+        Files.createDirectories(dir);
+        segmentIndex = lastSegmentIndex(dir);
+        openSegment();
+    }
+
+    /**
+     * @return an event log that ignores everything
+     */
+    public static EventLog disabled() {
+        return new EventLog();
+    }
+
+    /**
+     * @return true if events are being written; check it before gathering
+     *         arguments
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Formats a segment's file name
+     *
+     * @param index segment sequence number
+     * @return file name
+     */
+    public static String segmentName(long index) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Lists the segment files in a directory, oldest first
+     *
+     * @param dir directory to scan
+     * @return segment files
+     * @throws IOException if the directory can't be read
+     */
+    public static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        // zero-padded, so name order is sequence order
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long lastSegmentIndex(Path dir) throws IOException {
+        long last = 0;
+        for (Path file : listSegments(dir)) {
+            String name = file.getFileName().toString();
+            try {
+                last = Math.max(last, Long.parseLong(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Appends an event.
+     *
+     * @param level       severity
+     * @param category    e.g. "payload", "room", "game"
+     * @param clientId    client the event is about, or
+     *                    Project.Common.Constants.DEFAULT_CLIENT_ID
+     * @param room        room name, or null
+     * @param payloadType type of the payload involved, or null
+     * @param template    fixed message text with {} where the arguments go;
+     *                    keep it constant so it's stored once per segment
+     * @param args        arguments, stored as strings
+     */
+    public void record(Level level, String category, long clientId, String room, PayloadType payloadType,
+            String template, Object... args) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                append(level, category, clientId, room, payloadType, template, args == null ? NO_ARGS : args);
+            } catch (IOException | RuntimeException e) {
+                LoggerUtil.INSTANCE.warning("Event log write failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void append(Level level, String category, long clientId, String room, PayloadType payloadType,
+            String template, Object[] args) throws IOException {
+        long startSegment = segmentIndex;
+        int categoryId = intern(DICT_CATEGORY, category);
+        int roomId = room == null ? 0 : intern(DICT_ROOM, room);
+        int templateId = intern(DICT_TEMPLATE, template);
+        if (segmentIndex != startSegment) {
+            // rotated part way through; the earlier definitions are in the old segment
+            append(level, category, clientId, room, payloadType, template, args);
+            return;
+        }
+        length = 0;
+        putByte(KIND_EVENT);
+        putVarLong(Math.max(0, System.currentTimeMillis() - baseMillis));
+        putByte(levelIndex(level));
+        putVarLong(categoryId);
+        putVarLong((clientId << 1) ^ (clientId >> 63));
+        putVarLong(roomId);
+        putByte(payloadType == null ? 0 : payloadType.ordinal() + 1);
+        putVarLong(templateId);
+        int argc = Math.min(args.length, 255);
+        putByte(argc);
+        for (int i = 0; i < argc; i++) {
+            putString(String.valueOf(args[i]));
+        }
+        if (!commit()) {
+            // the dictionary entries went to the old segment; write them again
+            append(level, category, clientId, room, payloadType, template, args);
+        }
+    }
+
+    /**
+     * @return the dictionary id for a string, writing its definition first if
+     *         this segment hasn't seen it
+     */
+    private int intern(byte dictionary, String value) throws IOException {
+        String key = value == null ? "" : value;
+        Map<String, Integer> ids = dictionaries.get(dictionary);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        int next = ids.size() + 1;
+        length = 0;
+        putByte(KIND_DEFINE);
+        putByte(dictionary);
+        putVarLong(next);
+        putString(key);
+        if (!commit()) {
+            // rotated: the dictionaries were cleared, define it in the new segment
+            return intern(dictionary, value);
+        }
+        ids.put(key, next);
+        return next;
+    }
+
+    /**
+     * Copies the scratch record into the segment.
+     *
+     * @return false if the segment was full and a new one was started
+     *         instead; the record wasn't written
+     */
+    private boolean commit() throws IOException {
+        int needed = varLongSize(length) + length;
+        // keep room for the zero end marker
+        if (segment.remaining() < needed + 1) {
+            if (segment.position() == HEADER_SIZE) {
+                throw new IOException("Event of " + length + " bytes doesn't fit in a segment");
+            }
+            rotate();
+            return false;
+        }
+        long value = length;
+        while ((value & ~0x7FL) != 0) {
+            segment.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        segment.put((byte) value);
+        segment.put(scratch, 0, length);
+        return true;
+    }
+
+    private void openSegment() throws IOException {
+        segmentIndex++;
+        Path file = dir.resolve(segmentName(segmentIndex));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        baseMillis = System.currentTimeMillis();
+        segment.put(MAGIC);
+        segment.put(VERSION);
+        segment.putLong(baseMillis);
+        for (Map<String, Integer> ids : dictionaries) {
+            ids.clear();
+        }
+        deleteOldSegments();
+    }
+
+    private void rotate() throws IOException {
+        finishSegment();
+        openSegment();
+    }
+
+    /**
+     * Flushes the current segment and trims the unused tail off the file
+     */
+    private void finishSegment() {
+        int used = segment.position();
+        segment.force();
+        try {
+            channel.truncate(used + 1);
+        } catch (IOException e) {
+            // some platforms refuse to shrink a mapped file; the zero tail reads as the end
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Error closing event segment: " + e.getMessage());
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = listSegments(dir);
+        for (int i = 0; i < segments.size() - segmentCount; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * Flushes and closes the current segment. Later events are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        finishSegment();
+    }
+
+    private static int levelIndex(Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].intValue() <= level.intValue()) {
+                return i;
+            }
+        }
+        return LEVELS.length - 1;
+    }
+
+    private void putByte(int value) {
+        ensure(1);
+        scratch[length++] = (byte) value;
+    }
+
+    private void putVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            scratch[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        scratch[length++] = (byte) value;
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, scratch, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > scratch.length) {
+            throw new IllegalArgumentException("Event larger than " + scratch.length + " bytes");
+        }
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,58 @@
+package Project.Server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time as a {@link GameSession} sees it: its timers and the wall clock it
+ * stamps deadlines with.
+ * <p>
+ * The server uses {@link #SYSTEM}; a simulation can pass a clock it advances
+ * itself, so round and ready timers fire without waiting for them.
+ * </p>
+ */
+public interface GameClock {
+
+    /**
+     * A scheduled task
+     */
+    @FunctionalInterface
+    interface Timer {
+        /**
+         * Stops the task from running. Safe to call more than once.
+         *
+         * @return true if this call cancelled it
+         */
+        boolean cancel();
+    }
+
+    /**
+     * The server's {@link TimerWheel} and System.currentTimeMillis()
+     */
+    GameClock SYSTEM = new GameClock() {
+        @Override
+        public Timer schedule(Runnable task, long delay, TimeUnit unit) {
+            return Server.INSTANCE.getTimers().schedule(task, delay, unit)::cancel;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Runs a task once after a delay. The task runs on the clock's own thread,
+     * so it should only post work to the room.
+     *
+     * @param task  what to run
+     * @param delay how long to wait
+     * @param unit  unit of delay
+     * @return handle to cancel it with
+     */
+    Timer schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * @return the current time in epoch millis
+     */
+    long currentTimeMillis();
+}
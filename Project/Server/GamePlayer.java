@@ -0,0 +1,27 @@
+package Project.Server;
+
+import Project.Common.User;
+
+/**
+ * A client as seen by {@link GameSession}. {@link ServerThread} is the real
+ * one; a simulation can use plain objects.
+ */
+public interface GamePlayer {
+
+    long getClientId();
+
+    String getClientName();
+
+    User getUser();
+
+    boolean isSpectator();
+
+    /**
+     * Sends this client a message
+     *
+     * @param clientId who it's from, Constants.DEFAULT_CLIENT_ID for the server
+     * @param message  the text
+     * @return false if the client is gone
+     */
+    boolean sendMessage(long clientId, String message);
+}
@@ -0,0 +1,66 @@
+package Project.Server;
+
+import Project.Common.Payload;
+
+/**
+ * What a {@link GameSession} needs from the room it runs in. {@link Room} is
+ * the real one; a simulation can collect the payloads instead.
+ */
+public interface GameRoom {
+
+    /**
+     * @return the room's name, for logs and events
+     */
+    String getName();
+
+    /**
+     * Sends a Payload to every member of the room
+     *
+     * @param payload the Payload to send
+     */
+    void broadcastPayload(Payload payload);
+
+    /**
+     * Sends a message from the room itself to every member
+     *
+     * @param message the text
+     */
+    void broadcastMessage(String message);
+
+    /**
+     * Posts a message to the room, e.g. a timer callback, so it runs like any
+     * other room message.
+     *
+     * @param handler what it does, for the flight recorder
+     * @param task    work to run
+     */
+    void execute(String handler, Runnable task);
+
+    /**
+     * Called from the room's own messages when a game starts or ends or the
+     * rules change, e.g. so the room list can show it
+     */
+    void gameStateChanged();
+
+    /**
+     * @return where the room's rounds are rated
+     */
+    Ratings getRatings();
+
+    /**
+     * @return where the room's finished games are ranked
+     */
+    Leaderboard getLeaderboard();
+
+    /**
+     * @param name variant name, case-insensitive
+     * @return the variant the host asked for, or null if there's none by
+     *         that name
+     */
+    RuleSet getRuleSet(String name);
+
+    /**
+     * @return where the room's game events are recorded
+     */
+    EventLog getEvents();
+}
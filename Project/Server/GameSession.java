@@ -9,53 +9,157 @@ import Project.Common.*;
 import Project.Common.TextFX.Color;
 
 public class GameSession {
-    private Room room;
-    private Map<Long, PlayerState> players = new ConcurrentHashMap<>();
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> roundTimer;
-    private boolean inProgress = false;
-    private int round = 0;
-    private static final int TOTAL_ROUNDS = 5;
-    private static final int ROUND_TIME_SECONDS = 30;
+    private final GameRoom room;
+    private final GameClock clock;
+    // only touched from the room's mailbox
+    private Map<Long, PlayerState> players = new HashMap<>();
+    private GameClock.Timer roundTimer;
+    // volatile so the admin endpoint can read them off the mailbox
+    private volatile boolean inProgress = false;
+    private volatile int round = 0;
+    static final int TOTAL_ROUNDS = 5;
+    // -Dgame.roundSeconds
+    static final int ROUND_TIME_SECONDS = Math.max(1, Integer.getInteger("game.roundSeconds", 30));
+    // a game starts as soon as this many players are ready: -Dgame.maxPlayers
+    static final int MAX_PLAYERS = Math.max(2, Integer.getInteger("game.maxPlayers", 3));
+    // once this many are ready it starts after the ready window even if it isn't full: -Dgame.minPlayers
+    static final int MIN_PLAYERS = Math.min(MAX_PLAYERS,
+            Math.max(2, Integer.getInteger("game.minPlayers", MAX_PLAYERS)));
+    static final int READY_WINDOW_SECONDS = Integer.getInteger("game.readyWindowSeconds", 10);
+    // counters so readying and picking stay O(1) with thousands of players
+    private int readyCount = 0;
+    private int awaitingPicks = 0;
+    private GameClock.Timer readyTimer;
 
     private boolean extraOptionsEnabled = false;
     private boolean cooldownEnabled = false;
+    private volatile RuleSet rules = RuleSet.CLASSIC;
 
     public GameSession(Room room) {
+        this(room, GameClock.SYSTEM);
+    }
+
+    /**
+     * @param room  where the game's payloads go and its timers post to
+     * @param clock the session's timers and wall clock
+     */
+    public GameSession(GameRoom room, GameClock clock) {
         this.room = room;
+        this.clock = clock;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    /**
+     * @return the current round, or the last one if no game is running
+     */
+    public int getRound() {
+        return round;
+    }
+
+    public RuleSet getRules() {
+        return rules;
+    }
+
+    /**
+     * Adds a game event to the structured event log, if it's enabled
+     */
+    private void event(String template, Object... args) {
+        EventLog events = room.getEvents();
+        if (events.isEnabled()) {
+            events.record(java.util.logging.Level.INFO, "game", Constants.DEFAULT_CLIENT_ID, room.getName(), null,
+                    template, args);
+        }
     }
     
     // vvv THIS IS THE CORRECTED METHOD vvv
-    public synchronized void markReady(ServerThread sender, Payload readyPayload) {
+    public void markReady(GamePlayer sender, Payload readyPayload) {
         if (inProgress || sender.isSpectator()) return;
 
         // The first non-spectator to ready up is the host and sets the rules
-        if (getGamePlayers().stream().noneMatch(PlayerState::isReady)) {
+        if (readyCount == 0) {
             if (readyPayload instanceof ReadyPayload rp) {
                 this.extraOptionsEnabled = rp.areExtraOptionsEnabled();
                 this.cooldownEnabled = rp.isCooldownEnabled();
-                String settings = String.format("Game settings set by host: Extra Options [%b], Cooldown [%b]", extraOptionsEnabled, cooldownEnabled);
+                this.rules = extraOptionsEnabled ? RuleSet.LIZARD_SPOCK : RuleSet.CLASSIC;
+                if (rp.getRuleSet() != null) {
+                    RuleSet requested = room.getRuleSet(rp.getRuleSet());
+                    if (requested != null) {
+                        this.rules = requested;
+                    } else {
+                        sender.sendMessage(Constants.DEFAULT_CLIENT_ID,
+                                "Unknown rule set " + rp.getRuleSet() + ", playing " + rules.getName());
+                    }
+                }
+                String settings = String.format("Game settings set by host: Rules [%s], Extra Options [%b], Cooldown [%b]",
+                        rules.getName(), extraOptionsEnabled, cooldownEnabled);
                 broadcast(settings);
+                room.gameStateChanged();
             }
         }
 
         PlayerState p = players.computeIfAbsent(sender.getClientId(), id -> new PlayerState(sender));
         
-        // Prevent a 4th player from readying up if 3 are already ready
-        if (getGamePlayers().stream().filter(PlayerState::isReady).count() >= 3 && !p.isReady()) {
-            sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "The game is full with 3 players. Please wait for the next match.");
+        if (p.isReady()) return;
+
+        // Prevent readying up past the player cap
+        if (readyCount >= MAX_PLAYERS) {
+            sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "The game is full with " + MAX_PLAYERS + " players. Please wait for the next match.");
             return;
         }
 
         p.setReady(true);
+        readyCount++;
         
-        long readyCount = getGamePlayers().stream().filter(PlayerState::isReady).count();
-        
-        broadcast(sender.getClientName() + " is ready (" + readyCount + "/3)");
+        broadcast(sender.getClientName() + " is ready (" + readyCount + "/" + MAX_PLAYERS + ")");
         
-        // Start the game only when there are exactly 3 ready players
-        if (readyCount == 3) {
+        // Start right away when full, or after the ready window once there are enough
+        if (readyCount == MAX_PLAYERS) {
             startSession();
+        } else if (readyCount == MIN_PLAYERS) {
+            startReadyWindow();
+        }
+    }
+    private void startReadyWindow() {
+        broadcast(String.format("%d players ready. The game starts in %d seconds, or as soon as %d are ready.",
+                readyCount, READY_WINDOW_SECONDS, MAX_PLAYERS));
+        readyTimer = clock.schedule(() -> room.execute("readyTimer", () -> {
+            if (!inProgress && readyCount >= MIN_PLAYERS) {
+                startSession();
+            }
+        }), READY_WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+    private void stopReadyWindow() {
+        if (readyTimer != null) {
+            readyTimer.cancel();
+            readyTimer = null;
+        }
+    }
+    /**
+     * Forgets a player who left the room, so the ready count and the current
+     * round don't wait on them.
+     *
+     * @param clientId the departed client
+     */
+    public void removePlayer(long clientId) {
+        PlayerState p = players.remove(clientId);
+        if (p == null) return;
+        if (!inProgress) {
+            if (p.isReady()) {
+                readyCount--;
+                if (readyCount < MIN_PLAYERS) {
+                    stopReadyWindow();
+                }
+            }
+            return;
+        }
+        if (!p.isEliminated() && !p.isAway() && !p.isSpectator() && !p.hasPicked()) {
+            awaitingPicks--;
+            if (awaitingPicks <= 0) {
+                endRound();
+            }
         }
     }
     // ^^^ END OF CORRECTION ^^^
@@ -70,38 +174,44 @@ public class GameSession {
     }
 
     private void resolveBattles() {
+        long start = System.nanoTime();
         List<PlayerState> active = getActivePlayers();
-        if (active.size() < 2) return;
 
-        broadcast("--- Round " + round + " Results ---");
-        
-        for (int i = 0; i < active.size(); i++) {
-            for (int j = i + 1; j < active.size(); j++) {
-                PlayerState p1 = active.get(i);
-                PlayerState p2 = active.get(j);
-                String choice1 = p1.getPick();
-                String choice2 = p2.getPick();
-                int result = compare(choice1, choice2);
-                String battleLog = String.format("%s (%s) vs %s (%s)", p1.getName(), choice1, p2.getName(), choice2);
+        // every pair still "battles", but scoring is per pick: O(n + k^2)
+        RoundResolver resolver = new RoundResolver(active, rules);
+        resolver.applyPoints();
+        room.getRatings().recordRound(active, rules);
 
-                if (result == 1) {
-                    p1.addPoint();
-                    syncPoints(p1);
-                    broadcast(battleLog + " -> " + p1.getName() + " wins!");
-                } else if (result == -1) {
-                    p2.addPoint();
-                    syncPoints(p2);
-                    broadcast(battleLog + " -> " + p2.getName() + " wins!");
-                } else {
-                    broadcast(battleLog + " -> Tie!");
-                }
+        Map<Long, String> picks = new HashMap<>();
+        for (PlayerState p : active) {
+            if (p.hasPicked()) {
+                picks.put(p.getId(), rules.getPick(p.getPick()));
             }
         }
+        List<Long> missed = new ArrayList<>();
+        for (PlayerState p : resolver.getNoPick()) {
+            missed.add(p.getId());
+        }
+        Map<Long, Integer> totals = new HashMap<>();
+        for (PlayerState p : getGamePlayers()) {
+            totals.put(p.getId(), p.getPoints());
+        }
+        // one payload for the whole round; clients render the summary from it
+        RoundResultPayload result = new RoundResultPayload();
+        result.setRoundNumber(round);
+        result.setPlayerPicks(picks);
+        result.setMissedPicks(missed);
+        result.setChoicePoints(resolver.getChoicePoints());
+        result.setPlayerPoints(totals);
+        // the broadcast has its own histogram
+        Metrics.INSTANCE.getRoundResolutionTime().recordSince(start);
+        room.broadcastPayload(result);
     }
     
     private void endSession() {
         inProgress = false;
         stopRoundTimer();
+        room.gameStateChanged();
 
         int maxScore = -1;
         for (PlayerState p : getGamePlayers()) {
@@ -134,8 +244,10 @@ public class GameSession {
         }
         finalResult.setPlayerPoints(finalPoints);
         room.broadcastPayload(finalResult);
+        room.getLeaderboard().recordGame(getGamePlayers(), winners);
 
         broadcast("== GAME OVER ==");
+        event("game over, winners {}", winners);
         
         Payload resetPayload = new Payload();
         resetPayload.setPayloadType(PayloadType.RESET_GAME_STATE);
@@ -145,10 +257,24 @@ public class GameSession {
     }
     
     // --- (The rest of the file is unchanged, but is included for completeness) ---
-    public synchronized void toggleAwayStatus(ServerThread sender) {
+    public void toggleAwayStatus(GamePlayer sender) {
         if(sender.isSpectator()) return;
-        PlayerState p = players.computeIfAbsent(sender.getClientId(), id -> new PlayerState(sender));
+        PlayerState p = inProgress ? players.get(sender.getClientId())
+                : players.computeIfAbsent(sender.getClientId(), id -> new PlayerState(sender));
+        if (p == null) {
+            sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "You're not in the current game.");
+            return;
+        }
         p.setAway(!p.isAway());
+        if (inProgress && !p.isEliminated()) {
+            if (p.isAway()) {
+                if (!p.hasPicked()) awaitingPicks--;
+            } else {
+                // back mid-round: drop any pick left over from before and wait for a new one
+                p.setPick(RuleSet.NO_PICK);
+                awaitingPicks++;
+            }
+        }
         if (p.isAway()) {
             p.setStatus(PlayerStatus.AWAY);
             broadcast(p.getName() + " is now away.");
@@ -157,6 +283,9 @@ public class GameSession {
             broadcast(p.getName() + " is no longer away.");
         }
         syncPlayerStatus(p);
+        if (inProgress && awaitingPicks <= 0) {
+            endRound();
+        }
     }
     private List<PlayerState> getGamePlayers() {
         return players.values().stream()
@@ -170,8 +299,14 @@ public class GameSession {
     }
     private void startSession() {
         inProgress = true;
+        room.gameStateChanged();
         round = 0;
-        LoggerUtil.INSTANCE.info(TextFX.colorize("GameSession: Starting game", TextFX.Color.GREEN));
+        stopReadyWindow();
+        // only the players who readied up take part
+        players.values().removeIf(p -> !p.isReady());
+        readyCount = 0;
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize("GameSession: Starting game", TextFX.Color.GREEN));
+        event("game started with {} players, rules {}", players.size(), rules.getName());
         
         getGamePlayers().forEach(p -> {
             p.setEliminated(false);
@@ -183,58 +318,87 @@ public class GameSession {
         startRound();
     }
     private void startRound() {
+        ServerEvents.RoundStarted event = new ServerEvents.RoundStarted();
+        event.begin();
         round++;
-        LoggerUtil.INSTANCE.info(TextFX.colorize("GameSession: Starting Round " + round, TextFX.Color.YELLOW));
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize("GameSession: Starting Round " + round, TextFX.Color.YELLOW));
+        event("round {} started", round);
         getActivePlayers().forEach(p -> {
-            p.setPick(null);
+            p.setPick(RuleSet.NO_PICK);
             p.setStatus(PlayerStatus.WAITING);
             syncPlayerStatus(p);
         });
+        awaitingPicks = getActivePlayers().size();
         RoundStartPayload roundStartPayload = new RoundStartPayload(round, ROUND_TIME_SECONDS);
+        // lets clients count down against our clock instead of their own timers
+        roundStartPayload.setDeadline(clock.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ROUND_TIME_SECONDS));
         room.broadcastPayload(roundStartPayload);
         startRoundTimer();
+        if (event.shouldCommit()) {
+            event.room = room.getName();
+            event.round = round;
+            event.players = awaitingPicks;
+            event.commit();
+        }
     }
     private void endRound() {
         stopRoundTimer();
-        LoggerUtil.INSTANCE.info(TextFX.colorize("GameSession: Ending Round " + round, TextFX.Color.RED));
-        List<PlayerState> active = getActivePlayers();
-        for (PlayerState p : active) {
-            if (p.getPick() == null) {
-                broadcast(p.getName() + " did not make a pick.");
-            }
-        }
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize("GameSession: Ending Round " + round, TextFX.Color.RED));
+        event("round {} ended, {} picks missing", round, Math.max(0, awaitingPicks));
+        ServerEvents.RoundResolved resolved = new ServerEvents.RoundResolved();
+        // counted before scoring can eliminate anyone
+        int players = resolved.isEnabled() ? getActivePlayers().size() : 0;
+        resolved.begin();
         resolveBattles();
+        if (resolved.shouldCommit()) {
+            resolved.room = room.getName();
+            resolved.round = round;
+            resolved.players = players;
+            resolved.commit();
+        }
+        // may start the next round, which has its own event
         evaluateGameStatus();
     }
-    public synchronized void registerPick(ServerThread sender, String rawPick) {
+    /**
+     * Locks in a player's pick for the current round
+     *
+     * @param sender     the picking client
+     * @param rawPick    the choice name
+     * @param traceId    the pick's trace id, echoed on the PICKED status so the
+     *                   client can time the round trip; 0 if untraced
+     * @param receivedAt System.nanoTime() when the pick was read
+     */
+    public void registerPick(GamePlayer sender, String rawPick, long traceId, long receivedAt) {
         if (!inProgress) {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Game has not started.");
             return;
         }
         PlayerState p = players.get(sender.getClientId());
         if (p == null || p.isEliminated() || p.isAway() || p.isSpectator()) return;
-        String pick = rawPick.trim().toLowerCase();
-        
-        Set<String> validPicks = new HashSet<>(Set.of("rock", "paper", "scissors"));
-        if (extraOptionsEnabled) {
-            validPicks.add("lizard");
-            validPicks.add("spock");
-        }
-        
-        if (!validPicks.contains(pick)) {
+        int pick = rules.indexOf(rawPick);
+        if (pick == RuleSet.NO_PICK) {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Invalid pick for the current game rules.");
             return;
         }
 
-        if (p.getPick() != null) {
+        if (p.hasPicked()) {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "You've already picked for this round.");
             return;
         }
         p.setPick(pick);
         p.setStatus(PlayerStatus.PICKED);
-        syncPlayerStatus(p);
+        PlayerStatusPayload picked = new PlayerStatusPayload(p.getId(), p.getStatus());
+        if (traceId != 0) {
+            picked.setTraceId(traceId);
+            picked.setSentAt(clock.currentTimeMillis());
+        }
+        room.broadcastPayload(picked);
+        if (traceId != 0) {
+            Metrics.INSTANCE.getPickLatency().recordSince(receivedAt);
+        }
         broadcast(p.getName() + " has locked in their pick.");
-        if (allActivePicked()) {
+        awaitingPicks--;
+        if (awaitingPicks <= 0) {
             endRound();
         }
     }
@@ -243,38 +407,32 @@ public class GameSession {
         room.broadcastPayload(psp);
     }
     private void broadcast(String msg) {
-        room.relay(null, msg);
-    }
-    private void syncPoints(PlayerState p) {
-        PointsPayload pp = new PointsPayload();
-        pp.setClientId(p.getId());
-        pp.setPoints(p.getPoints());
-        pp.setPayloadType(PayloadType.SYNC_POINTS);
-        room.broadcastPayload(pp);
+        room.broadcastMessage(msg);
     }
     private void startRoundTimer() {
-        roundTimer = scheduler.schedule(() -> {
+        final int timerRound = round;
+        // the timer only posts; endRound runs on the room's mailbox like everything else
+        roundTimer = clock.schedule(() -> room.execute("roundTimer", () -> {
+            // the round may have ended while this message was queued
+            if (!inProgress || round != timerRound) {
+                return;
+            }
             LoggerUtil.INSTANCE.info("GameSession: Timer expired");
             endRound();
-        }, ROUND_TIME_SECONDS, TimeUnit.SECONDS);
+        }), ROUND_TIME_SECONDS, TimeUnit.SECONDS);
     }
     private void stopRoundTimer() {
         if (roundTimer != null) {
-            roundTimer.cancel(false);
+            roundTimer.cancel();
+            roundTimer = null;
         }
     }
-    private boolean allActivePicked() {
-        return getActivePlayers().stream().allMatch(p -> p.getPick() != null);
-    }
-    private int compare(String a, String b) {
-        if (a == null || b == null || a.equals(b)) return 0;
-        return switch (a) {
-            case "rock" -> (b.equals("scissors") || b.equals("lizard")) ? 1 : -1;
-            case "paper" -> (b.equals("rock") || b.equals("spock")) ? 1 : -1;
-            case "scissors" -> (b.equals("paper") || b.equals("lizard")) ? 1 : -1;
-            case "lizard" -> (b.equals("spock") || b.equals("paper")) ? 1 : -1;
-            case "spock" -> (b.equals("scissors") || b.equals("rock")) ? 1 : -1;
-            default -> 0;
-        };
+    /**
+     * Cancels any pending round timer when the room closes.
+     */
+    public void shutdown() {
+        inProgress = false;
+        stopRoundTimer();
+        stopReadyWindow();
     }
 }
\ No newline at end of file
@@ -0,0 +1,394 @@
+package Project.Server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import Project.Common.LeaderboardPayload.Entry;
+
+/**
+ * Server-wide ranking of every player who finished a game, by career points,
+ * then wins, then name.
+ * <p>
+ * Players are kept in an indexed skip list: each link also records how many
+ * players it skips, so finding a player's rank or the player at a rank walks
+ * O(log n) links, the same as an insert. A page of the top players, or of
+ * the players around someone, is one such walk plus the page itself, so
+ * queries don't get slower as the board grows and nothing is ever sorted. A
+ * map from lowercased name finds a player's node for updates and rank
+ * lookups.
+ * </p>
+ * Rooms record games concurrently, so changes take a write lock; a finished
+ * game moves each of its players in one O(log n) step. Queries share a read
+ * lock and don't block each other.
+ */
+public class Leaderboard implements SavedTable {
+    private static final int MAX_LEVEL = 32;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock
+    private final Node head = new Node(null, null, MAX_LEVEL);
+    private final Map<String, Node> byName = new HashMap<>();
+    private int levels = 1;
+    private int size = 0;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    /**
+     * A ranked player and their links
+     */
+    private static final class Node {
+        // lowercased name, which also breaks ties
+        private final String key;
+        private String name;
+        private long points;
+        private int wins;
+        private int games;
+        private final Node[] next;
+        // players from here to next[level], counting the one it lands on
+        private final int[] span;
+
+        private Node(String key, String name, int levels) {
+            this.key = key;
+            this.name = name;
+            this.next = new Node[levels];
+            this.span = new int[levels];
+        }
+
+        /**
+         * @return true if this player ranks above the other
+         */
+        private boolean isAbove(Node other) {
+            if (points != other.points) {
+                return points > other.points;
+            }
+            if (wins != other.wins) {
+                return wins > other.wins;
+            }
+            return key.compareTo(other.key) < 0;
+        }
+    }
+
+    /**
+     * @return a level for a new node: 1, and one more with a chance of 1 in 4
+     *         each time
+     */
+    private static int randomLevels() {
+        int levels = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (levels < MAX_LEVEL && random.nextInt(4) == 0) {
+            levels++;
+        }
+        return levels;
+    }
+
+    private static String keyOf(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Links a node in at its place for its current score
+     */
+    private void insert(Node node) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node at = head;
+        for (int level = levels - 1; level >= 0; level--) {
+            rank[level] = level == levels - 1 ? 0 : rank[level + 1];
+            while (at.next[level] != null && at.next[level].isAbove(node)) {
+                rank[level] += at.span[level];
+                at = at.next[level];
+            }
+            update[level] = at;
+        }
+        int height = node.next.length;
+        for (int level = levels; level < height; level++) {
+            update[level] = head;
+            head.span[level] = size;
+        }
+        levels = Math.max(levels, height);
+        for (int level = 0; level < height; level++) {
+            node.next[level] = update[level].next[level];
+            update[level].next[level] = node;
+            node.span[level] = update[level].span[level] - (rank[0] - rank[level]);
+            update[level].span[level] = rank[0] - rank[level] + 1;
+        }
+        // links over the new node now skip one more
+        for (int level = height; level < levels; level++) {
+            update[level].span[level]++;
+        }
+        size++;
+    }
+
+    /**
+     * Unlinks a node; its score must be the one it was inserted with
+     */
+    private void remove(Node node) {
+        Node at = head;
+        for (int level = levels - 1; level >= 0; level--) {
+            while (at.next[level] != null && at.next[level].isAbove(node)) {
+                at = at.next[level];
+            }
+            if (at.next[level] == node) {
+                at.span[level] += node.span[level] - 1;
+                at.next[level] = node.next[level];
+            } else {
+                at.span[level]--;
+            }
+        }
+        while (levels > 1 && head.next[levels - 1] == null) {
+            levels--;
+        }
+        size--;
+    }
+
+    /**
+     * @return the node's rank, 1 for the top
+     */
+    private int rankOf(Node node) {
+        int rank = 0;
+        Node at = head;
+        for (int level = levels - 1; level >= 0; level--) {
+            while (at.next[level] != null && (at.next[level] == node || at.next[level].isAbove(node))) {
+                rank += at.span[level];
+                at = at.next[level];
+            }
+            if (at == node) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the node at a rank from 1 to size
+     */
+    private Node nodeAt(int rank) {
+        int passed = 0;
+        Node at = head;
+        for (int level = levels - 1; level >= 0; level--) {
+            while (at.next[level] != null && passed + at.span[level] <= rank) {
+                passed += at.span[level];
+                at = at.next[level];
+            }
+            if (passed == rank) {
+                return at;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a finished game to its players' records
+     *
+     * @param players everyone who played it, with their final points
+     * @param winners names of the players with the top score, if anyone
+     *                scored
+     */
+    public void recordGame(Collection<PlayerState> players, Collection<String> winners) {
+        Set<String> winnerKeys = new HashSet<>();
+        for (String winner : winners) {
+            winnerKeys.add(keyOf(winner));
+        }
+        lock.writeLock().lock();
+        try {
+            for (PlayerState player : players) {
+                String name = player.getName();
+                if (name == null) {
+                    continue;
+                }
+                String key = keyOf(name);
+                Node node = byName.get(key);
+                if (node == null) {
+                    node = new Node(key, name, randomLevels());
+                    byName.put(key, node);
+                } else {
+                    remove(node);
+                    node.name = name;
+                }
+                node.points += player.getPoints();
+                node.wins += winnerKeys.contains(key) ? 1 : 0;
+                node.games++;
+                insert(node);
+            }
+            dirty.set(true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return ranked players
+     */
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param name a player's name, any case
+     * @return their rank, 1 for the top, or 0 if they haven't finished a game
+     */
+    public int getRank(String name) {
+        lock.readLock().lock();
+        try {
+            Node node = byName.get(keyOf(name));
+            return node == null ? 0 : rankOf(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param startRank rank of the first entry, 1 for the top
+     * @param count     entries wanted
+     * @return up to count entries from that rank down; empty past the end
+     */
+    public List<Entry> getPage(int startRank, int count) {
+        lock.readLock().lock();
+        try {
+            return page(Math.max(1, startRank), count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param name  a player's name, any case
+     * @param count entries wanted
+     * @return a page with the player in the middle, or as near as the ends
+     *         of the board allow; empty if they haven't finished a game
+     */
+    public List<Entry> getAround(String name, int count) {
+        lock.readLock().lock();
+        try {
+            Node node = byName.get(keyOf(name));
+            if (node == null || count <= 0) {
+                return new ArrayList<>();
+            }
+            int start = rankOf(node) - (count - 1) / 2;
+            start = Math.max(1, Math.min(start, size - count + 1));
+            return page(start, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Entry> page(int startRank, int count) {
+        List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, size - startRank + 1)));
+        Node at = startRank <= size ? nodeAt(startRank) : null;
+        for (int rank = startRank; at != null && entries.size() < count; rank++, at = at.next[0]) {
+            entries.add(new Entry(rank, at.name, at.points, at.wins, at.games));
+        }
+        return entries;
+    }
+
+    /**
+     * Reads records written by {@link #save}, replacing any of the same name
+     *
+     * @param file tab separated name, points, wins and games per line
+     * @throws IOException if the file can't be read or is malformed
+     */
+    @Override
+    public void load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                // names may start with #, so only a line that isn't a record is a comment
+                boolean comment = line.startsWith("#");
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    if (comment) {
+                        continue;
+                    }
+                    throw new IOException(file + ": expected name, points, wins and games but got: " + line);
+                }
+                try {
+                    long points = Long.parseLong(fields[1]);
+                    int wins = Integer.parseInt(fields[2]);
+                    int games = Integer.parseInt(fields[3]);
+                    String key = keyOf(fields[0]);
+                    Node node = byName.get(key);
+                    if (node == null) {
+                        node = new Node(key, fields[0], randomLevels());
+                        byName.put(key, node);
+                    } else {
+                        remove(node);
+                    }
+                    node.points = points;
+                    node.wins = wins;
+                    node.games = games;
+                    insert(node);
+                } catch (NumberFormatException e) {
+                    if (comment) {
+                        continue;
+                    }
+                    throw new IOException(file + ": bad number in: " + line);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the board in rank order if anything changed since the last
+     * save. The file is replaced in one move, so a crash mid-save leaves the
+     * previous one.
+     *
+     * @param file where to write
+     * @return false if there was nothing new to save
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public boolean save(Path file) throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return false;
+        }
+        List<Entry> entries;
+        // copy under the lock, write outside it
+        lock.readLock().lock();
+        try {
+            entries = page(1, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                out.write("# name\tpoints\twins\tgames\n");
+                for (Entry entry : entries) {
+                    String name = entry.getName().replaceAll("[\\t\\r\\n]", " ");
+                    out.write(name + "\t" + entry.getPoints() + "\t" + entry.getWins() + "\t" + entry.getGames());
+                    out.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty.set(true);
+            throw e;
+        }
+        return true;
+    }
+}
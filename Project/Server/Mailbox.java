@@ -0,0 +1,165 @@
+package Project.Server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import Project.Common.Histogram;
+import Project.Common.LoggerUtil;
+
+/**
+ * Serial executor that multiplexes one owner's messages over a shared pool.
+ * <p>
+ * Messages run one at a time, in the order they were posted, so everything
+ * they touch is confined to whichever worker is currently draining and needs
+ * no locks. At most one worker drains a mailbox at a time, and it gives the
+ * thread back after {@link #BATCH} messages so a busy owner can't starve the
+ * others sharing the pool.
+ * </p>
+ */
+public class Mailbox implements Executor {
+    private static final int BATCH = 64;
+    private final String name;
+    private final Executor workers;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile Thread current;
+    private final Histogram taskTime;
+
+    /**
+     * @param name    used in error logs
+     * @param workers pool the mailbox drains on
+     */
+    public Mailbox(String name, Executor workers) {
+        this(name, workers, null);
+    }
+
+    /**
+     * @param name     used in error logs
+     * @param workers  pool the mailbox drains on
+     * @param taskTime records how long each message takes to run, or null
+     */
+    public Mailbox(String name, Executor workers, Histogram taskTime) {
+        this.name = name;
+        this.workers = workers;
+        this.taskTime = taskTime;
+    }
+
+    /**
+     * Posts a message. Safe to call from any thread, including from a message
+     * of this mailbox (it runs after the current one).
+     *
+     * @param task message to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        execute(null, task);
+    }
+
+    /**
+     * Posts a message with a name for the flight recorder's RoomHandler event.
+     *
+     * @param handler what the message does, e.g. "pick"
+     * @param task    message to run
+     */
+    public void execute(String handler, Runnable task) {
+        if (ServerEvents.RoomHandler.isTypeEnabled()) {
+            task = new Recorded(handler, task);
+        }
+        queue.add(task);
+        size.incrementAndGet();
+        schedule();
+    }
+
+    /**
+     * @return true if the calling thread is currently running this mailbox's
+     *         messages
+     */
+    public boolean inMailbox() {
+        return current == Thread.currentThread();
+    }
+
+    /**
+     * @return messages waiting to run
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * A message that emits a RoomHandler event with its queue wait and run
+     * time. Only used while a recording has the event enabled.
+     */
+    private class Recorded implements Runnable {
+        private final String handler;
+        private final Runnable task;
+        private final long postedAt = System.nanoTime();
+
+        private Recorded(String handler, Runnable task) {
+            this.handler = handler;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            ServerEvents.RoomHandler event = new ServerEvents.RoomHandler();
+            event.queueWait = System.nanoTime() - postedAt;
+            event.begin();
+            try {
+                task.run();
+            } finally {
+                if (event.shouldCommit()) {
+                    event.room = name;
+                    event.handler = handler;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            workers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // the worker pool is shutting down
+            scheduled.set(false);
+            LoggerUtil.INSTANCE.warning(String.format("Mailbox %s dropped %d messages, workers are stopped", name,
+                    size.getAndSet(0)));
+            queue.clear();
+        }
+    }
+
+    private void drain() {
+        current = Thread.currentThread();
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = queue.poll();
+                if (task == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                long start = taskTime != null ? System.nanoTime() : 0;
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    LoggerUtil.INSTANCE.severe("Message failed in mailbox " + name, t);
+                }
+                if (taskTime != null) {
+                    taskTime.recordSince(start);
+                }
+            }
+        } finally {
+            current = null;
+            scheduled.set(false);
+            // more was posted (or the batch ran out); go to the back of the pool's queue
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package Project.Server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import Project.Common.Constants;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.ReadyPayload;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+import Project.Exceptions.DuplicateRoomException;
+import Project.Exceptions.RoomNotFoundException;
+
+/**
+ * Server-side matchmaking: players queue from the lobby and are moved into a
+ * new room with the game already readied once enough of them are waiting.
+ * <p>
+ * Players wait in one FIFO queue per preference (rule set and cooldown) and
+ * rating band (see {@link Ratings#getBand}), so a group is players of about
+ * the same skill, and a group of {@link #GROUP_SIZE} forms as soon as a
+ * queue has one. Waiting is bounded: after match.relaxSeconds a player takes
+ * any rules and any opponents, so the longest waiting are grouped across
+ * queues with the oldest one's settings; after match.maxWaitSeconds a group
+ * of game.minPlayers is good enough, and a player still alone is taken out
+ * of the queue and told so.
+ * </p>
+ * Like a Room it's an actor: every call posts to its {@link Mailbox}, so the
+ * queues need no locks. Players who left the lobby or disconnected are
+ * dropped when their group forms. Each matched player's wait goes to
+ * {@link Metrics#getTimeToMatch()}.
+ */
+public class Matchmaker {
+    // players per match: -Dmatch.size, within game.minPlayers..game.maxPlayers
+    static final int GROUP_SIZE = Math.max(GameSession.MIN_PLAYERS,
+            Math.min(GameSession.MAX_PLAYERS, Integer.getInteger("match.size", GameSession.MAX_PLAYERS)));
+    // after this long a player takes any rules and ratings: -Dmatch.relaxSeconds
+    private static final long RELAX_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("match.relaxSeconds", 15));
+    // nobody stays queued longer than this: -Dmatch.maxWaitSeconds
+    private static final long MAX_WAIT_NANOS = Math.max(RELAX_NANOS,
+            TimeUnit.SECONDS.toNanos(Integer.getInteger("match.maxWaitSeconds", 60)));
+    private static final long TICK_MILLIS = 500;
+    private static final String ROOM_PREFIX = "match-";
+    // -Dlog.levels=match=WARNING silences matchmaking messages
+    private static final String MATCH_LOG = "match";
+
+    private final Mailbox mailbox;
+    private final TimerWheel timers;
+    // only touched from the mailbox
+    private final Map<String, ArrayDeque<Ticket>> queues = new HashMap<>();
+    private final Map<Long, Ticket> tickets = new HashMap<>();
+    private TimerWheel.Timeout tick;
+    private long nextRoom = 0;
+    // volatile so the metrics report can read them off the mailbox
+    private volatile int queued = 0;
+    private volatile long matched = 0;
+    private volatile long expired = 0;
+
+    /**
+     * A queued player
+     */
+    private static final class Ticket {
+        private final ServerThread client;
+        // what the group's host readies with if this player is the oldest
+        private final ReadyPayload settings;
+        private final String preference;
+        // the preference plus the player's rating band
+        private final String queueKey;
+        private final long queuedAt = System.nanoTime();
+
+        private Ticket(ServerThread client, ReadyPayload settings, String preference, int band) {
+            this.client = client;
+            this.settings = settings;
+            this.preference = preference;
+            this.queueKey = preference + "@" + band;
+        }
+
+        private long waited(long now) {
+            return now - queuedAt;
+        }
+    }
+
+    /**
+     * @param workers pool the matcher's mailbox runs on
+     * @param timers  drives the wait checks while anyone is queued
+     */
+    public Matchmaker(Executor workers, TimerWheel timers) {
+        this.mailbox = new Mailbox("matchmaker", workers);
+        this.timers = timers;
+    }
+
+    private void info(String message) {
+        LoggerUtil.INSTANCE.log(MATCH_LOG, Level.INFO,
+                () -> TextFX.colorize(String.format("Matchmaker: %s", message), Color.BLUE));
+    }
+
+    /**
+     * @return players waiting for a match
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return matches formed so far
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return players taken out of the queue without a match
+     */
+    public long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Queues a player, or updates their preferences if they're already queued
+     *
+     * @param client  the player, who must be in the lobby
+     * @param request a ReadyPayload with the game they'd like to play
+     */
+    public void enqueue(ServerThread client, Payload request) {
+        mailbox.execute("enqueue", () -> {
+            if (client.isSpectator()) {
+                client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Spectators can't queue for a match.");
+                return;
+            }
+            if (!isInLobby(client)) {
+                client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Go back to the lobby to queue for a match.");
+                return;
+            }
+            ReadyPayload settings = toSettings(client, request);
+            if (settings == null) {
+                return;
+            }
+            remove(client.getClientId());
+            String preference = settings.getRuleSet() + (settings.isCooldownEnabled() ? "+cooldown" : "");
+            int band = Server.INSTANCE.getRatings().getBand(client.getClientName());
+            Ticket ticket = new Ticket(client, settings, preference, band);
+            ArrayDeque<Ticket> queue = queues.computeIfAbsent(ticket.queueKey, key -> new ArrayDeque<>());
+            queue.add(ticket);
+            tickets.put(client.getClientId(), ticket);
+            queued = tickets.size();
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format(
+                    "Looking for a %d player %s match rated %d-%d (%d of %d waiting). /unqueue to stop.",
+                    GROUP_SIZE, preference, band * Ratings.BAND_WIDTH, (band + 1) * Ratings.BAND_WIDTH - 1,
+                    queue.size(), GROUP_SIZE));
+            matchQueue(queue);
+            if (tick == null && !tickets.isEmpty()) {
+                scheduleTick();
+            }
+        });
+    }
+
+    /**
+     * Takes a player out of the queue
+     *
+     * @param client the player
+     */
+    public void leave(ServerThread client) {
+        mailbox.execute("leave", () -> {
+            if (remove(client.getClientId())) {
+                client.sendMessage(Constants.DEFAULT_CLIENT_ID, "You left the match queue.");
+            } else {
+                client.sendMessage(Constants.DEFAULT_CLIENT_ID, "You aren't queued for a match.");
+            }
+        });
+    }
+
+    /**
+     * @return the game the player asked for, with the rules resolved to a
+     *         name, or null if there's no such rule set
+     */
+    private ReadyPayload toSettings(ServerThread client, Payload request) {
+        ReadyPayload settings = new ReadyPayload();
+        RuleSet rules = RuleSet.CLASSIC;
+        if (request instanceof ReadyPayload rp) {
+            settings.setExtraOptionsEnabled(rp.areExtraOptionsEnabled());
+            settings.setCooldownEnabled(rp.isCooldownEnabled());
+            rules = rp.areExtraOptionsEnabled() ? RuleSet.LIZARD_SPOCK : RuleSet.CLASSIC;
+            if (rp.getRuleSet() != null) {
+                rules = Server.INSTANCE.getRuleSet(rp.getRuleSet());
+                if (rules == null) {
+                    client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Unknown rule set " + rp.getRuleSet());
+                    return null;
+                }
+            }
+        }
+        settings.setRuleSet(rules.getName());
+        return settings;
+    }
+
+    private boolean remove(long clientId) {
+        Ticket ticket = tickets.remove(clientId);
+        if (ticket == null) {
+            return false;
+        }
+        ArrayDeque<Ticket> queue = queues.get(ticket.queueKey);
+        queue.remove(ticket);
+        if (queue.isEmpty()) {
+            queues.remove(ticket.queueKey);
+        }
+        queued = tickets.size();
+        return true;
+    }
+
+    private static boolean isInLobby(ServerThread client) {
+        Room room = client.getCurrentRoom();
+        return client.isRunning() && room != null && Room.LOBBY.equalsIgnoreCase(room.getName());
+    }
+
+    /**
+     * Drops a player who can't be matched any more, e.g. because they
+     * disconnected or joined a room themselves
+     *
+     * @return true if they're still good to match
+     */
+    private boolean check(Ticket ticket) {
+        if (isInLobby(ticket.client)) {
+            return true;
+        }
+        remove(ticket.client.getClientId());
+        return false;
+    }
+
+    /**
+     * Forms full groups from the front of one queue
+     */
+    private void matchQueue(ArrayDeque<Ticket> queue) {
+        while (queue.size() >= GROUP_SIZE) {
+            List<Ticket> group = new ArrayList<>(GROUP_SIZE);
+            Iterator<Ticket> iterator = queue.iterator();
+            while (group.size() < GROUP_SIZE && iterator.hasNext()) {
+                group.add(iterator.next());
+            }
+            // a dropped player shrinks the queue, so this loop ends either way
+            if (group.stream().allMatch(this::check)) {
+                start(group);
+            }
+        }
+    }
+
+    private void scheduleTick() {
+        tick = timers.schedule(() -> mailbox.execute("matchTick", this::onTick), TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Groups whoever has waited too long for their own preference and band
+     */
+    private void onTick() {
+        tick = null;
+        long now = System.nanoTime();
+        List<Ticket> waiting = new ArrayList<>(tickets.values());
+        waiting.removeIf(ticket -> !check(ticket));
+        waiting.sort(Comparator.comparingLong(ticket -> ticket.queuedAt));
+        // past the relax time anyone goes, whatever they asked for
+        int relaxed = 0;
+        while (relaxed < waiting.size() && waiting.get(relaxed).waited(now) >= RELAX_NANOS) {
+            relaxed++;
+        }
+        int next = 0;
+        while (relaxed - next >= GROUP_SIZE) {
+            start(waiting.subList(next, next + GROUP_SIZE));
+            next += GROUP_SIZE;
+        }
+        // past the longest wait a smaller group will do, filled with whoever is left
+        while (next < waiting.size() && waiting.get(next).waited(now) >= MAX_WAIT_NANOS) {
+            int size = Math.min(GROUP_SIZE, waiting.size() - next);
+            if (size >= GameSession.MIN_PLAYERS) {
+                start(waiting.subList(next, next + size));
+                next += size;
+                continue;
+            }
+            Ticket alone = waiting.get(next++);
+            remove(alone.client.getClientId());
+            expired++;
+            alone.client.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format(
+                    "No match found after %d seconds. Try /queue again later.",
+                    TimeUnit.NANOSECONDS.toSeconds(MAX_WAIT_NANOS)));
+        }
+        if (!tickets.isEmpty()) {
+            scheduleTick();
+        }
+    }
+
+    /**
+     * Moves a group into a new room and readies them. The oldest player's
+     * settings are the game's.
+     */
+    private void start(List<Ticket> group) {
+        Ticket host = group.get(0);
+        for (Ticket ticket : group) {
+            if (ticket.queuedAt < host.queuedAt) {
+                host = ticket;
+            }
+        }
+        Room room = null;
+        String name = null;
+        while (room == null) {
+            name = ROOM_PREFIX + (++nextRoom);
+            try {
+                room = Server.INSTANCE.createRoom(name);
+            } catch (DuplicateRoomException e) {
+                // someone took the name by hand; try the next one
+            }
+        }
+        matched++;
+        info(String.format("%s: %d players, %s", name, group.size(), host.preference));
+        // the host readies first so its settings are the game's
+        List<Ticket> order = new ArrayList<>(group);
+        order.remove(host);
+        order.add(0, host);
+        for (Ticket ticket : order) {
+            remove(ticket.client.getClientId());
+            Metrics.INSTANCE.getTimeToMatch().recordSince(ticket.queuedAt);
+            ServerThread client = ticket.client;
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Match found! Joining " + name + ".");
+            try {
+                Server.INSTANCE.joinRoom(name, client);
+            } catch (RoomNotFoundException e) {
+                LoggerUtil.INSTANCE.warning("Matchmaker: " + name + " closed before everyone joined");
+                continue;
+            }
+            // queued behind the join on the room's mailbox
+            room.handleGameReady(client, ticket == host ? host.settings : new ReadyPayload());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package Project.Server;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import Project.Common.Histogram;
+import Project.Common.PayloadType;
+
+/**
+ * Server-wide counters and latency histograms.
+ * <p>
+ * Everything here is lock-free and allocated up front: payloads in and out are
+ * LongAdders indexed by PayloadType ordinal, and the timings are fixed-size
+ * {@link Histogram}s in nanoseconds. Per-connection byte counts live on each
+ * {@link BaseServerThread}; the totals are kept here as well.
+ * </p>
+ */
+public enum Metrics {
+    INSTANCE;
+
+    private static final PayloadType[] TYPES = PayloadType.values();
+    // per-connection lines in a snapshot, busiest first
+    private static final int TOP_CONNECTIONS = 20;
+
+    private final LongAdder[] payloadsIn = newCounters();
+    private final LongAdder[] payloadsOut = newCounters();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Histogram decodeTime = new Histogram("decode");
+    private final Histogram roomHandlerTime = new Histogram("room handler");
+    private final Histogram broadcastTime = new Histogram("broadcast fan-out");
+    private final Histogram roundResolutionTime = new Histogram("round resolution");
+    private final Histogram roundTripTime = new Histogram("client rtt");
+    private final Histogram pickLatency = new Histogram("pick to broadcast");
+    private final Histogram timeToMatch = new Histogram("time to match");
+    private final long startMillis = System.currentTimeMillis();
+
+    private static LongAdder[] newCounters() {
+        // runs while INSTANCE is built, before TYPES is assigned
+        LongAdder[] counters = new LongAdder[PayloadType.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * @param type type of a payload received from a client
+     */
+    public void countIn(PayloadType type) {
+        payloadsIn[type.ordinal()].increment();
+    }
+
+    /**
+     * @param type type of a payload queued for a client
+     */
+    public void countOut(PayloadType type) {
+        payloadsOut[type.ordinal()].increment();
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * @return time to turn a received frame into a Payload
+     */
+    public Histogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * @return time each room mailbox message takes to run
+     */
+    public Histogram getRoomHandlerTime() {
+        return roomHandlerTime;
+    }
+
+    /**
+     * @return time to encode a broadcast and queue it for every member
+     */
+    public Histogram getBroadcastTime() {
+        return broadcastTime;
+    }
+
+    /**
+     * @return time to score a round
+     */
+    public Histogram getRoundResolutionTime() {
+        return roundResolutionTime;
+    }
+
+    /**
+     * @return PING to PONG round trips, queueing on both ends included
+     */
+    public Histogram getRoundTripTime() {
+        return roundTripTime;
+    }
+
+    /**
+     * @return time from reading a traced pick to queueing its status
+     *         broadcast
+     */
+    public Histogram getPickLatency() {
+        return pickLatency;
+    }
+
+    /**
+     * @return time from queueing for a match to being moved into its room
+     */
+    public Histogram getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    /**
+     * @param type a payload type
+     * @return payloads of that type received so far
+     */
+    public long getPayloadsIn(PayloadType type) {
+        return payloadsIn[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type a payload type
+     * @return payloads of that type queued for clients so far
+     */
+    public long getPayloadsOut(PayloadType type) {
+        return payloadsOut[type.ordinal()].sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * @return the timing histograms, in report order
+     */
+    public List<Histogram> getHistograms() {
+        return List.of(decodeTime, roomHandlerTime, broadcastTime, roundResolutionTime, roundTripTime, pickLatency,
+                timeToMatch);
+    }
+
+    /**
+     * Renders every counter and histogram as text
+     *
+     * @param connections connected clients, for the per-connection byte counts
+     * @return the report
+     */
+    public String snapshot(Collection<? extends BaseServerThread> connections) {
+        StringBuilder sb = new StringBuilder();
+        long uptime = System.currentTimeMillis() - startMillis;
+        sb.append(String.format("Metrics at %s (up %ds)%n", Instant.now(), uptime / 1000));
+        sb.append(String.format("Bytes: in=%d out=%d%n", getBytesIn(), getBytesOut()));
+        sb.append("Payloads (in/out):\n");
+        for (PayloadType type : TYPES) {
+            long in = getPayloadsIn(type);
+            long out = getPayloadsOut(type);
+            if (in > 0 || out > 0) {
+                sb.append(String.format("  %-18s %10d %10d%n", type, in, out));
+            }
+        }
+        sb.append("Timings:\n");
+        for (Histogram histogram : getHistograms()) {
+            sb.append("  ").append(histogram.snapshot()).append('\n');
+        }
+        List<BaseServerThread> busiest = new ArrayList<>(connections);
+        busiest.sort(Comparator.comparingLong((BaseServerThread c) -> c.getBytesIn() + c.getBytesOut()).reversed());
+        sb.append(String.format("Connections: %d%n", busiest.size()));
+        for (int i = 0; i < Math.min(TOP_CONNECTIONS, busiest.size()); i++) {
+            BaseServerThread client = busiest.get(i);
+            long rtt = client.getRttNanos();
+            sb.append(String.format("  #%d %s: in=%d out=%d queued=%d rtt=%s%n", client.getClientId(),
+                    client.getClientName(), client.getBytesIn(), client.getBytesOut(),
+                    client.getOutboundQueue().getDepth(), rtt < 0 ? "-" : Histogram.formatNanos(rtt)));
+        }
+        return sb.toString();
+    }
+}
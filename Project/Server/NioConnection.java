@@ -0,0 +1,236 @@
+package Project.Server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import Project.Common.FrameCodec;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.WireFormat;
+
+/**
+ * Non-blocking transport for one client, owned by a single NioEventLoop.
+ * <p>
+ * Reads and writes are only touched by the loop thread. Senders queue
+ * Payloads on the owner's {@link OutboundQueue} from any thread and call
+ * {@link #requestWrite()}; the loop encodes (once per broadcast and format)
+ * and writes them when the socket is writable.
+ * </p>
+ */
+public class NioConnection {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private OutboundQueue outbound;
+    // frame partially written when the socket buffer filled up
+    private ByteBuffer writing;
+    // what `writing` holds, and its flight recorder event if one is wanted
+    private Payload writingPayload;
+    private ServerEvents.PayloadSent sending;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean handshakeComplete = false;
+    private volatile boolean isOpen = true;
+    private volatile WireFormat format = WireFormat.JAVA;
+    private ServerThread owner;
+
+    protected NioConnection(NioEventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    protected void setOwner(ServerThread owner) {
+        this.owner = owner;
+        this.outbound = owner.getOutboundQueue();
+    }
+
+    public NioEventLoop getLoop() {
+        return loop;
+    }
+
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * Asks the loop to drain the outbound queue unless it's already doing so.
+     */
+    protected void requestWrite() {
+        if (isOpen && outbound.startDrain()) {
+            loop.execute(this::enableWrite);
+        }
+    }
+
+    private void enableWrite() {
+        if (key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    protected void onWritable() throws IOException {
+        while (true) {
+            if (writing == null) {
+                writing = nextFrame();
+                if (writing == null) {
+                    break;
+                }
+                if (writingPayload != null && ServerEvents.PayloadSent.isTypeEnabled()) {
+                    sending = new ServerEvents.PayloadSent();
+                    sending.size = writing.remaining();
+                    sending.begin();
+                }
+            }
+            owner.countBytesOut(channel.write(writing));
+            if (writing.hasRemaining()) {
+                // socket buffer is full, wait for the next OP_WRITE
+                return;
+            }
+            writing = null;
+            if (sending != null) {
+                // the duration covers any waits for the socket to drain
+                sending.end();
+                if (sending.shouldCommit()) {
+                    sending.payloadType = writingPayload.getPayloadType().name();
+                    sending.clientId = owner.getClientId();
+                    sending.commit();
+                }
+                sending = null;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        // a sender may have queued between the drain and releasing it
+        if (!outbound.finishDrain()) {
+            enableWrite();
+        }
+    }
+
+    private ByteBuffer nextFrame() {
+        EncodedPayload next;
+        while ((next = outbound.poll()) != null) {
+            try {
+                ByteBuffer frame = next.getFrameBuffer(format);
+                writingPayload = next.getPayload();
+                return frame;
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning("Failed to encode payload " + next.getPayload(), e);
+            }
+        }
+        return null;
+    }
+
+    protected void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            throw new EOFException("Client closed the connection");
+        }
+        owner.countBytesIn(read);
+        readBuffer.flip();
+        int needed = 0;
+        try {
+            if (!handshakeComplete && !readHandshake()) {
+                return;
+            }
+            while (isOpen && readBuffer.remaining() >= 4) {
+                int start = readBuffer.position();
+                int length = readBuffer.getInt(start);
+                FrameCodec.checkFrameLength(length);
+                if (readBuffer.remaining() < 4 + length) {
+                    needed = 4 + length;
+                    break;
+                }
+                readBuffer.position(start + 4 + length);
+                try {
+                    long decodeStart = System.nanoTime();
+                    Payload payload = FrameCodec.decode(readBuffer.array(), readBuffer.arrayOffset() + start + 4,
+                            length, format);
+                    Metrics.INSTANCE.getDecodeTime().recordSince(decodeStart);
+                    owner.handleIncoming(payload, 4 + length);
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    LoggerUtil.INSTANCE.warning("Error reading frame as a Payload: " + e.getMessage());
+                }
+            }
+        } finally {
+            readBuffer.compact();
+        }
+        if (needed > readBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    /**
+     * Consumes the connection header, answering format negotiation if asked.
+     *
+     * @return false if more bytes are needed
+     * @throws IOException if the header is not a framed protocol header
+     */
+    private boolean readHandshake() throws IOException {
+        if (readBuffer.remaining() < 4) {
+            return false;
+        }
+        int header = readBuffer.getInt(readBuffer.position());
+        if (header == FrameCodec.MAGIC) {
+            readBuffer.position(readBuffer.position() + 4);
+        } else if (header == FrameCodec.MAGIC_NEGOTIATE) {
+            if (readBuffer.remaining() < 5) {
+                return false;
+            }
+            readBuffer.position(readBuffer.position() + 4);
+            format = FrameCodec.negotiate(readBuffer.get() & 0xFF);
+            ByteBuffer reply = ByteBuffer.allocate(1);
+            reply.put(format.getId()).flip();
+            channel.write(reply);
+            if (reply.hasRemaining()) {
+                // the rest goes out ahead of any frame, under the same drain as they do
+                writing = reply;
+                if (outbound.startDrain()) {
+                    enableWrite();
+                }
+            }
+        } else {
+            throw new IOException("Unexpected connection header " + Integer.toHexString(header));
+        }
+        handshakeComplete = true;
+        return true;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Called by the loop when the channel fails or reaches EOF.
+     */
+    protected void onClosed() {
+        if (!isOpen) {
+            return;
+        }
+        close();
+        if (owner != null) {
+            owner.onConnectionClosed();
+        }
+    }
+
+    /**
+     * Closes the channel without notifying the owner. Only the owner's
+     * cleanup() calls this, and whatever dropped the client there has
+     * already told its room.
+     */
+    protected void close() {
+        if (!isOpen) {
+            return;
+        }
+        isOpen = false;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Error closing client channel: " + e.getMessage());
+        }
+    }
+}
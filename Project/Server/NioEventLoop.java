@@ -0,0 +1,163 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import Project.Common.LoggerUtil;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+
+/**
+ * A single selector thread that owns a set of client channels.
+ * <p>
+ * All reads, frame decoding and writes for its channels happen on this thread.
+ * Other threads hand work over with {@link #execute(Runnable)}; deadlines
+ * live on the server's shared {@link TimerWheel}.
+ * </p>
+ */
+public class NioEventLoop implements Runnable {
+    private final String name;
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = false;
+
+    private void info(String message) {
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize(String.format("%s: %s", name, message), Color.BLUE));
+    }
+
+    public NioEventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        isRunning = true;
+        thread.start();
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs a task on the loop thread.
+     *
+     * @param task work to run
+     */
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Hands a freshly accepted channel to this loop.
+     *
+     * @param channel       the accepted client channel
+     * @param onInitialized callback once the client has sent its name
+     */
+    public void register(SocketChannel channel, Consumer<ServerThread> onInitialized) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(this, channel, key);
+                ServerThread serverThread = new ServerThread(connection, onInitialized);
+                connection.setOwner(serverThread);
+                key.attach(connection);
+                serverThread.startNioSession();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning("Failed to register client channel", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        info("Event loop starting");
+        while (isRunning) {
+            try {
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                processSelectedKeys();
+                runTasks();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.severe("Selector failure in " + name, e);
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe("Unhandled error in " + name, e);
+            }
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection connection) {
+                    connection.onClosed();
+                }
+            }
+            selector.close();
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Error closing selector", e);
+        }
+        info("Event loop stopped");
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection == null) {
+                continue;
+            }
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                connection.onClosed();
+            } catch (RuntimeException e) {
+                // a payload its handler choked on; drop the client like the blocking transport does
+                LoggerUtil.INSTANCE.warning("Closing connection after an unhandled error in " + name, e);
+                connection.onClosed();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe("Task failed in " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package Project.Server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+
+/**
+ * Bounded queue of Payloads waiting to be written to one client.
+ * <p>
+ * Senders (room handlers, the game timer) only enqueue, so a client with a
+ * full TCP buffer can't stall the room. A single drainer writes the queue to
+ * the socket; {@link #startDrain()} and {@link #finishDrain()} make sure at
+ * most one drainer runs. When the queue is full the {@link OverflowPolicy}
+ * decides what gives.
+ * </p>
+ */
+public class OutboundQueue {
+    private static volatile int defaultCapacity = 1024;
+    private static volatile OverflowPolicy defaultPolicy = OverflowPolicy.COALESCE_STATUS;
+
+    /**
+     * What to do with a Payload that arrives while the queue is full. Each
+     * policy includes the ones before it.
+     */
+    public enum OverflowPolicy {
+        DISCONNECT, // any overflow drops the slow client
+        DROP_CHAT, // drop chat messages, disconnect for anything else
+        COALESCE_STATUS; // also replace a pending status update for the same player
+
+        public static OverflowPolicy fromString(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            return COALESCE_STATUS;
+        }
+    }
+
+    /**
+     * Outcome of {@link OutboundQueue#offer(EncodedPayload)}
+     */
+    public enum Result {
+        QUEUED,
+        COALESCED, // replaced a pending update, nothing new to drain
+        DROPPED, // discarded under the overflow policy
+        REJECTED // overflow the policy can't absorb; disconnect the client
+    }
+
+    /**
+     * Queue slot; status updates can be swapped in place while pending
+     */
+    private static class Entry {
+        private EncodedPayload encoded;
+        private final long statusKey;
+
+        private Entry(EncodedPayload encoded, long statusKey) {
+            this.encoded = encoded;
+            this.statusKey = statusKey;
+        }
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final Map<Long, Entry> pendingStatus = new HashMap<>();
+    // a ReentrantLock so virtual-thread senders never pin a carrier here
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private int highWaterMark = 0;
+    private long queued = 0;
+    private long dropped = 0;
+    private long coalesced = 0;
+
+    public OutboundQueue() {
+        this(defaultCapacity, defaultPolicy);
+    }
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Sets the capacity and policy used by queues created afterwards.
+     *
+     * @param capacity maximum number of pending Payloads per client
+     * @param policy   overflow policy
+     */
+    public static void setDefaults(int capacity, OverflowPolicy policy) {
+        defaultCapacity = Math.max(1, capacity);
+        defaultPolicy = policy;
+    }
+
+    private static boolean isChat(Payload payload) {
+        return payload.getPayloadType() == PayloadType.MESSAGE;
+    }
+
+    /**
+     * @return a key identifying which player a status-like update is about, or
+     *         -1 if the Payload isn't one
+     */
+    private static long statusKey(Payload payload) {
+        PayloadType type = payload.getPayloadType();
+        if (type == PayloadType.PLAYER_STATUS || type == PayloadType.SYNC_POINTS) {
+            return ((long) type.ordinal() << 48) | (payload.getClientId() & 0xFFFFFFFFFFFFL);
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a Payload, applying the overflow policy if the queue is full.
+     *
+     * @param encoded the Payload to send
+     * @return what happened to it
+     */
+    public Result offer(EncodedPayload encoded) {
+        Payload payload = encoded.getPayload();
+        long key = statusKey(payload);
+        lock.lock();
+        try {
+            if (queue.size() >= capacity) {
+                if (policy != OverflowPolicy.DISCONNECT && isChat(payload)) {
+                    dropped++;
+                    return Result.DROPPED;
+                }
+                if (policy == OverflowPolicy.COALESCE_STATUS && key != -1) {
+                    Entry pending = pendingStatus.get(key);
+                    if (pending != null) {
+                        pending.encoded = encoded;
+                        coalesced++;
+                        return Result.COALESCED;
+                    }
+                }
+                return Result.REJECTED;
+            }
+            Entry entry = new Entry(encoded, key);
+            queue.add(entry);
+            if (key != -1) {
+                pendingStatus.put(key, entry);
+            }
+            queued++;
+            highWaterMark = Math.max(highWaterMark, queue.size());
+            return Result.QUEUED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the next Payload to write, or null if the queue is empty
+     */
+    public EncodedPayload poll() {
+        lock.lock();
+        try {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                return null;
+            }
+            if (entry.statusKey != -1 && pendingStatus.get(entry.statusKey) == entry) {
+                pendingStatus.remove(entry.statusKey);
+            }
+            return entry.encoded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims the drainer role.
+     *
+     * @return true if the caller must start draining
+     */
+    public boolean startDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases the drainer role once {@link #poll()} returned null.
+     *
+     * @return true if draining is done, false if something was queued in the
+     *         meantime and the caller still owns the drainer role
+     */
+    public boolean finishDrain() {
+        draining.set(false);
+        return isEmpty() || !draining.compareAndSet(false, true);
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            queue.clear();
+            pendingStatus.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return getDepth() == 0;
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getHighWaterMark() {
+        lock.lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("depth=%d/%d highWater=%d queued=%d dropped=%d coalesced=%d policy=%s",
+                    queue.size(), capacity, highWaterMark, queued, dropped, coalesced, policy);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
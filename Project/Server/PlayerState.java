@@ -4,8 +4,9 @@ import Project.Common.User;
 import Project.Common.PlayerStatus;
 
 public class PlayerState {
-    private final ServerThread client;
-    private String pick;
+    private final GamePlayer client;
+    // index into the game's RuleSet
+    private int pick = RuleSet.NO_PICK;
     private int points = 0;
     private boolean eliminated = false;
     private boolean ready = false;
@@ -13,7 +14,7 @@ public class PlayerState {
     private boolean isSpectator = false;
     private PlayerStatus status = PlayerStatus.ACTIVE;
 
-    public PlayerState(ServerThread client) {
+    public PlayerState(GamePlayer client) {
         this.client = client;
     }
     
@@ -37,10 +38,12 @@ public class PlayerState {
     public void setStatus(PlayerStatus status) { this.status = status; }
     public long getId() { return client.getClientId(); }
     public String getName() { return client.getClientName(); }
-    public String getPick() { return pick; }
-    public void setPick(String pick) { this.pick = pick; }
+    public int getPick() { return pick; }
+    public void setPick(int pick) { this.pick = pick; }
+    public boolean hasPicked() { return pick != RuleSet.NO_PICK; }
     public int getPoints() { return points; }
     public void addPoint() { points++; }
+    public void addPoints(int amount) { points += amount; }
     public boolean isEliminated() { return eliminated; }
     public void setEliminated(boolean eliminated) {
         this.eliminated = eliminated;
@@ -0,0 +1,350 @@
+package Project.Server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Skill ratings by player name, updated from every resolved round.
+ * <p>
+ * Uses Glicko: a rating plus a deviation that says how sure we are of it.
+ * Each round is a rating period in which every player who picked battles the
+ * others; a win scores 1, a draw 0.5, a loss 0. All of a round's updates are
+ * computed from the ratings before it, so the order of players doesn't
+ * matter. New players start at {@link #INITIAL_RATING} with a wide
+ * deviation, so their first games move them quickly. In rounds with more
+ * than ratings.maxOpponents players, each player is rated against that many
+ * of the others, which keeps a round O(n) instead of O(n^2).
+ * </p>
+ * <p>
+ * The table is a set of parallel arrays indexed by row, found through an
+ * open-addressing map from a 64-bit hash of the lowercased name, so lookups
+ * don't allocate. Players are also counted per {@link #BAND_WIDTH} point
+ * band, kept up to date on every change, so matchmaking and leaderboards get
+ * a player's band or the whole distribution without scanning the table.
+ * Access is synchronized; a round's update holds the lock for about a
+ * microsecond per player.
+ * </p>
+ */
+public class Ratings implements SavedTable {
+    public static final double INITIAL_RATING = 1500;
+    static final double INITIAL_DEVIATION = 350;
+    // deviation never drops below this, so ratings keep moving
+    static final double MIN_DEVIATION = 50;
+    // rating points per band: -Dratings.bandWidth
+    public static final int BAND_WIDTH = Math.max(1, Integer.getInteger("ratings.bandWidth", 100));
+    // bands cover 0 up to BANDS * BAND_WIDTH; ratings outside count toward the end bands
+    public static final int BANDS = Math.max(1, 4000 / BAND_WIDTH);
+    // opponents each player is rated against per round: -Dratings.maxOpponents
+    private static final int MAX_OPPONENTS = Math.max(1, Integer.getInteger("ratings.maxOpponents", 32));
+    private static final double Q = Math.log(10) / 400;
+
+    private long[] slotKeys = new long[64];
+    // row + 1 per slot, 0 for empty
+    private int[] slotRows = new int[64];
+    private String[] names = new String[32];
+    private double[] ratings = new double[32];
+    private double[] deviations = new double[32];
+    private int[] games = new int[32];
+    private int size = 0;
+    private final int[] bandCounts = new int[BANDS];
+    private boolean dirty = false;
+
+    /**
+     * @param rating a rating
+     * @return the band it falls in, 0 to BANDS - 1
+     */
+    public static int bandOf(double rating) {
+        return (int) Math.max(0, Math.min(BANDS - 1, Math.floor(rating / BAND_WIDTH)));
+    }
+
+    /**
+     * FNV-1a over the lowercased name, so lookups ignore case
+     */
+    private static long keyOf(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= Character.toLowerCase(name.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the player's row, or -1 if they aren't rated
+     */
+    private int find(String name) {
+        long key = keyOf(name);
+        int mask = slotKeys.length - 1;
+        for (int slot = (int) (key ^ (key >>> 32)) & mask; slotRows[slot] != 0; slot = (slot + 1) & mask) {
+            int row = slotRows[slot] - 1;
+            if (slotKeys[slot] == key && names[row].equalsIgnoreCase(name)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the player's row, added at the initial rating if needed
+     */
+    private int findOrAdd(String name) {
+        int row = find(name);
+        if (row >= 0) {
+            return row;
+        }
+        return add(name, INITIAL_RATING, INITIAL_DEVIATION, 0);
+    }
+
+    private int add(String name, double rating, double deviation, int played) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            deviations = Arrays.copyOf(deviations, capacity);
+            games = Arrays.copyOf(games, capacity);
+        }
+        int row = size++;
+        names[row] = name;
+        ratings[row] = rating;
+        deviations[row] = deviation;
+        games[row] = played;
+        bandCounts[bandOf(rating)]++;
+        if (size * 2 > slotKeys.length) {
+            rehash(slotKeys.length * 2);
+        } else {
+            insert(keyOf(name), row);
+        }
+        return row;
+    }
+
+    private void insert(long key, int row) {
+        int mask = slotKeys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (slotRows[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slotKeys[slot] = key;
+        slotRows[slot] = row + 1;
+    }
+
+    private void rehash(int capacity) {
+        slotKeys = new long[capacity];
+        slotRows = new int[capacity];
+        for (int row = 0; row < size; row++) {
+            insert(keyOf(names[row]), row);
+        }
+    }
+
+    private void setRating(int row, double rating) {
+        bandCounts[bandOf(ratings[row])]--;
+        ratings[row] = rating;
+        bandCounts[bandOf(rating)]++;
+    }
+
+    /**
+     * @return Glicko's g: how much a result against an opponent this
+     *         uncertain counts
+     */
+    private static double g(double deviation) {
+        return 1 / Math.sqrt(1 + 3 * Q * Q * deviation * deviation / (Math.PI * Math.PI));
+    }
+
+    /**
+     * Rates a resolved round. Players who didn't pick sit it out.
+     *
+     * @param players the round's active players, with their picks
+     * @param rules   the rules the picks are scored by
+     */
+    public void recordRound(Collection<PlayerState> players, RuleSet rules) {
+        List<PlayerState> picked = new ArrayList<>(players.size());
+        for (PlayerState player : players) {
+            if (player.hasPicked() && player.getName() != null) {
+                picked.add(player);
+            }
+        }
+        int n = picked.size();
+        if (n < 2) {
+            return;
+        }
+        int opponents = Math.min(n - 1, MAX_OPPONENTS);
+        int[] rows = new int[n];
+        int[] picks = new int[n];
+        double[] before = new double[n];
+        double[] weight = new double[n];
+        double[] variance = new double[n];
+        double[] improvement = new double[n];
+        synchronized (this) {
+            for (int i = 0; i < n; i++) {
+                rows[i] = findOrAdd(picked.get(i).getName());
+                picks[i] = picked.get(i).getPick();
+                before[i] = ratings[rows[i]];
+                weight[i] = g(deviations[rows[i]]);
+            }
+            for (int i = 0; i < n; i++) {
+                // the next few players in order, wrapping around
+                for (int k = 1, j = i + 1; k <= opponents; k++, j++) {
+                    if (j == n) {
+                        j = 0;
+                    }
+                    double gj = weight[j];
+                    // 10^(x / 400) is e^(Q x)
+                    double expected = 1 / (1 + Math.exp(-gj * Q * (before[i] - before[j])));
+                    int outcome = rules.compare(picks[i], picks[j]);
+                    double score = outcome > 0 ? 1 : outcome < 0 ? 0 : 0.5;
+                    variance[i] += gj * gj * expected * (1 - expected);
+                    improvement[i] += gj * (score - expected);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                int row = rows[i];
+                double deviation = deviations[row];
+                double precision = 1 / (deviation * deviation) + Q * Q * variance[i];
+                setRating(row, ratings[row] + Q / precision * improvement[i]);
+                deviations[row] = Math.max(MIN_DEVIATION, Math.sqrt(1 / precision));
+                games[row]++;
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * @param name a player's name, any case
+     * @return their rating, or {@link #INITIAL_RATING} if they haven't played
+     */
+    public synchronized double getRating(String name) {
+        int row = find(name);
+        return row < 0 ? INITIAL_RATING : ratings[row];
+    }
+
+    /**
+     * @param name a player's name, any case
+     * @return their rating's deviation; wide if they haven't played
+     */
+    public synchronized double getDeviation(String name) {
+        int row = find(name);
+        return row < 0 ? INITIAL_DEVIATION : deviations[row];
+    }
+
+    /**
+     * @param name a player's name, any case
+     * @return the band of their rating, see {@link #bandOf}
+     */
+    public synchronized int getBand(String name) {
+        int row = find(name);
+        return bandOf(row < 0 ? INITIAL_RATING : ratings[row]);
+    }
+
+    /**
+     * @return players per band, lowest band first
+     */
+    public synchronized int[] getBandCounts() {
+        return bandCounts.clone();
+    }
+
+    /**
+     * @return rated players
+     */
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Reads ratings written by {@link #save}, replacing any of the same name
+     *
+     * @param file tab separated name, rating, deviation and games per line
+     * @throws IOException if the file can't be read or is malformed
+     */
+    @Override
+    public synchronized void load(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            // names may start with #, so only a line that isn't a record is a comment
+            boolean comment = line.startsWith("#");
+            String[] fields = line.split("\t");
+            if (fields.length != 4) {
+                if (comment) {
+                    continue;
+                }
+                throw new IOException(file + ": expected name, rating, deviation and games but got: " + line);
+            }
+            try {
+                double rating = Double.parseDouble(fields[1]);
+                double deviation = Double.parseDouble(fields[2]);
+                int played = Integer.parseInt(fields[3]);
+                int row = find(fields[0]);
+                if (row < 0) {
+                    add(fields[0], rating, deviation, played);
+                } else {
+                    setRating(row, rating);
+                    deviations[row] = deviation;
+                    games[row] = played;
+                }
+            } catch (NumberFormatException e) {
+                if (comment) {
+                    continue;
+                }
+                throw new IOException(file + ": bad number in: " + line);
+            }
+        }
+    }
+
+    /**
+     * Writes every rating if anything changed since the last save. The file
+     * is replaced in one move, so a crash mid-save leaves the previous one.
+     *
+     * @param file where to write
+     * @return false if there was nothing new to save
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public boolean save(Path file) throws IOException {
+        String[] rowNames;
+        double[] rowRatings;
+        double[] rowDeviations;
+        int[] rowGames;
+        int count;
+        // copy under the lock, write outside it
+        synchronized (this) {
+            if (!dirty) {
+                return false;
+            }
+            count = size;
+            rowNames = Arrays.copyOf(names, count);
+            rowRatings = Arrays.copyOf(ratings, count);
+            rowDeviations = Arrays.copyOf(deviations, count);
+            rowGames = Arrays.copyOf(games, count);
+            dirty = false;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                out.write("# name\trating\tdeviation\tgames\n");
+                for (int row = 0; row < count; row++) {
+                    // names are single words in practice; keep the columns intact regardless
+                    String name = rowNames[row].replaceAll("[\\t\\r\\n]", " ");
+                    out.write(String.format(Locale.ROOT, "%s\t%.2f\t%.2f\t%d%n", name, rowRatings[row],
+                            rowDeviations[row], rowGames[row]));
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+        return true;
+    }
+}
@@ -2,46 +2,112 @@ package Project.Server;
 
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.logging.Level;
 import Project.Common.*;
 import Project.Common.TextFX.Color;
 import Project.Exceptions.DuplicateRoomException;
 import Project.Exceptions.RoomNotFoundException;
 
-public class Room implements AutoCloseable {
+/**
+ * A chat/game room run as an actor.
+ * <p>
+ * Every handler posts a message to the room's {@link Mailbox} and returns;
+ * the messages run one at a time on a shared pool of room workers, so room
+ * and GameSession state is only ever touched by one thread and needs no
+ * locks. Only the handle*, addClient/addSpectator, removeClient,
+ * disconnectAll and execute methods may be called from other threads; the
+ * rest must run inside the room's own messages.
+ * </p>
+ */
+public class Room implements AutoCloseable, GameRoom {
     private final String name;
     private volatile boolean isRunning = false;
     private final ConcurrentHashMap<Long, ServerThread> clientsInRoom = new ConcurrentHashMap<>();
     public final static String LOBBY = "lobby";
     private GameSession gameSession;
+    private final Mailbox mailbox;
+    // what the room list shows; republished from this room's messages
+    private final RoomDirectory.Listing listing;
+    // -Dlog.levels=room=WARNING silences room lifecycle messages
+    private static final String ROOM_LOG = "room";
 
     private void info(String message) {
-        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Room[%s]: %s", name, message), Color.PURPLE));
+        LoggerUtil.INSTANCE.log(ROOM_LOG, Level.INFO,
+                () -> TextFX.colorize(String.format("Room[%s]: %s", name, message), Color.PURPLE));
+    }
+
+    /**
+     * Adds a room event to the structured event log, if it's enabled
+     *
+     * @param clientId client involved, or Constants.DEFAULT_CLIENT_ID
+     * @param template fixed text with {} per argument
+     * @param args     arguments
+     */
+    private void event(long clientId, String template, Object... args) {
+        EventLog events = getEvents();
+        if (events.isEnabled()) {
+            events.record(Level.INFO, ROOM_LOG, clientId, name, null, template, args);
+        }
     }
 
     public Room(String name) {
+        this(name, Server.INSTANCE.getRoomWorkers());
+    }
+
+    /**
+     * @param name    room name
+     * @param workers pool the room's mailbox runs on
+     */
+    public Room(String name, Executor workers) {
         this.name = name;
         this.isRunning = true;
+        this.mailbox = new Mailbox(name, workers, Metrics.INSTANCE.getRoomHandlerTime());
+        this.listing = new RoomDirectory.Listing(name);
         this.gameSession = new GameSession(this);
         info("Created");
+        event(Constants.DEFAULT_CLIENT_ID, "created");
     }
-    
-    public synchronized void handleGameReady(ServerThread sender, Payload payload) {
-        gameSession.markReady(sender, payload);
+
+    /**
+     * Posts a message to this room, e.g. a timer callback.
+     *
+     * @param handler what it does, for the flight recorder
+     * @param task    work to run on the room's mailbox
+     */
+    @Override
+    public void execute(String handler, Runnable task) {
+        mailbox.execute(handler, task);
+    }
+
+    public Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    public void handleGameReady(ServerThread sender, Payload payload) {
+        mailbox.execute("ready", () -> gameSession.markReady(sender, payload));
     }
     
     public void handleToggleAway(ServerThread sender) {
-        gameSession.toggleAwayStatus(sender);
+        mailbox.execute("away", () -> gameSession.toggleAwayStatus(sender));
     }
     
-    protected synchronized void addSpectator(ServerThread client) {
-        if (!isRunning || clientsInRoom.containsKey(client.getClientId())) return;
-        client.setSpectator(true);
-        clientsInRoom.put(client.getClientId(), client);
-        client.setCurrentRoom(this);
-        client.sendResetUserList();
-        syncExistingClients(client);
-        joinStatusRelay(client, true);
-        relay(null, client.getDisplayName() + " is now spectating.");
+    protected void addSpectator(ServerThread client) {
+        mailbox.execute("addSpectator", () -> {
+            if (!isRunning) {
+                rejoinLobby(client);
+                return;
+            }
+            if (clientsInRoom.containsKey(client.getClientId())) return;
+            client.setSpectator(true);
+            clientsInRoom.put(client.getClientId(), client);
+            client.sendResetUserList();
+            syncExistingClients(client);
+            joinStatusRelay(client, true);
+            relay(null, client.getDisplayName() + " is now spectating.");
+            updateListing();
+        });
     }
 
     private void syncExistingClients(ServerThread incomingClient) {
@@ -53,9 +119,7 @@ public class Room implements AutoCloseable {
     }
 
     private void joinStatusRelay(ServerThread client, boolean didJoin) {
-        clientsInRoom.values().forEach(serverThread -> {
-            serverThread.sendClientInfo(serverThread.getClientId(), client.getClientName(), didJoin ? RoomAction.JOIN : RoomAction.LEAVE, false, client.isSpectator());
-        });
+        broadcastPayload(ServerThread.createClientInfo(client.getClientId(), client.getClientName(), didJoin ? RoomAction.JOIN : RoomAction.LEAVE, false, client.isSpectator()));
         if (didJoin && !client.isSpectator()) {
             relay(null, String.format("%s joined the room", client.getDisplayName()));
         } else if (!didJoin) {
@@ -63,7 +127,7 @@ public class Room implements AutoCloseable {
         }
     }
 
-    protected synchronized void relay(ServerThread sender, String message) {
+    protected void relay(ServerThread sender, String message) {
         if (sender != null && sender.isSpectator()) {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Spectators cannot send messages.");
             return;
@@ -71,39 +135,118 @@ public class Room implements AutoCloseable {
         String senderString = sender == null ? "Room[" + getName() + "]" : sender.getDisplayName();
         long senderId = sender == null ? Constants.DEFAULT_CLIENT_ID : sender.getClientId();
         final String formattedMessage = String.format("%s: %s", senderString, message);
-        clientsInRoom.values().removeIf(serverThread -> !serverThread.sendMessage(senderId, formattedMessage));
+        broadcastPayload(ServerThread.createMessage(senderId, formattedMessage));
     }
     
+    @Override
+    public void broadcastMessage(String message) {
+        relay(null, message);
+    }
+
+    @Override
     public String getName() { return this.name; }
+    /**
+     * @return this room's entry in the room list
+     */
+    protected RoomDirectory.Listing getListing() { return listing; }
+    @Override
+    public void gameStateChanged() {
+        updateListing();
+    }
+    @Override
+    public Ratings getRatings() {
+        return Server.INSTANCE.getRatings();
+    }
+    @Override
+    public Leaderboard getLeaderboard() {
+        return Server.INSTANCE.getLeaderboard();
+    }
+    @Override
+    public RuleSet getRuleSet(String name) {
+        return Server.INSTANCE.getRuleSet(name);
+    }
+    @Override
+    public EventLog getEvents() {
+        return Server.INSTANCE.getEvents();
+    }
+    private void updateListing() {
+        listing.update(clientsInRoom.size(), gameSession.isInProgress(), gameSession.getRules().getName());
+    }
     public Collection<ServerThread> getClients() { return clientsInRoom.values(); }
-    protected synchronized void addClient(ServerThread client) {
-        if (!isRunning || clientsInRoom.containsKey(client.getClientId())) return;
-        client.setSpectator(false);
-        clientsInRoom.put(client.getClientId(), client);
-        client.setCurrentRoom(this);
-        client.sendResetUserList();
-        syncExistingClients(client);
-        joinStatusRelay(client, true);
-    }
-    protected synchronized void removeClient(ServerThread client) {
-        if (!isRunning || !clientsInRoom.containsKey(client.getClientId())) return;
-        ServerThread removedClient = clientsInRoom.remove(client.getClientId());
-        if (removedClient != null) {
-            joinStatusRelay(removedClient, false);
-            autoCleanup();
+    protected GameSession getGameSession() { return gameSession; }
+    /**
+     * @return messages waiting in this room's mailbox
+     */
+    protected int getPendingMessages() { return mailbox.size(); }
+    /**
+     * Adds a client. The caller (Server.joinRoom) has already pointed the
+     * client's currentRoom here, so its next payloads queue up behind this.
+     */
+    protected void addClient(ServerThread client) {
+        mailbox.execute("addClient", () -> {
+            if (!isRunning) {
+                rejoinLobby(client);
+                return;
+            }
+            if (clientsInRoom.containsKey(client.getClientId())) return;
+            client.setSpectator(false);
+            clientsInRoom.put(client.getClientId(), client);
+            client.sendResetUserList();
+            syncExistingClients(client);
+            joinStatusRelay(client, true);
+            event(client.getClientId(), "{} joined", client.getClientName());
+            updateListing();
+        });
+    }
+    /**
+     * The room closed between the client picking it and the join running.
+     */
+    private void rejoinLobby(ServerThread client) {
+        if (LOBBY.equalsIgnoreCase(name) || client.getCurrentRoom() != this) {
+            return;
         }
+        try {
+            Server.INSTANCE.joinRoom(LOBBY, client);
+        } catch (RoomNotFoundException e) {
+            LoggerUtil.INSTANCE.severe("Lobby not found", e);
+        }
+    }
+    protected void removeClient(ServerThread client) {
+        mailbox.execute("removeClient", () -> {
+            if (!isRunning || !clientsInRoom.containsKey(client.getClientId())) return;
+            ServerThread removedClient = clientsInRoom.remove(client.getClientId());
+            gameSession.removePlayer(client.getClientId());
+            if (removedClient != null) {
+                event(removedClient.getClientId(), "{} left", removedClient.getClientName());
+                joinStatusRelay(removedClient, false);
+                updateListing();
+                autoCleanup();
+            }
+        });
+    }
+    private void disconnect(ServerThread client) {
+        disconnect(client.getClientId(), client.getClientName(), client.getDisplayName());
     }
-    private synchronized void disconnect(ServerThread client) {
-        ServerThread removed = clientsInRoom.remove(client.getClientId());
+    /**
+     * @param clientId    id of the client leaving; passed in because a closed
+     *                    connection resets its User before this runs
+     * @param clientName  its name
+     * @param displayName its display name
+     */
+    private void disconnect(long clientId, String clientName, String displayName) {
+        ServerThread removed = clientsInRoom.remove(clientId);
+        gameSession.removePlayer(clientId);
         if (removed != null) {
-            clientsInRoom.values().removeIf(serverThread -> !serverThread.sendClientInfo(removed.getClientId(), removed.getClientName(), RoomAction.LEAVE, false, removed.isSpectator()));
-            relay(null, removed.getDisplayName() + " disconnected");
+            event(clientId, "{} disconnected", clientName);
+            broadcastPayload(ServerThread.createClientInfo(clientId, clientName, RoomAction.LEAVE, false, removed.isSpectator()));
+            relay(null, displayName + " disconnected");
             removed.disconnect();
+            updateListing();
         }
         autoCleanup();
     }
-    protected synchronized void disconnectAll() {
-        clientsInRoom.values().forEach(this::disconnect);
+    protected void disconnectAll() {
+        mailbox.execute("disconnectAll", () -> clientsInRoom.values().forEach(this::disconnect));
     }
     private void autoCleanup() {
         if (!LOBBY.equalsIgnoreCase(name) && clientsInRoom.isEmpty()) {
@@ -121,15 +264,71 @@ public class Room implements AutoCloseable {
             }
         });
         clientsInRoom.clear();
+        gameSession.shutdown();
         Server.INSTANCE.removeRoom(this);
         isRunning = false;
         info("Room closed");
+        event(Constants.DEFAULT_CLIENT_ID, "closed");
     }
-    public synchronized void broadcastPayload(Payload payload) {
-        clientsInRoom.values().removeIf(client -> !client.sendToClient(payload));
+    /**
+     * Sends the same Payload to every member. It's encoded once per wire format
+     * and the resulting frame is shared by all recipients, so the Payload must
+     * not carry anything recipient specific.
+     * 
+     * @param payload the Payload to send
+     */
+    @Override
+    public void broadcastPayload(Payload payload) {
+        ServerEvents.BroadcastFanout event = new ServerEvents.BroadcastFanout();
+        event.begin();
+        long start = System.nanoTime();
+        EncodedPayload encoded = new EncodedPayload(payload);
+        // a client whose send fails has already told us it's leaving; its disconnect message
+        // removes it, announces the LEAVE and takes it out of the game
+        clientsInRoom.values().forEach(client -> client.sendToClient(encoded));
+        Metrics.INSTANCE.getBroadcastTime().recordSince(start);
+        commitFanout(event, payload);
+    }
+    /**
+     * Sends each member its own Payload. Use this only when a field really
+     * differs per recipient; every Payload returned is encoded separately.
+     * 
+     * @param perRecipient builds the Payload for a given member
+     */
+    public void broadcastPayload(Function<ServerThread, Payload> perRecipient) {
+        ServerEvents.BroadcastFanout event = new ServerEvents.BroadcastFanout();
+        event.begin();
+        long start = System.nanoTime();
+        clientsInRoom.values().forEach(client -> client.sendToClient(perRecipient.apply(client)));
+        Metrics.INSTANCE.getBroadcastTime().recordSince(start);
+        commitFanout(event, null);
     }
-    public void handleListRooms(ServerThread sender, String roomQuery) {
-        sender.sendRooms(Server.INSTANCE.listRooms(roomQuery));
+    private void commitFanout(ServerEvents.BroadcastFanout event, Payload payload) {
+        if (event.shouldCommit()) {
+            event.room = name;
+            event.payloadType = payload == null ? "per-recipient" : payload.getPayloadType().name();
+            event.recipients = clientsInRoom.size();
+            event.commit();
+        }
+    }
+    /**
+     * Answers with a page of the room list. Reads the server's directory
+     * directly; nothing here touches room state.
+     *
+     * @param sender  who asked
+     * @param request a RoomResultPayload with the query and cursor, or a plain
+     *                Payload with the query as its message
+     */
+    public void handleListRooms(ServerThread sender, Payload request) {
+        String query = request.getMessage();
+        String cursor = null;
+        int limit = 0;
+        if (request instanceof RoomResultPayload rrp) {
+            query = rrp.getQuery();
+            cursor = rrp.getCursor();
+            limit = rrp.getLimit();
+        }
+        sender.sendRooms(Server.INSTANCE.listRooms(query, cursor, limit));
     }
     public void handleCreateRoom(ServerThread sender, String roomName) {
         try {
@@ -148,17 +347,23 @@ public class Room implements AutoCloseable {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Room does not exist");
         }
     }
-    public synchronized void handleDisconnect(ServerThread sender) {
-        disconnect(sender);
+    public void handleDisconnect(ServerThread sender) {
+        // take the details now; the sender's cleanup may reset them before the mailbox runs
+        long clientId = sender.getClientId();
+        String clientName = sender.getClientName();
+        String displayName = sender.getDisplayName();
+        mailbox.execute("disconnect", () -> disconnect(clientId, clientName, displayName));
     }
-    protected synchronized void handleReverseText(ServerThread sender, String text) {
+    protected void handleReverseText(ServerThread sender, String text) {
         String reversed = new StringBuilder(text).reverse().toString();
-        relay(sender, reversed);
+        mailbox.execute("reverse", () -> relay(sender, reversed));
     }
-    protected synchronized void handleMessage(ServerThread sender, String text) {
-        relay(sender, text);
+    protected void handleMessage(ServerThread sender, String text) {
+        mailbox.execute("message", () -> relay(sender, text));
     }
-    protected synchronized void handlePlayerPick(ServerThread sender, String pick) {
-        gameSession.registerPick(sender, pick);
+    protected void handlePlayerPick(ServerThread sender, Payload pick) {
+        long receivedAt = System.nanoTime();
+        mailbox.execute("pick",
+                () -> gameSession.registerPick(sender, pick.getMessage(), pick.getTraceId(), receivedAt));
     }
 }
\ No newline at end of file
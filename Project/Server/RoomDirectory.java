@@ -0,0 +1,250 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import Project.Common.RoomResultPayload;
+import Project.Common.RoomResultPayload.RoomInfo;
+
+/**
+ * The searchable list of open rooms behind /listrooms.
+ * <p>
+ * Rooms are kept sorted by lowercased name, and every one, two and three
+ * letter piece of a name maps to the sorted names containing it. A query of
+ * three or more letters walks the sets of its own trigrams together,
+ * skipping ahead in each to the next name all of them share, and checks
+ * each such name for the whole query. A shorter query is a piece itself, so
+ * its set is exactly the names that match. Either way a search costs about
+ * the number of candidates, not the number of rooms, and it stops once the
+ * page is full. Only a blank query walks every name, and every one matches.
+ * </p>
+ * <p>
+ * Pages are in name order and resume after a cursor, the last name of the
+ * previous page, so they stay consistent while rooms open and close. Each
+ * room publishes what the list shows about it (members, whether a game is
+ * on, the rules) as an immutable {@link RoomInfo} from its own mailbox, and
+ * searches read that without going through the room. Everything here is
+ * safe to use from any thread.
+ * </p>
+ */
+public class RoomDirectory {
+    private static final int GRAM = 3;
+
+    private final ConcurrentSkipListMap<String, Listing> byName = new ConcurrentSkipListMap<>();
+    private final Map<String, Postings> grams = new ConcurrentHashMap<>();
+
+    /**
+     * The names containing one piece of up to three letters. Changed only
+     * inside the map's compute for its gram, so the count stays right;
+     * readers may see it a change behind, which only matters to how fast a
+     * search runs.
+     */
+    private static final class Postings {
+        private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+        private volatile int size = 0;
+    }
+
+    /**
+     * A room's entry; the room keeps it current with {@link #update}
+     */
+    public static final class Listing {
+        private final String key;
+        private volatile RoomInfo info;
+
+        /**
+         * @param name the room's name
+         */
+        public Listing(String name) {
+            this.key = keyOf(name);
+            this.info = new RoomInfo(name, 0, false, RuleSet.CLASSIC.getName());
+        }
+
+        /**
+         * Publishes the room's current state, if it changed
+         *
+         * @param members players and spectators in the room
+         * @param inGame  true while a game is being played
+         * @param ruleSet the current or last game's rules
+         */
+        public void update(int members, boolean inGame, String ruleSet) {
+            RoomInfo current = info;
+            if (current.getMembers() != members || current.isInGame() != inGame
+                    || !current.getRuleSet().equals(ruleSet)) {
+                info = new RoomInfo(current.getName(), members, inGame, ruleSet);
+            }
+        }
+
+        public RoomInfo getInfo() {
+            return info;
+        }
+    }
+
+    private static String keyOf(String name) {
+        return name.toLowerCase();
+    }
+
+    /**
+     * @return each distinct piece of a lowercased name of the given length
+     */
+    private static Set<String> gramsOf(String key, int length) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + length <= key.length(); i++) {
+            result.add(key.substring(i, i + length));
+        }
+        return result;
+    }
+
+    /**
+     * @return every piece of a name that's indexed, one to three letters long
+     */
+    private static Set<String> indexedGramsOf(String key) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int length = 1; length <= GRAM; length++) {
+            result.addAll(gramsOf(key, length));
+        }
+        return result;
+    }
+
+    /**
+     * Lists a room
+     *
+     * @param listing the room's entry
+     */
+    public void add(Listing listing) {
+        byName.put(listing.key, listing);
+        for (String gram : indexedGramsOf(listing.key)) {
+            grams.compute(gram, (g, postings) -> {
+                Postings result = postings == null ? new Postings() : postings;
+                if (result.keys.add(listing.key)) {
+                    result.size++;
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * Takes a room off the list
+     *
+     * @param listing the room's entry
+     */
+    public void remove(Listing listing) {
+        if (!byName.remove(listing.key, listing)) {
+            return;
+        }
+        for (String gram : indexedGramsOf(listing.key)) {
+            // atomic per gram, so a concurrent add can't lose its name to the removal of an empty set
+            grams.computeIfPresent(gram, (g, postings) -> {
+                if (postings.keys.remove(listing.key)) {
+                    postings.size--;
+                }
+                return postings.size == 0 ? null : postings;
+            });
+        }
+    }
+
+    /**
+     * @return rooms listed
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Finds a page of rooms whose names contain the query
+     *
+     * @param query  text to look for, any case; blank for every room
+     * @param cursor the previous page's cursor, or null for the first page
+     * @param limit  rooms on the page
+     * @return the page, with the cursor for the next one if there's more
+     */
+    public RoomResultPayload search(String query, String cursor, int limit) {
+        String text = query == null ? "" : keyOf(query.trim());
+        List<RoomInfo> found = new ArrayList<>(limit + 1);
+        // one extra tells us whether there's a next page
+        if (text.isEmpty()) {
+            Map<String, Listing> from = cursor == null ? byName : byName.tailMap(cursor, false);
+            for (Listing listing : from.values()) {
+                if (found.size() > limit) {
+                    break;
+                }
+                found.add(listing.info);
+            }
+        } else {
+            searchGrams(text, cursor, limit + 1, found);
+        }
+        RoomResultPayload page = new RoomResultPayload();
+        page.setQuery(query == null ? "" : query);
+        page.setLimit(limit);
+        if (found.size() > limit) {
+            found.remove(limit);
+            page.setCursor(keyOf(found.get(limit - 1).getName()));
+        }
+        page.setRooms(found);
+        return page;
+    }
+
+    /**
+     * Intersects the query's trigram sets in name order, smallest set first;
+     * a query under three letters has just the one set
+     */
+    private void searchGrams(String text, String cursor, int wanted, List<RoomInfo> found) {
+        List<Postings> postings = new ArrayList<>();
+        for (String gram : gramsOf(text, Math.min(text.length(), GRAM))) {
+            Postings names = grams.get(gram);
+            if (names == null) {
+                return;
+            }
+            postings.add(names);
+        }
+        // the rarest trigram proposes the candidates
+        postings.sort(Comparator.comparingInt(names -> names.size));
+        List<NavigableSet<String>> sets = new ArrayList<>(postings.size());
+        for (Postings names : postings) {
+            sets.add(names.keys);
+        }
+        String at = cursor;
+        boolean inclusive = cursor == null;
+        if (at == null) {
+            at = "";
+        }
+        while (found.size() < wanted) {
+            String candidate = inclusive ? sets.get(0).ceiling(at) : sets.get(0).higher(at);
+            if (candidate == null) {
+                return;
+            }
+            String ahead = null;
+            for (int i = 1; i < sets.size() && ahead == null; i++) {
+                String next = sets.get(i).ceiling(candidate);
+                if (next == null) {
+                    return;
+                }
+                if (!next.equals(candidate)) {
+                    ahead = next;
+                }
+            }
+            if (ahead != null) {
+                // nothing before this can be in every set
+                at = ahead;
+                inclusive = true;
+                continue;
+            }
+            // every trigram is there, but not necessarily in a row
+            if (candidate.contains(text)) {
+                Listing listing = byName.get(candidate);
+                if (listing != null) {
+                    found.add(listing.info);
+                }
+            }
+            at = candidate;
+            inclusive = false;
+        }
+    }
+}
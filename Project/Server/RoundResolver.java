@@ -0,0 +1,110 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores a round by grouping players by pick instead of playing every pair.
+ * <p>
+ * Every player wins one point per opponent whose pick theirs beats, the same
+ * as playing all n(n-1)/2 battles. Since everyone with the same pick scores
+ * the same, it's enough to count players per pick and compare the k picks of
+ * the rule set with each other: O(n + k^2) instead of O(n^2), all on arrays
+ * indexed by pick.
+ * </p>
+ */
+public class RoundResolver {
+    private final RuleSet rules;
+    private final int[] counts;
+    private final int[] choicePoints;
+    private final List<PlayerState> picked = new ArrayList<>();
+    private final List<PlayerState> noPick = new ArrayList<>();
+
+    /**
+     * Resolves a round.
+     *
+     * @param players the players taking part
+     * @param rules   the game's variant
+     */
+    public RoundResolver(Collection<PlayerState> players, RuleSet rules) {
+        this.rules = rules;
+        int size = rules.size();
+        counts = new int[size];
+        choicePoints = new int[size];
+        for (PlayerState player : players) {
+            if (player.hasPicked()) {
+                counts[player.getPick()]++;
+                picked.add(player);
+            } else {
+                noPick.add(player);
+            }
+        }
+        for (int pick = 0; pick < size; pick++) {
+            if (counts[pick] == 0) {
+                continue;
+            }
+            int points = 0;
+            for (int other = 0; other < size; other++) {
+                if (counts[other] > 0 && rules.compare(pick, other) > 0) {
+                    points += counts[other];
+                }
+            }
+            choicePoints[pick] = points;
+        }
+    }
+
+    /**
+     * Adds each player's points for the round to their total.
+     */
+    public void applyPoints() {
+        for (PlayerState player : picked) {
+            player.addPoints(choicePoints[player.getPick()]);
+        }
+    }
+
+    /**
+     * @param pick index of a pick
+     * @return points scored this round by each player with that pick
+     */
+    public int getPoints(int pick) {
+        return choicePoints[pick];
+    }
+
+    /**
+     * @return number of players per pick name, for the picks someone made, in
+     *         rule set order
+     */
+    public Map<String, Integer> getChoiceCounts() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int pick = 0; pick < counts.length; pick++) {
+            if (counts[pick] > 0) {
+                result.put(rules.getPick(pick), counts[pick]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return points per pick name, for the picks someone made, in rule set
+     *         order
+     */
+    public Map<String, Integer> getChoicePoints() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int pick = 0; pick < counts.length; pick++) {
+            if (counts[pick] > 0) {
+                result.put(rules.getPick(pick), choicePoints[pick]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return players who didn't pick
+     */
+    public List<PlayerState> getNoPick() {
+        return noPick;
+    }
+}
@@ -0,0 +1,193 @@
+package Project.Server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The picks of a game variant and which pick beats which.
+ * <p>
+ * Picks are identified by their index (0..size-1) and the outcome of every
+ * pair is precomputed into a flat table, so resolving a battle is one array
+ * read and validating a pick doesn't allocate. Variants beyond the built-in
+ * ones (e.g. RPS-15) are loaded from definition files, one pick per line:
+ * </p>
+ *
+ * <pre>
+ * # comment
+ * rock: fire scissors snake human tree wolf sponge
+ * fire: scissors snake human tree wolf sponge paper
+ * </pre>
+ *
+ * Each pick lists the picks it beats; every pick must appear before the colon
+ * on its own line. A pair nobody lists is a tie.
+ */
+public class RuleSet {
+    public static final int NO_PICK = -1;
+
+    public static final RuleSet CLASSIC = new RuleSet("classic",
+            new String[] { "rock", "paper", "scissors" },
+            new String[][] { { "scissors" }, { "rock" }, { "paper" } });
+    public static final RuleSet LIZARD_SPOCK = new RuleSet("lizard-spock",
+            new String[] { "rock", "paper", "scissors", "lizard", "spock" },
+            new String[][] {
+                    { "scissors", "lizard" },
+                    { "rock", "spock" },
+                    { "paper", "lizard" },
+                    { "spock", "paper" },
+                    { "scissors", "rock" } });
+
+    private final String name;
+    private final String[] picks;
+    // outcomes[a * picks.length + b]: 1 if a beats b, -1 if b beats a, 0 for a tie
+    private final byte[] outcomes;
+
+    /**
+     * @param name  how players select the variant
+     * @param picks pick names, lowercase
+     * @param beats for each pick, the names of the picks it beats
+     * @throws IllegalArgumentException if a name is unknown or repeated, or
+     *                                  two picks beat each other
+     */
+    public RuleSet(String name, String[] picks, String[][] beats) {
+        if (picks.length == 0 || picks.length != beats.length) {
+            throw new IllegalArgumentException(name + ": every pick needs a list of the picks it beats");
+        }
+        this.name = name;
+        this.picks = picks.clone();
+        int size = picks.length;
+        this.outcomes = new byte[size * size];
+        for (int i = 0; i < size; i++) {
+            if (indexOf(picks[i]) != i) {
+                throw new IllegalArgumentException(name + ": duplicate pick " + picks[i]);
+            }
+        }
+        for (int winner = 0; winner < size; winner++) {
+            for (String beaten : beats[winner]) {
+                int loser = indexOf(beaten);
+                if (loser == NO_PICK) {
+                    throw new IllegalArgumentException(
+                            String.format("%s: %s beats unknown pick %s", name, picks[winner], beaten));
+                }
+                if (loser == winner || outcomes[loser * size + winner] > 0) {
+                    throw new IllegalArgumentException(
+                            String.format("%s: %s and %s can't beat each other", name, picks[winner], beaten));
+                }
+                outcomes[winner * size + loser] = 1;
+                outcomes[loser * size + winner] = -1;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of picks
+     */
+    public int size() {
+        return picks.length;
+    }
+
+    /**
+     * @param pick index of a pick
+     * @return its name
+     */
+    public String getPick(int pick) {
+        return picks[pick];
+    }
+
+    /**
+     * Looks up a pick typed by a player, ignoring case and surrounding
+     * whitespace, without allocating.
+     *
+     * @param raw pick as received
+     * @return the pick's index, or {@link #NO_PICK} if this variant has no
+     *         such pick
+     */
+    public int indexOf(String raw) {
+        if (raw == null) {
+            return NO_PICK;
+        }
+        int start = 0;
+        int end = raw.length();
+        while (start < end && Character.isWhitespace(raw.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(raw.charAt(end - 1))) {
+            end--;
+        }
+        int length = end - start;
+        for (int i = 0; i < picks.length; i++) {
+            if (picks[i].length() == length && picks[i].regionMatches(true, 0, raw, start, length)) {
+                return i;
+            }
+        }
+        return NO_PICK;
+    }
+
+    /**
+     * @param a index of a pick, or {@link #NO_PICK}
+     * @param b index of a pick, or {@link #NO_PICK}
+     * @return 1 if a beats b, -1 if b beats a, 0 for a tie or a missing pick
+     */
+    public int compare(int a, int b) {
+        if (a == NO_PICK || b == NO_PICK) {
+            return 0;
+        }
+        return outcomes[a * picks.length + b];
+    }
+
+    /**
+     * Reads a variant from a definition file. The variant is named after the
+     * file, minus its extension.
+     *
+     * @param file definition to read
+     * @return the variant
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the definition is malformed
+     */
+    public static RuleSet load(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String name = (dot > 0 ? fileName.substring(0, dot) : fileName).toLowerCase();
+        Map<String, String[]> definition = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException(
+                            String.format("%s:%d: expected \"pick: beaten picks\"", fileName, lineNumber));
+                }
+                String pick = line.substring(0, colon).trim().toLowerCase();
+                String rest = line.substring(colon + 1).trim().toLowerCase();
+                String[] beaten = rest.isEmpty() ? new String[0] : rest.split("\\s+");
+                if (definition.put(pick, beaten) != null) {
+                    throw new IllegalArgumentException(
+                            String.format("%s:%d: duplicate pick %s", fileName, lineNumber, pick));
+                }
+            }
+        }
+        List<String[]> beats = new ArrayList<>(definition.values());
+        return new RuleSet(name, definition.keySet().toArray(new String[0]), beats.toArray(new String[0][]));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d picks)", name, picks.length);
+    }
+}
@@ -0,0 +1,33 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A table of per-player records the server loads at startup and saves back
+ * to a file now and then, see {@link Ratings} and {@link Leaderboard}.
+ */
+public interface SavedTable {
+    /**
+     * Reads records written by {@link #save}, replacing any of the same name
+     *
+     * @param file the file to read
+     * @throws IOException if the file can't be read or is malformed
+     */
+    void load(Path file) throws IOException;
+
+    /**
+     * Writes every record if anything changed since the last save, without
+     * leaving a half-written file behind
+     *
+     * @param file where to write
+     * @return false if there was nothing new to save
+     * @throws IOException if the file can't be written
+     */
+    boolean save(Path file) throws IOException;
+
+    /**
+     * @return records in the table
+     */
+    int size();
+}
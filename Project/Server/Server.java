@@ -1,12 +1,35 @@
 package Project.Server;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
+import Project.Common.AsyncLogHandler;
+import Project.Common.Constants;
+import Project.Common.LeaderboardPayload;
 import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.RoomResultPayload;
 import Project.Common.TextFX.Color;
 import Project.Common.TextFX;
 import Project.Exceptions.DuplicateRoomException;
@@ -17,24 +40,313 @@ public enum Server {
 
     private int port = 3000;
     private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    // the same rooms, searchable by name for /listrooms
+    private final RoomDirectory directory = new RoomDirectory();
     private boolean isRunning = true;
-    private long nextClientId = 0;
+    private final AtomicLong nextClientId = new AtomicLong(0);
+    private NioEventLoop[] eventLoops = new NioEventLoop[0];
+    // every server deadline (name checks, idle checks, round timers) shares this thread
+    private final TimerWheel timers = new TimerWheel("ServerTimer", 10, TimeUnit.MILLISECONDS, 512);
+    // every Room's mailbox is drained on this pool: -Droom.workers=<threads>
+    private final ExecutorService roomWorkers = createRoomWorkers(
+            Integer.getInteger("room.workers", Runtime.getRuntime().availableProcessors()));
+    // forms game rooms from players queued in the lobby; runs on the room workers
+    private final Matchmaker matchmaker = new Matchmaker(roomWorkers, timers);
+    // skill ratings by player name; saved periodically if main is given a file
+    private final Ratings ratings = new Ratings();
+    // career points and wins, ranked
+    private final Leaderboard leaderboard = new Leaderboard();
+    // tables being saved, and where to
+    private final Map<SavedTable, SaveTarget> savedTables = new ConcurrentHashMap<>();
+    // game variants by name; extra ones are loaded in main
+    private final ConcurrentHashMap<String, RuleSet> ruleSets = new ConcurrentHashMap<>();
+    // binary event records; enabled in main
+    private volatile EventLog events = EventLog.disabled();
+    // loopback-only JSON view of the server; started in main
+    private volatile AdminHttpServer adminHttp;
+    // rooms per /listrooms page when the client doesn't say, and at most
+    private static final int ROOM_PAGE = 10;
+    private static final int MAX_ROOM_PAGE = 50;
+    // leaderboard entries sent when the client doesn't say, and at most
+    private static final int LEADERBOARD_PAGE = 10;
+    private static final int MAX_LEADERBOARD_PAGE = 50;
+    // client names allowed to use /stats: -Dmetrics.admins=alice,bob (unset = everyone)
+    private final Set<String> metricsAdmins = parseNames(System.getProperty("metrics.admins"));
 
     private void info(String message) {
-        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Server: %s", message), Color.YELLOW));
+        LoggerUtil.INSTANCE.info(() -> TextFX.colorize(String.format("Server: %s", message), Color.YELLOW));
     }
 
     private Server() {
+        ruleSets.put(RuleSet.CLASSIC.getName(), RuleSet.CLASSIC);
+        ruleSets.put(RuleSet.LIZARD_SPOCK.getName(), RuleSet.LIZARD_SPOCK);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             info("JVM is shutting down. Perform cleanup tasks.");
             shutdown();
         }));
     }
 
+    private static ExecutorService createRoomWorkers(int count) {
+        AtomicLong nextWorker = new AtomicLong();
+        return Executors.newFixedThreadPool(Math.max(1, count), r -> {
+            Thread thread = new Thread(r, "RoomWorker-" + nextWorker.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public TimerWheel getTimers() {
+        return timers;
+    }
+
+    public ExecutorService getRoomWorkers() {
+        return roomWorkers;
+    }
+
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    public Ratings getRatings() {
+        return ratings;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * @return the structured event log; disabled unless -Devents.dir is set
+     */
+    public EventLog getEvents() {
+        return events;
+    }
+
+    /**
+     * @return a live, read-only view of the open rooms
+     */
+    public Collection<Room> getRooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    /**
+     * @return every client currently in a room
+     */
+    public List<ServerThread> getConnections() {
+        return rooms.values().stream()
+                .flatMap(room -> room.getClients().stream())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the current metrics report
+     */
+    public String getMetricsSnapshot() {
+        return Metrics.INSTANCE.snapshot(getConnections())
+                + String.format("Matchmaking: queued=%d matched=%d expired=%d%n", matchmaker.getQueued(),
+                        matchmaker.getMatched(), matchmaker.getExpired());
+    }
+
+    private static Set<String> parseNames(String names) {
+        if (names == null || names.isBlank()) {
+            return null;
+        }
+        Set<String> set = new HashSet<>();
+        for (String name : names.split(",")) {
+            if (!name.isBlank()) {
+                set.add(name.trim().toLowerCase());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Answers a client's /stats request with the metrics report, if the client
+     * is allowed to see it
+     *
+     * @param client who asked
+     */
+    protected void handleStats(ServerThread client) {
+        String name = client.getClientName();
+        if (metricsAdmins != null && (name == null || !metricsAdmins.contains(name.toLowerCase()))) {
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, "You're not allowed to view server stats.");
+            return;
+        }
+        client.sendMessage(Constants.DEFAULT_CLIENT_ID, getMetricsSnapshot());
+    }
+
+    /**
+     * Answers a client's leaderboard request with a page of it
+     *
+     * @param client  who asked
+     * @param request a LeaderboardPayload with the page wanted; anything
+     *                else gets the top of the board
+     */
+    protected void handleLeaderboard(ServerThread client, Payload request) {
+        LeaderboardPayload page = new LeaderboardPayload();
+        int count = LEADERBOARD_PAGE;
+        if (request instanceof LeaderboardPayload lp) {
+            if (lp.getCount() > 0) {
+                count = Math.min(lp.getCount(), MAX_LEADERBOARD_PAGE);
+            }
+            page.setPlayerName(lp.getPlayerName());
+            page.setStartRank(Math.max(1, lp.getStartRank()));
+        }
+        page.setCount(count);
+        if (page.getPlayerName() != null) {
+            page.setEntries(leaderboard.getAround(page.getPlayerName(), count));
+            if (page.getEntries().isEmpty()) {
+                page.setMessage(page.getPlayerName() + " hasn't finished a game yet.");
+            } else {
+                page.setStartRank(page.getEntries().get(0).getRank());
+            }
+        } else {
+            page.setEntries(leaderboard.getPage(page.getStartRank(), count));
+        }
+        page.setTotalPlayers(leaderboard.size());
+        client.sendLeaderboard(page);
+    }
+
+    /**
+     * Appends a metrics report to a file every period
+     *
+     * @param file          where to append
+     * @param periodSeconds time between reports
+     */
+    protected void startMetricsDump(Path file, long periodSeconds) {
+        // the timer thread only posts; the file is written on a room worker
+        timers.scheduleAtFixedRate(() -> roomWorkers.execute(() -> dumpMetrics(file)), periodSeconds,
+                periodSeconds, TimeUnit.SECONDS);
+        info(String.format("Writing metrics to %s every %ds", file.toAbsolutePath(), periodSeconds));
+    }
+
+    private void dumpMetrics(Path file) {
+        try {
+            Files.writeString(file, getMetricsSnapshot() + System.lineSeparator(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning(String.format("Can't write metrics to %s: %s", file, e.getMessage()));
+        }
+    }
+
+    /**
+     * Loads a table saved in a file and saves it back every period (and at
+     * shutdown) when it's changed
+     *
+     * @param what          what the table holds, for the log
+     * @param table         the table
+     * @param file          where it's kept; created on the first save
+     * @param periodSeconds time between saves
+     */
+    protected void startSaving(String what, SavedTable table, Path file, long periodSeconds) {
+        if (Files.exists(file)) {
+            try {
+                table.load(file);
+                info(String.format("Loaded %d %s from %s", table.size(), what, file.toAbsolutePath()));
+            } catch (IOException e) {
+                // don't overwrite a file we couldn't read
+                LoggerUtil.INSTANCE.warning(String.format("Can't load %s from %s, not saving them: %s", what, file,
+                        e.getMessage()));
+                return;
+            }
+        }
+        SaveTarget target = new SaveTarget(file);
+        savedTables.put(table, target);
+        timers.scheduleAtFixedRate(() -> roomWorkers.execute(() -> save(table, target)), periodSeconds,
+                periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Where a table is saved. Saves run on the room workers and at shutdown,
+     * and both write the same temp file, so they take turns.
+     */
+    private static final class SaveTarget {
+        private final Path file;
+        private final Object lock = new Object();
+
+        private SaveTarget(Path file) {
+            this.file = file;
+        }
+    }
+
+    private void save(SavedTable table, SaveTarget target) {
+        synchronized (target.lock) {
+            try {
+                table.save(target.file);
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning(String.format("Can't save %s: %s", target.file, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Starts the admin HTTP endpoint on localhost
+     *
+     * @param port port to bind
+     */
+    protected void startAdminHttp(int port) {
+        try {
+            adminHttp = new AdminHttpServer(port);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning(String.format("Can't start the admin endpoint on port %d: %s", port,
+                    e.getMessage()));
+        }
+    }
+
+    /**
+     * Opens the structured event log
+     *
+     * @param dir          segment directory
+     * @param segmentSize  bytes per segment
+     * @param segmentCount segments to keep
+     */
+    protected void enableEvents(Path dir, int segmentSize, int segmentCount) {
+        try {
+            events = new EventLog(dir, segmentSize, segmentCount);
+            info(String.format("Recording events to %s", dir.toAbsolutePath()));
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning(String.format("Can't record events to %s: %s", dir, e.getMessage()));
+        }
+    }
+
+    /**
+     * @param name variant name, case-insensitive
+     * @return the variant, or null if there's none by that name
+     */
+    public RuleSet getRuleSet(String name) {
+        return name == null ? null : ruleSets.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * Loads every *.rules definition in a directory. Bad files are logged and
+     * skipped.
+     *
+     * @param dir directory to scan; ignored if it doesn't exist
+     */
+    protected void loadRuleSets(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.rules")) {
+            for (Path file : files) {
+                try {
+                    RuleSet rules = RuleSet.load(file);
+                    ruleSets.put(rules.getName(), rules);
+                    info(String.format("Loaded rule set %s", rules));
+                } catch (IOException | IllegalArgumentException e) {
+                    LoggerUtil.INSTANCE.warning(String.format("Skipping rule set %s: %s", file, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning(String.format("Can't read rule sets from %s: %s", dir, e.getMessage()));
+        }
+    }
+
     public void addSpectatorToLobby(ServerThread spectator) {
         try {
             Room lobby = rooms.get(Room.LOBBY);
             if (lobby != null) {
+                spectator.setCurrentRoom(lobby);
                 lobby.addSpectator(spectator);
                 info(String.format("*%s added to Lobby as a spectator*", spectator.getDisplayName()));
             }
@@ -52,10 +364,31 @@ public enum Server {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        for (NioEventLoop loop : eventLoops) {
+            loop.shutdown();
+        }
+        // let the rooms deliver their disconnect messages before the JVM exits
+        roomWorkers.shutdown();
+        try {
+            roomWorkers.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timers.shutdown();
+        savedTables.forEach(this::save);
+        if (adminHttp != null) {
+            adminHttp.stop();
+        }
+        events.close();
+        // last, so everything above makes it into the log
+        LoggerUtil.INSTANCE.shutdown();
     }
-    private void start(int port) {
+    private void start(int port, boolean useVirtualThreads) {
         this.port = port;
         info("Listening on port " + this.port);
+        if (useVirtualThreads && !VirtualThreads.isSupported()) {
+            LoggerUtil.INSTANCE.warning("Virtual threads need JDK 21+, falling back to platform threads");
+        }
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             createRoom(Room.LOBBY);
             while (isRunning) {
@@ -63,7 +396,11 @@ public enum Server {
                 Socket incomingClient = serverSocket.accept();
                 info("Client connected");
                 ServerThread serverThread = new ServerThread(incomingClient, this::onServerThreadInitialized);
-                serverThread.start();
+                if (useVirtualThreads) {
+                    VirtualThreads.start("ServerThread-" + incomingClient.getPort(), serverThread);
+                } else {
+                    serverThread.start();
+                }
             }
         } catch (DuplicateRoomException e) {
             LoggerUtil.INSTANCE.severe(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
@@ -73,9 +410,35 @@ public enum Server {
             info("Closing server socket"); 
         }
     }
+    private void startNio(int port, int loopCount) {
+        this.port = port;
+        info(String.format("Listening on port %s with %s event loops", this.port, loopCount));
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            eventLoops = new NioEventLoop[loopCount];
+            for (int i = 0; i < loopCount; i++) {
+                eventLoops[i] = new NioEventLoop("EventLoop-" + i);
+                eventLoops[i].start();
+            }
+            createRoom(Room.LOBBY);
+            int next = 0;
+            while (isRunning) {
+                // accepting stays blocking on this thread; all client I/O is on the loops
+                SocketChannel incomingClient = serverChannel.accept();
+                info("Client connected");
+                eventLoops[next].register(incomingClient, this::onServerThreadInitialized);
+                next = (next + 1) % eventLoops.length;
+            }
+        } catch (DuplicateRoomException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Error accepting connection", Color.RED), e);
+        } finally {
+            info("Closing server channel");
+        }
+    }
     private void onServerThreadInitialized(ServerThread serverThread) {
-        nextClientId = Math.max(++nextClientId, 1);
-        serverThread.setClientId(nextClientId);
+        serverThread.setClientId(nextClientId.incrementAndGet());
         serverThread.sendClientId();
         info(String.format("*%s initialized*", serverThread.getDisplayName()));
         if (!serverThread.isSpectator()) {
@@ -88,18 +451,27 @@ public enum Server {
             }
         }
     }
-    protected void createRoom(String name) throws DuplicateRoomException {
+    protected Room createRoom(String name) throws DuplicateRoomException {
         final String nameCheck = name.toLowerCase();
-        if (rooms.containsKey(nameCheck)) {
+        // two clients may race to create the same name now that handlers run on different threads;
+        // only the winner builds a Room, so a loser leaves no mailbox, log line or event behind
+        boolean[] created = new boolean[1];
+        Room room = rooms.computeIfAbsent(nameCheck, key -> {
+            created[0] = true;
+            return new Room(name);
+        });
+        if (!created[0]) {
             throw new DuplicateRoomException(String.format("Room %s already exists", name));
         }
-        Room room = new Room(name);
-        rooms.put(nameCheck, room);
+        directory.add(room.getListing());
         info(String.format("Created new Room %s", name));
+        return room;
     }
     protected void joinRoom(String name, ServerThread client) throws RoomNotFoundException {
         final String nameCheck = name.toLowerCase();
-        if (!rooms.containsKey(nameCheck)) {
+        // one lookup: rooms close themselves on worker threads, so a second could miss
+        Room next = rooms.get(nameCheck);
+        if (next == null) {
             throw new RoomNotFoundException(String.format("Room %s wasn't found", name));
         }
         Room currentRoom = client.getCurrentRoom();
@@ -107,24 +479,30 @@ public enum Server {
             info("Removing client from previous Room " + currentRoom.getName());
             currentRoom.removeClient(client);
         }
-        Room next = rooms.get(nameCheck);
+        // switch now so the client's next payloads are queued on the new room,
+        // behind the join itself
+        client.setCurrentRoom(next);
         if (client.isSpectator()) {
             next.addSpectator(client);
         } else {
             next.addClient(client);
         }
     }
-    protected List<String> listRooms(String roomQuery) {
-        final String nameCheck = roomQuery.toLowerCase();
-        return rooms.values().stream()
-                .filter(room -> room.getName().toLowerCase().contains(nameCheck))
-                .map(room -> room.getName())
-                .limit(10)
-                .sorted()
-                .collect(Collectors.toList());
+    /**
+     * Finds a page of rooms by name, see {@link RoomDirectory#search}
+     *
+     * @param roomQuery text the names contain, any case; blank for every room
+     * @param cursor    the previous page's cursor, or null for the first page
+     * @param limit     rooms wanted; 0 or less for the default
+     * @return the page
+     */
+    protected RoomResultPayload listRooms(String roomQuery, String cursor, int limit) {
+        int pageSize = limit <= 0 ? ROOM_PAGE : Math.min(limit, MAX_ROOM_PAGE);
+        return directory.search(roomQuery, cursor, pageSize);
     }
     protected void removeRoom(Room room) {
-        rooms.remove(room.getName().toLowerCase());
+        rooms.remove(room.getName().toLowerCase(), room);
+        directory.remove(room.getListing());
         info(String.format("Removed room %s", room.getName()));
     }
     public static void main(String[] args) {
@@ -132,7 +510,16 @@ public enum Server {
         config.setFileSizeLimit(2048 * 1024);
         config.setFileCount(1);
         config.setLogLocation("server.log");
+        // only warnings and errors pay for looking up the calling class: -Dlog.sourceLevel=ALL to see it everywhere
+        config.setSourceLogLevel(Level.parse(System.getProperty("log.sourceLevel", "WARNING")));
+        // write logs from a background thread: -Dlog.async=true -Dlog.asyncBuffer=8192 -Dlog.asyncOverflow=drop|block
+        config.setAsync(Boolean.getBoolean("log.async"));
+        config.setAsyncBufferSize(Integer.getInteger("log.asyncBuffer", config.getAsyncBufferSize()));
+        config.setAsyncOverflow(AsyncLogHandler.Overflow.fromString(System.getProperty("log.asyncOverflow")));
         LoggerUtil.INSTANCE.setConfig(config);
+        // per-category levels, e.g. -Dlog.levels=payload=OFF,room=WARNING; they're also
+        // loggers named ApplicationLogger.<category>, adjustable at runtime over JMX
+        LoggerUtil.INSTANCE.setCategoryLevels(System.getProperty("log.levels"));
         LoggerUtil.INSTANCE.info("Server Starting");
         Server server = Server.INSTANCE;
         int port = 3000;
@@ -141,7 +528,52 @@ public enum Server {
         } catch (Exception e) {
             // use default 3000
         }
-        server.start(port);
+        TransportMode mode = TransportMode.fromString(args.length > 1 ? args[1] : null);
+        int loopCount = Runtime.getRuntime().availableProcessors();
+        try {
+            loopCount = Math.max(1, Integer.parseInt(args[2]));
+        } catch (Exception e) {
+            // use one loop per core
+        }
+        // per-client send queue: -Doutbound.capacity=1024 -Doutbound.policy=coalesce_status
+        OutboundQueue.setDefaults(Integer.getInteger("outbound.capacity", 1024),
+                OutboundQueue.OverflowPolicy.fromString(System.getProperty("outbound.policy")));
+        // extra game variants (e.g. rps15): -Dgame.rulesDir=<dir of *.rules files>
+        server.loadRuleSets(Paths.get(System.getProperty("game.rulesDir", "Project/Server/rules")));
+        // keep skill ratings across restarts (otherwise they're in memory only):
+        // -Dratings.file=ratings.tsv -Dratings.saveSeconds=60
+        long savePeriod = Math.max(1, Long.getLong("ratings.saveSeconds", 60));
+        String ratingsFile = System.getProperty("ratings.file");
+        if (ratingsFile != null && !ratingsFile.isBlank()) {
+            server.startSaving("ratings", server.ratings, Paths.get(ratingsFile), savePeriod);
+        }
+        // and the leaderboard, saved alongside: -Dleaderboard.file=leaderboard.tsv
+        String leaderboardFile = System.getProperty("leaderboard.file");
+        if (leaderboardFile != null && !leaderboardFile.isBlank()) {
+            server.startSaving("leaderboard entries", server.leaderboard, Paths.get(leaderboardFile), savePeriod);
+        }
+        // periodic metrics report: -Dmetrics.dumpFile=metrics.txt -Dmetrics.dumpSeconds=60
+        String metricsFile = System.getProperty("metrics.dumpFile");
+        if (metricsFile != null) {
+            server.startMetricsDump(Paths.get(metricsFile), Math.max(1, Long.getLong("metrics.dumpSeconds", 60)));
+        }
+        // JSON rooms/connections/threads/metrics on http://127.0.0.1:<port>/: -Dadmin.port=8081
+        Integer adminPort = Integer.getInteger("admin.port");
+        if (adminPort != null) {
+            server.startAdminHttp(adminPort);
+        }
+        // compact binary event records for Project.Tools.EventLogDecoder:
+        // -Devents.dir=<dir> -Devents.segmentBytes=16777216 -Devents.segments=8
+        String eventsDir = System.getProperty("events.dir");
+        if (eventsDir != null) {
+            server.enableEvents(Paths.get(eventsDir), Integer.getInteger("events.segmentBytes", 16 * 1024 * 1024),
+                    Integer.getInteger("events.segments", 8));
+        }
+        if (mode == TransportMode.NIO) {
+            server.startNio(port, loopCount);
+        } else {
+            server.start(port, mode == TransportMode.VIRTUAL);
+        }
         LoggerUtil.INSTANCE.warning("Server Stopped");
     }
 }
\ No newline at end of file
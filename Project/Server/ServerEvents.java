@@ -0,0 +1,150 @@
+package Project.Server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted by the server.
+ * <p>
+ * All of them are disabled by default; while disabled, begin/commit are no-ops
+ * the JIT removes and the events themselves are scalar-replaced, so the hooks
+ * cost next to nothing. To record them, start the server with
+ * </p>
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:settings=Project/Server/rps-events.jfc,filename=server.jfr ...
+ * </pre>
+ * <p>
+ * (or enable the "rps.*" events in any other .jfc) and open the file in JDK
+ * Mission Control or with {@code jfr print --events rps.RoundResolved server.jfr}.
+ * </p>
+ */
+public final class ServerEvents {
+    private static final String CATEGORY = "RPS Server";
+
+    private ServerEvents() {
+    }
+
+    @Name("rps.PayloadReceived")
+    @Label("Payload Received")
+    @Description("A payload from a client, from arrival until its handler returned or queued it")
+    @Category({ CATEGORY, "Network" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PayloadReceived extends Event {
+        @Label("Payload Type")
+        public String payloadType;
+        @Label("Size")
+        @Description("Frame size, or -1 for object-stream clients")
+        @DataAmount
+        public int size;
+        @Label("Client Id")
+        public long clientId;
+    }
+
+    @Name("rps.PayloadSent")
+    @Label("Payload Sent")
+    @Description("A payload written to a client's socket; the duration covers writing it, including waits for the socket to drain")
+    @Category({ CATEGORY, "Network" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PayloadSent extends Event {
+        private static final EventType TYPE = EventType.getEventType(PayloadSent.class);
+
+        @Label("Payload Type")
+        public String payloadType;
+        @Label("Size")
+        @Description("Frame size, or -1 for object-stream clients")
+        @DataAmount
+        public int size;
+        @Label("Client Id")
+        public long clientId;
+
+        /**
+         * @return true if a recording wants these events; the NIO writer keeps
+         *         one per frame in flight, so it only creates them then
+         */
+        public static boolean isTypeEnabled() {
+            return TYPE.isEnabled();
+        }
+    }
+
+    @Name("rps.RoomHandler")
+    @Label("Room Handler")
+    @Description("One message run on a room's mailbox")
+    @Category({ CATEGORY, "Rooms" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RoomHandler extends Event {
+        private static final EventType TYPE = EventType.getEventType(RoomHandler.class);
+
+        @Label("Room")
+        public String room;
+        @Label("Handler")
+        public String handler;
+        @Label("Queue Wait")
+        @Description("Time the message waited in the mailbox; rooms have no locks, so this is their contention")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueWait;
+
+        /**
+         * @return true if a recording wants these events; checked before
+         *         paying for the post time
+         */
+        public static boolean isTypeEnabled() {
+            return TYPE.isEnabled();
+        }
+    }
+
+    @Name("rps.RoundStarted")
+    @Label("Round Started")
+    @Category({ CATEGORY, "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RoundStarted extends Event {
+        @Label("Room")
+        public String room;
+        @Label("Round")
+        public int round;
+        @Label("Players")
+        public int players;
+    }
+
+    @Name("rps.RoundResolved")
+    @Label("Round Resolved")
+    @Description("Scoring a round and sending its result")
+    @Category({ CATEGORY, "Game" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RoundResolved extends Event {
+        @Label("Room")
+        public String room;
+        @Label("Round")
+        public int round;
+        @Label("Players")
+        public int players;
+    }
+
+    @Name("rps.BroadcastFanout")
+    @Label("Broadcast Fan-out")
+    @Description("Encoding a payload once and queueing it for every member of a room")
+    @Category({ CATEGORY, "Rooms" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static class BroadcastFanout extends Event {
+        @Label("Room")
+        public String room;
+        @Label("Payload Type")
+        public String payloadType;
+        @Label("Recipients")
+        public int recipients;
+    }
+}
@@ -1,16 +1,17 @@
 package Project.Server;
 
 import java.net.Socket;
-import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.logging.Level;
 import Project.Common.*;
 import Project.Common.TextFX.Color;
 
-public class ServerThread extends BaseServerThread {
+public class ServerThread extends BaseServerThread implements GamePlayer {
     private Consumer<ServerThread> onInitializationComplete;
-    private boolean isSpectator = false;
+    private volatile boolean isSpectator = false;
 
+    @Override
     public boolean isSpectator() {
         return isSpectator;
     }
@@ -20,7 +21,16 @@ public class ServerThread extends BaseServerThread {
 
     @Override
     protected void info(String message) {
-        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Thread[%s]: %s", this.getClientId(), message), Color.CYAN));
+        LoggerUtil.INSTANCE.info(() -> format(message));
+    }
+
+    @Override
+    protected void trace(String message) {
+        LoggerUtil.INSTANCE.log(PAYLOAD_LOG, Level.FINE, () -> format(message));
+    }
+
+    private String format(String message) {
+        return TextFX.colorize(String.format("Thread[%s]: %s", this.getClientId(), message), Color.CYAN);
     }
 
     protected ServerThread(Socket myClient, Consumer<ServerThread> onInitializationComplete) {
@@ -31,6 +41,14 @@ public class ServerThread extends BaseServerThread {
         info("ServerThread created");
     }
 
+    protected ServerThread(NioConnection connection, Consumer<ServerThread> onInitializationComplete) {
+        Objects.requireNonNull(connection, "Client connection cannot be null");
+        Objects.requireNonNull(onInitializationComplete, "callback cannot be null");
+        this.connection = connection;
+        this.onInitializationComplete = onInitializationComplete;
+        info("ServerThread created (nio)");
+    }
+
     @Override
     protected void processPayload(Payload incoming) {
         switch (incoming.getPayloadType()) {
@@ -60,7 +78,7 @@ public class ServerThread extends BaseServerThread {
                 currentRoom.handleJoinRoom(this, Room.LOBBY);
                 break;
             case ROOM_LIST:
-                currentRoom.handleListRooms(this, incoming.getMessage());
+                currentRoom.handleListRooms(this, incoming);
                 break;
             case GAME_READY:
                 currentRoom.handleGameReady(this, incoming);
@@ -69,7 +87,22 @@ public class ServerThread extends BaseServerThread {
                 currentRoom.handleToggleAway(this);
                 break;
             case GAME_PICK:
-                currentRoom.handlePlayerPick(this, incoming.getMessage());
+                currentRoom.handlePlayerPick(this, incoming);
+                break;
+            case MATCH_QUEUE:
+                Server.INSTANCE.getMatchmaker().enqueue(this, incoming);
+                break;
+            case MATCH_LEAVE:
+                Server.INSTANCE.getMatchmaker().leave(this);
+                break;
+            case STATS:
+                Server.INSTANCE.handleStats(this);
+                break;
+            case LEADERBOARD:
+                Server.INSTANCE.handleLeaderboard(this, incoming);
+                break;
+            case PONG:
+                handlePong((PingPayload) incoming);
                 break;
             default:
                 LoggerUtil.INSTANCE.warning(TextFX.colorize("Unknown payload type received", Color.RED));
@@ -77,10 +110,11 @@ public class ServerThread extends BaseServerThread {
         }
     }
     
-    public boolean sendRooms(List<String> rooms) {
-        RoomResultPayload payload = new RoomResultPayload();
-        payload.setRooms(rooms);
-        return sendToClient(payload);
+    public boolean sendRooms(RoomResultPayload page) {
+        return sendToClient(isObjectStream() ? page.toNamesOnly() : page);
+    }
+    public boolean sendLeaderboard(LeaderboardPayload page) {
+        return sendToClient(page);
     }
     protected boolean sendDisconnect(long clientId) {
         Payload payload = new Payload();
@@ -94,6 +128,9 @@ public class ServerThread extends BaseServerThread {
         return sendToClient(payload);
     }
     protected boolean sendClientInfo(long clientId, String clientName, RoomAction action, boolean isSync, boolean isSpectator) {
+        return sendToClient(createClientInfo(clientId, clientName, action, isSync, isSpectator));
+    }
+    protected static ConnectionPayload createClientInfo(long clientId, String clientName, RoomAction action, boolean isSync, boolean isSpectator) {
         ConnectionPayload payload = new ConnectionPayload();
         switch (action) {
             case JOIN:
@@ -106,7 +143,7 @@ public class ServerThread extends BaseServerThread {
         payload.setClientId(clientId);
         payload.setClientName(clientName);
         payload.setSpectator(isSpectator);
-        return sendToClient(payload);
+        return payload;
     }
     protected boolean sendClientId() {
         ConnectionPayload payload = new ConnectionPayload();
@@ -115,12 +152,16 @@ public class ServerThread extends BaseServerThread {
         payload.setClientName(getClientName());
         return sendToClient(payload);
     }
-    protected boolean sendMessage(long clientId, String message) {
+    @Override
+    public boolean sendMessage(long clientId, String message) {
+        return sendToClient(createMessage(clientId, message));
+    }
+    protected static Payload createMessage(long clientId, String message) {
         Payload payload = new Payload();
         payload.setPayloadType(PayloadType.MESSAGE);
         payload.setMessage(message);
         payload.setClientId(clientId);
-        return sendToClient(payload);
+        return payload;
     }
     @Override
     protected void onInitialized() {
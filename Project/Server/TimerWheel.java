@@ -0,0 +1,285 @@
+package Project.Server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import Project.Common.LoggerUtil;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+
+/**
+ * Hashed timing wheel that runs every server deadline (handshake checks, round
+ * timers, idle timeouts, periodic jobs) on one thread.
+ * <p>
+ * The wheel is an array of buckets, each covering one tick. A timeout lands
+ * in the bucket for its deadline and carries the number of full turns left
+ * before it is due, so scheduling and cancelling are O(1) no matter how many
+ * timeouts are pending. Other threads only touch two lock-free queues (new
+ * timeouts and cancellations); the buckets belong to the wheel thread.
+ * </p>
+ * <p>
+ * Tasks run on the wheel thread and must be short; anything that blocks
+ * should be handed to another executor. Deadlines are accurate to one tick.
+ * </p>
+ */
+public class TimerWheel {
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+    private final Thread thread;
+    private final long startTime;
+    private long tick = 0;
+    private volatile boolean isRunning = true;
+
+    private void info(String message) {
+        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("%s: %s", name, message), Color.PURPLE));
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long periodNanos;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private long deadline; // nanos since startTime
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline, long periodNanos) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Stops the task from running (again). Safe to call from any thread and
+         * more than once.
+         *
+         * @return true if this call cancelled it
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            // the wheel thread unlinks it from its bucket on the next tick
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return true if a one-shot task has run
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (periodNanos > 0) {
+                if (state.get() != INIT) {
+                    return;
+                }
+                run();
+                if (state.get() == INIT) {
+                    // never back into the bucket being expired, even if we fell behind
+                    deadline = Math.max(deadline + periodNanos, (tick + 1) * tickNanos);
+                    place(this);
+                }
+                return;
+            }
+            if (state.compareAndSet(INIT, EXPIRED)) {
+                scheduledCount.decrementAndGet();
+                run();
+            }
+        }
+
+        private void run() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LoggerUtil.INSTANCE.severe("Timer task failed in " + name, t);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts due in one tick
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.next = timeout.prev = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * Creates and starts a wheel.
+     *
+     * @param name         thread name
+     * @param tickDuration length of one tick
+     * @param unit         unit of tickDuration
+     * @param wheelSize    number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        this.name = name;
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task once after a delay.
+     *
+     * @param task  work to run on the wheel thread
+     * @param delay delay before running
+     * @param unit  unit of delay
+     * @return handle for cancelling
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(task, unit.toNanos(delay), 0);
+    }
+
+    /**
+     * Runs a task repeatedly until cancelled.
+     *
+     * @param task         work to run on the wheel thread
+     * @param initialDelay delay before the first run
+     * @param period       time between runs
+     * @param unit         unit of initialDelay and period
+     * @return handle for cancelling
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return add(task, unit.toNanos(initialDelay), unit.toNanos(period));
+    }
+
+    private Timeout add(Runnable task, long delayNanos, long periodNanos) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + Math.max(0, delayNanos), periodNanos);
+        scheduledCount.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts that haven't run or been cancelled yet
+     */
+    public int size() {
+        return scheduledCount.get();
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        LockSupport.unpark(thread);
+    }
+
+    // only called on the wheel thread
+    private void place(Timeout timeout) {
+        long dueTick = Math.max(timeout.deadline / tickNanos, tick);
+        timeout.remainingRounds = (dueTick - tick) / wheel.length;
+        wheel[(int) (dueTick & mask)].add(timeout);
+    }
+
+    private void run() {
+        // no "starting" message: Server's wheel starts while Server.main is
+        // still configuring the logger, and logging then would kill the thread
+        while (isRunning) {
+            long wakeAt = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = wakeAt - (System.nanoTime() - startTime)) > 0 && isRunning) {
+                LockSupport.parkNanos(sleep);
+            }
+            processCancelled();
+            transferPending();
+            expireBucket(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+        info("Timer wheel stopped");
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            scheduledCount.decrementAndGet();
+        }
+    }
+
+    private void transferPending() {
+        // bounded so a flood of new timeouts can't starve the tick
+        for (int i = 0; i < 100_000; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == INIT) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void expireBucket(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+}
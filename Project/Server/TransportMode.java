@@ -0,0 +1,27 @@
+package Project.Server;
+
+/**
+ * How the Server serves client connections, picked at startup.
+ */
+public enum TransportMode {
+    BLOCKING, // one ServerThread per client blocking on its socket
+    VIRTUAL, // like BLOCKING, but each ServerThread.run() is on a virtual thread
+    NIO; // a small pool of NioEventLoop selector threads
+
+    /**
+     * Parses a mode name, falling back to BLOCKING for anything unknown.
+     *
+     * @param value mode name from the command line (case insensitive)
+     * @return the matching TransportMode
+     */
+    public static TransportMode fromString(String value) {
+        if (value != null) {
+            for (TransportMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return BLOCKING;
+    }
+}
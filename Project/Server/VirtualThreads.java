@@ -0,0 +1,101 @@
+package Project.Server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import Project.Common.LoggerUtil;
+
+/**
+ * Starts threads as JDK virtual threads when the runtime supports them.
+ * <p>
+ * The project still compiles on JDK 17, so the Thread.Builder API (JDK 21+)
+ * is looked up reflectively. On older runtimes {@link #start(String, Runnable)}
+ * falls back to a regular platform thread.
+ * </p>
+ */
+public abstract class VirtualThreads {
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle UNSTARTED;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle unstarted = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+                    MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")));
+            name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class));
+            unstarted = lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    /**
+     * @return true if this runtime can create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates (but doesn't start) a virtual thread, or a platform thread if
+     * virtual threads aren't available.
+     *
+     * @param name thread name
+     * @param task work to run
+     * @return the unstarted thread
+     */
+    public static Thread newThread(String name, Runnable task) {
+        if (isSupported()) {
+            try {
+                Object builder = OF_VIRTUAL.invoke();
+                builder = NAME.invoke(builder, name);
+                return (Thread) UNSTARTED.invoke(builder, task);
+            } catch (Throwable t) {
+                LoggerUtil.INSTANCE.warning("Failed to create virtual thread, using a platform thread", t);
+            }
+        }
+        return new Thread(task, name);
+    }
+
+    /**
+     * Creates and starts a thread via {@link #newThread(String, Runnable)}.
+     *
+     * @param name thread name
+     * @param task work to run
+     * @return the started thread
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = newThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Creates an Executor that runs each task on its own virtual thread, or on
+     * a cached pool of daemon platform threads if virtual threads aren't
+     * available.
+     *
+     * @param name thread name
+     * @return the executor
+     */
+    public static Executor newPerTaskExecutor(String name) {
+        if (isSupported()) {
+            return task -> start(name, task);
+        }
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,226 @@
+package Project.Tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import Project.Common.ConnectionPayload;
+import Project.Common.FrameCodec;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+
+/**
+ * Soak test for idle lobby connections.
+ * <p>
+ * Opens many loopback clients, sends each one's name and measures the time
+ * from the TCP connect completing to receiving its CLIENT_ID. After the
+ * handshake each client stays connected and just drains whatever the server
+ * sends. By default the Server is started in this JVM (virtual mode) so the
+ * reported heap includes the server's per-connection cost.
+ * </p>
+ * Usage:
+ * {@code ConnectionSoak [clients=20000] [port=3000] [mode=virtual|blocking|nio|external] [holdSeconds=30]}
+ */
+public class ConnectionSoak {
+    private final int clientCount;
+    private final int port;
+    private final ByteBuffer drain = ByteBuffer.allocate(64 * 1024);
+    private final long[] latenciesNanos;
+    private int identified = 0;
+    private int failed = 0;
+    private long bytesReceived = 0;
+
+    public ConnectionSoak(int clientCount, int port) {
+        this.clientCount = clientCount;
+        this.port = port;
+        this.latenciesNanos = new long[clientCount];
+    }
+
+    /**
+     * Per-client state attached to its SelectionKey
+     */
+    private static class SoakClient {
+        private final int index;
+        private long connectedAt;
+        private boolean hasClientId = false;
+        private ByteBuffer firstFrame = ByteBuffer.allocate(4096);
+
+        private SoakClient(int index) {
+            this.index = index;
+        }
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    public void run(long holdSeconds) throws IOException, InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeap(memory);
+        long start = System.nanoTime();
+        try (Selector selector = Selector.open()) {
+            int opened = 0;
+            long lastReport = System.nanoTime();
+            while (identified + failed < clientCount) {
+                // open in small batches so the accept backlog isn't overrun
+                for (int i = 0; i < 200 && opened < clientCount && opened - identified - failed < 1000; i++) {
+                    try {
+                        SocketChannel channel = SocketChannel.open();
+                        channel.configureBlocking(false);
+                        channel.connect(new InetSocketAddress("localhost", port));
+                        channel.register(selector, SelectionKey.OP_CONNECT, new SoakClient(opened));
+                    } catch (IOException e) {
+                        failed++;
+                        if (failed == 1) {
+                            System.err.println("Connect failed (check ulimit -n): " + e.getMessage());
+                        }
+                    }
+                    opened++;
+                }
+                selector.select(100);
+                processKeys(selector);
+                if (System.nanoTime() - lastReport > 5_000_000_000L) {
+                    lastReport = System.nanoTime();
+                    System.out.printf("opened=%d identified=%d failed=%d%n", opened, identified, failed);
+                }
+            }
+            long rampNanos = System.nanoTime() - start;
+            long heapAfter = usedHeap(memory);
+            report(rampNanos, heapBefore, heapAfter);
+            long holdUntil = System.nanoTime() + holdSeconds * 1_000_000_000L;
+            while (System.nanoTime() < holdUntil) {
+                selector.select(500);
+                processKeys(selector);
+            }
+            System.out.printf("Held %d connections for %ds, heap used %.1f MB, %d bytes received%n", identified,
+                    holdSeconds, usedHeap(memory) / (1024.0 * 1024.0), bytesReceived);
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+        }
+    }
+
+    private void processKeys(Selector selector) {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            SoakClient client = (SoakClient) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                if (key.isConnectable() && channel.finishConnect()) {
+                    client.connectedAt = System.nanoTime();
+                    sendName(channel, client.index);
+                    key.interestOps(SelectionKey.OP_READ);
+                } else if (key.isReadable()) {
+                    onReadable(channel, client);
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                if (!client.hasClientId) {
+                    failed++;
+                }
+            }
+        }
+    }
+
+    private void sendName(SocketChannel channel, int index) throws IOException {
+        ConnectionPayload payload = new ConnectionPayload();
+        payload.setPayloadType(PayloadType.CLIENT_CONNECT);
+        payload.setClientName("soak" + index);
+        byte[] data = FrameCodec.encode(payload);
+        ByteBuffer out = ByteBuffer.allocate(8 + data.length);
+        out.putInt(FrameCodec.MAGIC).putInt(data.length).put(data).flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    private void onReadable(SocketChannel channel, SoakClient client) throws IOException, ClassNotFoundException {
+        if (client.hasClientId) {
+            drain.clear();
+            int read = channel.read(drain);
+            if (read < 0) {
+                throw new IOException("Server closed connection");
+            }
+            bytesReceived += read;
+            return;
+        }
+        ByteBuffer buffer = client.firstFrame;
+        if (channel.read(buffer) < 0) {
+            throw new IOException("Server closed connection");
+        }
+        if (buffer.position() < 4) {
+            return;
+        }
+        int length = buffer.getInt(0);
+        FrameCodec.checkFrameLength(length);
+        if (buffer.position() < 4 + length) {
+            if (buffer.capacity() < 4 + length) {
+                ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                buffer.flip();
+                larger.put(buffer);
+                client.firstFrame = larger;
+            }
+            return;
+        }
+        Payload payload = FrameCodec.decode(buffer.array(), 4, length);
+        if (payload.getPayloadType() != PayloadType.CLIENT_ID) {
+            throw new IOException("Expected CLIENT_ID but got " + payload.getPayloadType());
+        }
+        latenciesNanos[identified++] = System.nanoTime() - client.connectedAt;
+        client.hasClientId = true;
+        client.firstFrame = null;
+    }
+
+    private void report(long rampNanos, long heapBefore, long heapAfter) {
+        long[] sorted = Arrays.copyOf(latenciesNanos, identified);
+        Arrays.sort(sorted);
+        double perConnectionKb = identified == 0 ? 0 : (heapAfter - heapBefore) / 1024.0 / identified;
+        System.out.println("=== Connection soak ===");
+        System.out.printf("clients=%d identified=%d failed=%d ramp=%.1fs (%.0f conn/s)%n", clientCount, identified,
+                failed, rampNanos / 1e9, identified / (rampNanos / 1e9));
+        System.out.printf("heap used: before=%.1f MB after=%.1f MB (~%.1f KB per connection)%n",
+                heapBefore / (1024.0 * 1024.0), heapAfter / (1024.0 * 1024.0), perConnectionKb);
+        System.out.printf("accept->CLIENT_ID ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentile(sorted, identified, 0.50) / 1e6, percentile(sorted, identified, 0.90) / 1e6,
+                percentile(sorted, identified, 0.99) / 1e6, percentile(sorted, identified, 1.0) / 1e6);
+        System.out.printf("threads: live=%d peak=%d%n", ManagementFactory.getThreadMXBean().getThreadCount(),
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        String mode = args.length > 2 ? args[2] : "virtual";
+        long holdSeconds = args.length > 3 ? Long.parseLong(args[3]) : 30;
+        if (!"external".equalsIgnoreCase(mode)) {
+            Thread server = new Thread(() -> Project.Server.Server.main(new String[] { String.valueOf(port), mode }),
+                    "EmbeddedServer");
+            server.setDaemon(true);
+            server.start();
+            Thread.sleep(1000);
+        }
+        new ConnectionSoak(clients, port).run(holdSeconds);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,252 @@
+package Project.Tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import Project.Common.JsonWriter;
+import Project.Common.PayloadType;
+import Project.Server.EventLog;
+
+/**
+ * Renders binary event log segments (see {@link EventLog}) as text or JSON
+ * lines, optionally keeping only one room's or one client's events.
+ * <p>
+ * Usage:
+ * {@code EventLogDecoder [--json] [--room <name>] [--client <id>] <segment file or directory>...}
+ * </p>
+ * A directory means all of its segments, oldest first.
+ */
+public class EventLogDecoder {
+    private static final PayloadType[] TYPES = PayloadType.values();
+
+    private final boolean json;
+    private final String roomFilter;
+    private final Long clientFilter;
+    private final Writer out;
+    private long events = 0;
+
+    /**
+     * A decoded event
+     */
+    private static class Event {
+        private long millis;
+        private String level;
+        private String category;
+        private long clientId;
+        private String room;
+        private String payloadType;
+        private String template;
+        private final List<String> args = new ArrayList<>();
+    }
+
+    public EventLogDecoder(boolean json, String roomFilter, Long clientFilter, Writer out) {
+        this.json = json;
+        this.roomFilter = roomFilter;
+        this.clientFilter = clientFilter;
+        this.out = out;
+    }
+
+    /**
+     * Decodes one segment file
+     *
+     * @param file segment to read
+     * @throws IOException if it can't be read or isn't a segment
+     */
+    public void decode(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < EventLog.HEADER_SIZE) {
+            throw new IOException(file + " is too short to be an event segment");
+        }
+        for (byte b : EventLog.MAGIC) {
+            if (in.get() != b) {
+                throw new IOException(file + " is not an event segment");
+            }
+        }
+        byte version = in.get();
+        if (version != EventLog.VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        long baseMillis = in.getLong();
+        List<Map<Integer, String>> dictionaries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            dictionaries.add(new HashMap<>());
+        }
+        while (in.hasRemaining()) {
+            int length = (int) readVarLong(in);
+            if (length == 0) {
+                break;
+            }
+            if (length > in.remaining()) {
+                // torn write at a crash; everything before it is intact
+                System.err.println(file + ": truncated record at offset " + in.position());
+                break;
+            }
+            ByteBuffer record = in.slice();
+            record.limit(length);
+            in.position(in.position() + length);
+            byte kind = record.get();
+            if (kind == EventLog.KIND_DEFINE) {
+                int dictionary = record.get();
+                int id = (int) readVarLong(record);
+                dictionaries.get(dictionary).put(id, readString(record));
+            } else if (kind == EventLog.KIND_EVENT) {
+                Event event = new Event();
+                event.millis = baseMillis + readVarLong(record);
+                int level = record.get();
+                event.level = level >= 0 && level < EventLog.LEVELS.length ? EventLog.LEVELS[level].getName() : "?";
+                event.category = dictionaries.get(EventLog.DICT_CATEGORY).get((int) readVarLong(record));
+                long zigzag = readVarLong(record);
+                event.clientId = (zigzag >>> 1) ^ -(zigzag & 1);
+                int roomId = (int) readVarLong(record);
+                event.room = roomId == 0 ? null : dictionaries.get(EventLog.DICT_ROOM).get(roomId);
+                int type = record.get() & 0xFF;
+                event.payloadType = type == 0 ? null : type - 1 < TYPES.length ? TYPES[type - 1].name() : "#" + (type - 1);
+                event.template = dictionaries.get(EventLog.DICT_TEMPLATE).get((int) readVarLong(record));
+                int argc = record.get() & 0xFF;
+                for (int i = 0; i < argc; i++) {
+                    event.args.add(readString(record));
+                }
+                if (matches(event)) {
+                    write(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of events written
+     */
+    public long getEventCount() {
+        return events;
+    }
+
+    private boolean matches(Event event) {
+        if (roomFilter != null && !roomFilter.equalsIgnoreCase(event.room)) {
+            return false;
+        }
+        return clientFilter == null || clientFilter == event.clientId;
+    }
+
+    private void write(Event event) throws IOException {
+        events++;
+        String message = render(event.template, event.args);
+        if (json) {
+            StringBuilder sb = new StringBuilder("{");
+            sb.append("\"time\":\"").append(Instant.ofEpochMilli(event.millis)).append('"');
+            sb.append(",\"level\":\"").append(event.level).append('"');
+            sb.append(",\"category\":").append(JsonWriter.quote(event.category));
+            sb.append(",\"client\":").append(event.clientId);
+            sb.append(",\"room\":").append(JsonWriter.quote(event.room));
+            sb.append(",\"payload\":").append(JsonWriter.quote(event.payloadType));
+            sb.append(",\"template\":").append(JsonWriter.quote(event.template));
+            sb.append(",\"args\":[");
+            for (int i = 0; i < event.args.size(); i++) {
+                sb.append(i > 0 ? "," : "").append(JsonWriter.quote(event.args.get(i)));
+            }
+            sb.append("],\"message\":").append(JsonWriter.quote(message)).append("}\n");
+            out.write(sb.toString());
+        } else {
+            out.write(String.format("%s %-7s %-8s client=%d room=%s%s %s%n", Instant.ofEpochMilli(event.millis),
+                    event.level, event.category, event.clientId, event.room == null ? "-" : event.room,
+                    event.payloadType == null ? "" : " " + event.payloadType, message));
+        }
+    }
+
+    private static String render(String template, List<String> args) {
+        if (template == null) {
+            return String.join(" ", args);
+        }
+        StringBuilder sb = new StringBuilder();
+        int arg = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0) {
+            sb.append(template, from, at).append(arg < args.size() ? args.get(arg++) : "{}");
+            from = at + 2;
+        }
+        sb.append(template, from, template.length());
+        // extra arguments are kept rather than lost
+        while (arg < args.size()) {
+            sb.append(' ').append(args.get(arg++));
+        }
+        return sb.toString();
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean json = false;
+        String room = null;
+        Long client = null;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--json":
+                    json = true;
+                    break;
+                case "--room":
+                    room = args[++i];
+                    break;
+                case "--client":
+                    client = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    Path path = Paths.get(args[i]);
+                    if (Files.isDirectory(path)) {
+                        files.addAll(EventLog.listSegments(path));
+                    } else {
+                        files.add(path);
+                    }
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println(
+                    "Usage: EventLogDecoder [--json] [--room <name>] [--client <id>] <segment file or directory>...");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        EventLogDecoder decoder = new EventLogDecoder(json, room, client, out);
+        for (Path file : files) {
+            try {
+                decoder.decode(file);
+            } catch (IOException e) {
+                System.err.println("Skipping " + file + ": " + e.getMessage());
+            }
+        }
+        out.flush();
+    }
+}
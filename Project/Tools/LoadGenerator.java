@@ -0,0 +1,811 @@
+package Project.Tools;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+import Project.Common.ConnectionPayload;
+import Project.Common.Constants;
+import Project.Common.FrameCodec;
+import Project.Common.Histogram;
+import Project.Common.LeaderboardPayload;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.PingPayload;
+import Project.Common.PlayerStatusPayload;
+import Project.Common.ReadyPayload;
+import Project.Common.WireFormat;
+
+/**
+ * Headless load generator: many scripted bot players on one selector thread.
+ * <p>
+ * Bots arrive at a fixed rate, connect over loopback, and run a script of
+ * steps against the normal Payload protocol:
+ * </p>
+ * <ul>
+ * <li>join: create (first bot of each group) or join the group's room</li>
+ * <li>queue: ask the server's matchmaker for a game and wait to be moved
+ * into its room, which also readies the bot</li>
+ * <li>ready: send a ReadyPayload</li>
+ * <li>play: pick on every ROUND_START until the game resets</li>
+ * <li>chat:N: send N chat messages, one every chatMillis</li>
+ * <li>list: ask for the room list</li>
+ * <li>rank: ask for the leaderboard page around the bot and wait for it</li>
+ * <li>idle:S: do nothing for S seconds</li>
+ * <li>quit: disconnect (also done when the script runs out)</li>
+ * </ul>
+ * The script is a comma separated list of steps, or one of the presets
+ * {@code game} (join,ready,play), {@code match} (queue,play), {@code chat}
+ * (join,chat:20) and {@code mixed} (join,ready,play,chat:5,idle:1). Bots
+ * answer PINGs and trace their picks, so the report covers throughput,
+ * connect, time to match, round completion, pick acknowledgement, chat
+ * echo and leaderboard latency percentiles, and error counts.
+ * By default the Server is started in this JVM; pass mode=external to test
+ * one that is already running on the port.
+ * <p>
+ * Usage:
+ * {@code LoadGenerator [clients=300] [rate=100] [roomSize=3] [script=game] [think=500] [chatMillis=200]
+ * [picks=rock,paper,scissors] [rules=] [format=binary|java] [port=3000] [mode=nio|virtual|blocking|external]
+ * [gameTimeout=120] [maxSeconds=600] [seed=1]}
+ * </p>
+ * Games start as soon as game.maxPlayers (3 by default) players are ready, so
+ * roomSize should match the server's setting. With script=match the server
+ * forms the groups and roomSize is unused.
+ */
+public class LoadGenerator {
+    private static final Map<String, String> PRESETS = Map.of(
+            "game", "join,ready,play",
+            "match", "queue,play",
+            "chat", "join,chat:20",
+            "mixed", "join,ready,play,chat:5,idle:1");
+    private static final int MAX_JOIN_ATTEMPTS = 50;
+    private static final long JOIN_RETRY_NANOS = 100_000_000L;
+    private static final long QUIT_TIMEOUT_NANOS = 5_000_000_000L;
+    private static final int MAX_PENDING_CONNECTS = 1000;
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final int clientCount;
+    private final int port;
+    private final double arrivalRate;
+    private final int roomSize;
+    private final List<Step> script;
+    private final String scriptText;
+    private final long thinkNanos;
+    private final long chatIntervalNanos;
+    private final String[] picks;
+    private final String rules;
+    private final WireFormat format;
+    private final long gameTimeoutNanos;
+    private final long maxNanos;
+    private final Random random;
+    // each run gets its own room names so reruns against one server don't collide
+    private final String roomPrefix = "load" + Long.toString(System.currentTimeMillis() % 1_000_000, 36) + "-";
+
+    private final Histogram connectTime = new Histogram("connect to CLIENT_ID");
+    private final Histogram roundTime = new Histogram("round start to result");
+    private final Histogram pickAckTime = new Histogram("pick to PICKED status");
+    private final Histogram chatEchoTime = new Histogram("chat echo");
+    private final Histogram matchTime = new Histogram("queue to match");
+    private final Histogram leaderboardTime = new Histogram("leaderboard page");
+    private final Map<String, Integer> errors = new TreeMap<>();
+    private final PriorityQueue<Wakeup> wakeups = new PriorityQueue<>();
+    private long payloadsSent = 0;
+    private long payloadsReceived = 0;
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private long gamesCompleted = 0;
+    private long roundsCompleted = 0;
+    private int finished = 0;
+    private int connecting = 0;
+    private int failed = 0;
+
+    /**
+     * One script step, e.g. chat:5
+     */
+    private static class Step {
+        private final String action;
+        private final int amount;
+
+        private Step(String action, int amount) {
+            this.action = action;
+            this.amount = amount;
+        }
+
+        @Override
+        public String toString() {
+            return amount > 0 ? action + ":" + amount : action;
+        }
+    }
+
+    /**
+     * Per-bot connection and script state, attached to its SelectionKey
+     */
+    private static class Bot {
+        private final int index;
+        private final String room;
+        // counts the group's rounds and games; for queue, whoever reached the match room first
+        private boolean leader;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+        private boolean formatAccepted = false;
+        private long connectedAt;
+        private long clientId = Constants.DEFAULT_CLIENT_ID;
+        private boolean inLobby = false;
+        private int step = -1;
+        // bumped whenever a step finishes, so its pending wakeups go stale
+        private int generation = 0;
+        private boolean done = false;
+        // join step
+        private boolean joining = false;
+        private boolean sawRoomClear = false;
+        private int joinAttempts = 0;
+        // queue step
+        private boolean queueing = false;
+        private long queuedAt = 0;
+        private int membersSeen = 0;
+        // play step
+        private boolean playing = false;
+        private long roundStartedAt = 0;
+        private long pickTrace = 0;
+        private long pickSentAt = 0;
+        private long nextTrace = 0;
+        // chat step
+        private int chatsLeft = 0;
+        private int nextChat = 0;
+        private final Map<Integer, Long> chatsInFlight = new HashMap<>();
+        // rank step
+        private long rankAskedAt = 0;
+        private boolean quitting = false;
+
+        private Bot(int index, String room, boolean leader) {
+            this.index = index;
+            this.room = room;
+            this.leader = leader;
+        }
+    }
+
+    /**
+     * A timed action for one bot; stale once the bot has moved on
+     */
+    private static class Wakeup implements Comparable<Wakeup> {
+        private final long at;
+        private final Bot bot;
+        private final int generation;
+        private final Runnable action;
+
+        private Wakeup(long at, Bot bot, Runnable action) {
+            this.at = at;
+            this.bot = bot;
+            this.generation = bot.generation;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Wakeup other) {
+            return Long.compare(at, other.at);
+        }
+    }
+
+    public LoadGenerator(Map<String, String> options) {
+        clientCount = Integer.parseInt(options.getOrDefault("clients", "300"));
+        port = Integer.parseInt(options.getOrDefault("port", "3000"));
+        arrivalRate = Double.parseDouble(options.getOrDefault("rate", "100"));
+        roomSize = Math.max(1, Integer.parseInt(options.getOrDefault("roomSize", "3")));
+        String scriptOption = options.getOrDefault("script", "game");
+        scriptText = PRESETS.getOrDefault(scriptOption, scriptOption);
+        script = parseScript(scriptText);
+        thinkNanos = Long.parseLong(options.getOrDefault("think", "500")) * 1_000_000L;
+        chatIntervalNanos = Long.parseLong(options.getOrDefault("chatMillis", "200")) * 1_000_000L;
+        picks = options.getOrDefault("picks", "rock,paper,scissors").split(",");
+        rules = options.get("rules");
+        format = "java".equalsIgnoreCase(options.getOrDefault("format", "binary")) ? WireFormat.JAVA
+                : WireFormat.BINARY;
+        gameTimeoutNanos = Long.parseLong(options.getOrDefault("gameTimeout", "120")) * 1_000_000_000L;
+        maxNanos = Long.parseLong(options.getOrDefault("maxSeconds", "600")) * 1_000_000_000L;
+        random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+    }
+
+    private static List<Step> parseScript(String text) {
+        List<Step> steps = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String[] pieces = part.trim().toLowerCase().split(":", 2);
+            String action = pieces[0];
+            int amount = pieces.length > 1 ? Integer.parseInt(pieces[1]) : 0;
+            switch (action) {
+                case "join":
+                case "queue":
+                case "ready":
+                case "play":
+                case "list":
+                case "rank":
+                case "quit":
+                    break;
+                case "chat":
+                case "idle":
+                    if (amount <= 0) {
+                        throw new IllegalArgumentException(action + " needs a positive count, e.g. " + action + ":5");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown script step " + part);
+            }
+            steps.add(new Step(action, amount));
+        }
+        return steps;
+    }
+
+    private void error(String kind) {
+        errors.merge(kind, 1, Integer::sum);
+    }
+
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        long interval = arrivalRate > 0 ? (long) (1e9 / arrivalRate) : 0;
+        long nextArrival = start;
+        long lastReport = start;
+        int opened = 0;
+        try (Selector selector = Selector.open()) {
+            while (finished + failed < clientCount) {
+                long now = System.nanoTime();
+                if (now - start > maxNanos) {
+                    error("unfinished at maxSeconds", clientCount - finished - failed);
+                    break;
+                }
+                while (opened < clientCount && now >= nextArrival
+                        && connecting < MAX_PENDING_CONNECTS) {
+                    open(selector, opened++);
+                    nextArrival += interval;
+                }
+                long timeout = 100;
+                Wakeup next = wakeups.peek();
+                if (next != null) {
+                    timeout = Math.min(timeout, Math.max(1, (next.at - now) / 1_000_000));
+                }
+                if (opened < clientCount && interval > 0) {
+                    timeout = Math.min(timeout, Math.max(1, (nextArrival - now) / 1_000_000));
+                }
+                selector.select(timeout);
+                processKeys(selector);
+                runWakeups();
+                if (System.nanoTime() - lastReport > 5_000_000_000L) {
+                    lastReport = System.nanoTime();
+                    System.out.printf("opened=%d finished=%d failed=%d games=%d rounds=%d%n", opened, finished,
+                            failed, gamesCompleted, roundsCompleted);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            report(opened, elapsed);
+        }
+    }
+
+    private void open(Selector selector, int index) {
+        Bot bot = new Bot(index, roomPrefix + (index / roomSize), index % roomSize == 0);
+        try {
+            bot.channel = SocketChannel.open();
+            bot.channel.configureBlocking(false);
+            bot.channel.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            bot.key = bot.channel.register(selector, SelectionKey.OP_CONNECT, bot);
+            connecting++;
+        } catch (IOException e) {
+            error("connect failed");
+            fail(bot);
+        }
+    }
+
+    private void processKeys(Selector selector) {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            Bot bot = (Bot) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    if (bot.channel.finishConnect()) {
+                        connecting--;
+                        bot.connectedAt = System.nanoTime();
+                        key.interestOps(SelectionKey.OP_READ);
+                        sendHello(bot);
+                    }
+                    continue;
+                }
+                if (key.isWritable()) {
+                    flush(bot);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    onReadable(bot);
+                }
+            } catch (EOFException e) {
+                if (bot.quitting) {
+                    finish(bot);
+                } else {
+                    error("closed by server");
+                    fail(bot);
+                }
+            } catch (IOException e) {
+                error(bot.connectedAt == 0 ? "connect failed" : "i/o error");
+                fail(bot);
+            } catch (ClassNotFoundException | ClassCastException e) {
+                error("decode error");
+                fail(bot);
+            }
+        }
+    }
+
+    private void runWakeups() {
+        long now = System.nanoTime();
+        Wakeup next;
+        while ((next = wakeups.peek()) != null && next.at <= now) {
+            wakeups.poll();
+            if (next.generation == next.bot.generation && !next.bot.done) {
+                next.action.run();
+            }
+        }
+    }
+
+    private void schedule(Bot bot, long delayNanos, Runnable action) {
+        wakeups.add(new Wakeup(System.nanoTime() + delayNanos, bot, action));
+    }
+
+    /**
+     * Opens with the format negotiation header and the name, in one write
+     */
+    private void sendHello(Bot bot) throws IOException {
+        ConnectionPayload hello = new ConnectionPayload();
+        hello.setPayloadType(PayloadType.CLIENT_CONNECT);
+        hello.setClientName("bot" + bot.index);
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(FrameCodec.MAGIC_NEGOTIATE).put(format.getId()).flip();
+        bot.writes.add(header);
+        send(bot, hello);
+    }
+
+    private void send(Bot bot, Payload payload) throws IOException {
+        byte[] data = FrameCodec.encode(payload, format);
+        ByteBuffer frame = ByteBuffer.allocate(4 + data.length);
+        frame.putInt(data.length).put(data).flip();
+        bot.writes.add(frame);
+        payloadsSent++;
+        flush(bot);
+    }
+
+    private void send(Bot bot, PayloadType type, String message) throws IOException {
+        Payload payload = new Payload();
+        payload.setPayloadType(type);
+        payload.setMessage(message);
+        send(bot, payload);
+    }
+
+    private void flush(Bot bot) throws IOException {
+        ByteBuffer head;
+        while ((head = bot.writes.peek()) != null) {
+            bytesSent += bot.channel.write(head);
+            if (head.hasRemaining()) {
+                bot.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            bot.writes.poll();
+        }
+        bot.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void onReadable(Bot bot) throws IOException, ClassNotFoundException {
+        ByteBuffer buffer = bot.readBuffer;
+        int read = bot.channel.read(buffer);
+        if (read < 0) {
+            throw new EOFException();
+        }
+        bytesReceived += read;
+        buffer.flip();
+        int needed = 0;
+        try {
+            if (!bot.formatAccepted) {
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+                if (WireFormat.fromId(buffer.get()) != format) {
+                    throw new IOException("Server refused format " + format);
+                }
+                bot.formatAccepted = true;
+            }
+            while (!bot.done && buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                FrameCodec.checkFrameLength(length);
+                if (buffer.remaining() < 4 + length) {
+                    needed = 4 + length;
+                    break;
+                }
+                buffer.position(start + 4 + length);
+                Payload payload = FrameCodec.decode(buffer.array(), start + 4, length, format);
+                payloadsReceived++;
+                onPayload(bot, payload);
+            }
+        } finally {
+            buffer.compact();
+        }
+        if (needed > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+            buffer.flip();
+            larger.put(buffer);
+            bot.readBuffer = larger;
+        }
+    }
+
+    private void onPayload(Bot bot, Payload payload) throws IOException {
+        switch (payload.getPayloadType()) {
+            case PING:
+                send(bot, ((PingPayload) payload).toPong(System.currentTimeMillis()));
+                break;
+            case CLIENT_ID:
+                bot.clientId = payload.getClientId();
+                connectTime.recordSince(bot.connectedAt);
+                break;
+            case ROOM_CLEAR:
+                bot.sawRoomClear = true;
+                bot.membersSeen = 0;
+                break;
+            case SYNC_CLIENT:
+                bot.membersSeen++;
+                break;
+            case ROOM_JOIN:
+                if (payload.getClientId() != bot.clientId) {
+                    break;
+                }
+                if (!bot.inLobby) {
+                    // the server puts every new client in the lobby first
+                    bot.inLobby = true;
+                    nextStep(bot);
+                } else if (bot.joining && bot.sawRoomClear) {
+                    bot.joining = false;
+                    nextStep(bot);
+                } else if (bot.queueing && bot.sawRoomClear) {
+                    bot.queueing = false;
+                    bot.leader = bot.membersSeen == 0;
+                    matchTime.recordSince(bot.queuedAt);
+                    nextStep(bot);
+                }
+                break;
+            case MESSAGE:
+                onMessage(bot, payload);
+                break;
+            case ROUND_START:
+                if (bot.playing) {
+                    bot.roundStartedAt = System.nanoTime();
+                    long think = thinkNanos > 0 ? (long) (random.nextDouble() * thinkNanos) : 0;
+                    schedule(bot, think, () -> pick(bot));
+                }
+                break;
+            case PLAYER_STATUS:
+                if (bot.pickTrace != 0 && payload.getTraceId() == bot.pickTrace
+                        && ((PlayerStatusPayload) payload).getClientId() == bot.clientId) {
+                    pickAckTime.recordSince(bot.pickSentAt);
+                    bot.pickTrace = 0;
+                }
+                break;
+            case ROUND_END:
+                if (bot.playing && bot.roundStartedAt != 0) {
+                    roundTime.recordSince(bot.roundStartedAt);
+                    bot.roundStartedAt = 0;
+                    // rounds are shared, so count them once per room
+                    if (bot.leader) {
+                        roundsCompleted++;
+                    }
+                }
+                break;
+            case LEADERBOARD:
+                if (bot.rankAskedAt != 0) {
+                    leaderboardTime.recordSince(bot.rankAskedAt);
+                    bot.rankAskedAt = 0;
+                    nextStep(bot);
+                }
+                break;
+            case RESET_GAME_STATE:
+                if (bot.playing) {
+                    bot.playing = false;
+                    if (bot.leader) {
+                        gamesCompleted++;
+                    }
+                    nextStep(bot);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onMessage(Bot bot, Payload payload) throws IOException {
+        String text = payload.getMessage();
+        if (text == null) {
+            return;
+        }
+        if (payload.getClientId() == bot.clientId) {
+            // our own chat relayed back as "name: chat <seq>"
+            int at = text.lastIndexOf("chat ");
+            if (at >= 0) {
+                try {
+                    Long sentAt = bot.chatsInFlight.remove(Integer.parseInt(text.substring(at + 5)));
+                    if (sentAt != null) {
+                        chatEchoTime.recordSince(sentAt);
+                    }
+                } catch (NumberFormatException e) {
+                    // someone else's text that happens to contain "chat "
+                }
+            }
+            return;
+        }
+        if (bot.queueing && (text.startsWith("No match found") || text.startsWith("Unknown rule set"))) {
+            error(text.startsWith("No match") ? "no match" : "unknown rule set");
+            bot.queueing = false;
+            quit(bot);
+            return;
+        }
+        if (!bot.joining) {
+            return;
+        }
+        if ("Room does not exist".equals(text)) {
+            // the group's first bot hasn't created it yet
+            if (++bot.joinAttempts >= MAX_JOIN_ATTEMPTS) {
+                error("join failed");
+                fail(bot);
+            } else {
+                schedule(bot, JOIN_RETRY_NANOS, () -> join(bot));
+            }
+        } else if ("Room already exists".equals(text)) {
+            send(bot, PayloadType.ROOM_JOIN, bot.room);
+        }
+    }
+
+    /**
+     * Finishes the current step and starts the next one
+     */
+    private void nextStep(Bot bot) {
+        bot.generation++;
+        bot.step++;
+        try {
+            if (bot.step >= script.size()) {
+                quit(bot);
+                return;
+            }
+            Step step = script.get(bot.step);
+            switch (step.action) {
+                case "join":
+                    bot.joining = true;
+                    bot.joinAttempts = 0;
+                    join(bot);
+                    break;
+                case "queue": {
+                    ReadyPayload queue = new ReadyPayload();
+                    queue.setPayloadType(PayloadType.MATCH_QUEUE);
+                    if (rules != null) {
+                        queue.setRuleSet(rules);
+                    }
+                    bot.queueing = true;
+                    bot.sawRoomClear = false;
+                    bot.queuedAt = System.nanoTime();
+                    send(bot, queue);
+                    break;
+                }
+                case "ready": {
+                    ReadyPayload ready = new ReadyPayload();
+                    if (bot.leader && rules != null) {
+                        ready.setRuleSet(rules);
+                    }
+                    send(bot, ready);
+                    nextStep(bot);
+                    break;
+                }
+                case "play":
+                    bot.playing = true;
+                    schedule(bot, gameTimeoutNanos, () -> {
+                        error("game timeout");
+                        bot.playing = false;
+                        nextStep(bot);
+                    });
+                    break;
+                case "chat":
+                    bot.chatsLeft = step.amount;
+                    chat(bot);
+                    break;
+                case "list":
+                    send(bot, PayloadType.ROOM_LIST, "");
+                    nextStep(bot);
+                    break;
+                case "rank": {
+                    LeaderboardPayload rank = new LeaderboardPayload();
+                    rank.setPlayerName("bot" + bot.index);
+                    rank.setCount(10);
+                    bot.rankAskedAt = System.nanoTime();
+                    send(bot, rank);
+                    break;
+                }
+                case "idle":
+                    schedule(bot, step.amount * 1_000_000_000L, () -> nextStep(bot));
+                    break;
+                default:
+                    quit(bot);
+                    break;
+            }
+        } catch (IOException e) {
+            error("i/o error");
+            fail(bot);
+        }
+    }
+
+    private void join(Bot bot) {
+        try {
+            bot.sawRoomClear = false;
+            // only the first attempt of the group's first bot creates the room
+            boolean create = bot.leader && bot.joinAttempts == 0;
+            send(bot, create ? PayloadType.ROOM_CREATE : PayloadType.ROOM_JOIN, bot.room);
+        } catch (IOException e) {
+            error("i/o error");
+            fail(bot);
+        }
+    }
+
+    private void pick(Bot bot) {
+        try {
+            Payload pick = new Payload();
+            pick.setPayloadType(PayloadType.GAME_PICK);
+            pick.setMessage(picks[random.nextInt(picks.length)]);
+            pick.setTraceId(++bot.nextTrace);
+            pick.setSentAt(System.currentTimeMillis());
+            bot.pickTrace = pick.getTraceId();
+            bot.pickSentAt = System.nanoTime();
+            send(bot, pick);
+        } catch (IOException e) {
+            error("i/o error");
+            fail(bot);
+        }
+    }
+
+    private void chat(Bot bot) {
+        try {
+            if (bot.chatsLeft <= 0) {
+                nextStep(bot);
+                return;
+            }
+            bot.chatsLeft--;
+            int seq = bot.nextChat++;
+            bot.chatsInFlight.put(seq, System.nanoTime());
+            send(bot, PayloadType.MESSAGE, "chat " + seq);
+            schedule(bot, chatIntervalNanos, () -> chat(bot));
+        } catch (IOException e) {
+            error("i/o error");
+            fail(bot);
+        }
+    }
+
+    private void quit(Bot bot) throws IOException {
+        bot.generation++;
+        bot.quitting = true;
+        error("chat echo missing", bot.chatsInFlight.size());
+        bot.chatsInFlight.clear();
+        send(bot, PayloadType.DISCONNECT, null);
+        // the server closes the socket once it has processed the disconnect
+        schedule(bot, QUIT_TIMEOUT_NANOS, () -> finish(bot));
+    }
+
+    private void error(String kind, int count) {
+        if (count > 0) {
+            errors.merge(kind, count, Integer::sum);
+        }
+    }
+
+    private void finish(Bot bot) {
+        if (bot.done) {
+            return;
+        }
+        close(bot);
+        finished++;
+    }
+
+    private void fail(Bot bot) {
+        if (bot.done) {
+            return;
+        }
+        close(bot);
+        failed++;
+    }
+
+    private void close(Bot bot) {
+        bot.done = true;
+        if (bot.connectedAt == 0 && bot.key != null) {
+            connecting--;
+        }
+        if (bot.key != null) {
+            bot.key.cancel();
+        }
+        try {
+            if (bot.channel != null) {
+                bot.channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void report(int opened, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("=== Load test ===");
+        System.out.printf("bots=%d opened=%d finished=%d failed=%d elapsed=%.1fs roomSize=%d format=%s%n",
+                clientCount, opened, finished, failed, seconds, roomSize, format);
+        System.out.printf("script=%s%n", scriptText);
+        System.out.printf("payloads: sent=%d (%.0f/s) received=%d (%.0f/s)%n", payloadsSent,
+                payloadsSent / seconds, payloadsReceived, payloadsReceived / seconds);
+        System.out.printf("bytes: sent=%d (%.0f/s) received=%d (%.0f/s)%n", bytesSent, bytesSent / seconds,
+                bytesReceived, bytesReceived / seconds);
+        System.out.printf("games completed=%d rounds completed=%d%n", gamesCompleted, roundsCompleted);
+        for (Histogram histogram : List.of(connectTime, matchTime, roundTime, pickAckTime, chatEchoTime,
+                leaderboardTime)) {
+            // a script without play or chat steps has nothing to show for them
+            if (histogram.getCount() > 0) {
+                System.out.println(histogram.snapshot());
+            }
+        }
+        if (errors.isEmpty()) {
+            System.out.println("errors: none");
+        } else {
+            System.out.println("errors:");
+            errors.forEach((kind, count) -> System.out.printf("  %-24s %d%n", kind, count));
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator;
+        String mode;
+        try {
+            Map<String, String> options = parseOptions(args);
+            mode = options.getOrDefault("mode", "nio");
+            generator = new LoadGenerator(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [clients=300] [rate=100] [roomSize=3] [script=game|match|chat|mixed|"
+                    + "<steps>] [think=500] [chatMillis=200] [picks=rock,paper,scissors] [rules=<name>] "
+                    + "[format=binary|java] [port=3000] [mode=nio|virtual|blocking|external] [gameTimeout=120] "
+                    + "[maxSeconds=600] [seed=1]");
+            System.exit(1);
+            return;
+        }
+        if (!"external".equalsIgnoreCase(mode)) {
+            int port = generator.port;
+            Thread server = new Thread(() -> Project.Server.Server.main(new String[] { String.valueOf(port), mode }),
+                    "EmbeddedServer");
+            server.setDaemon(true);
+            server.start();
+            Thread.sleep(1000);
+        }
+        generator.run();
+        System.exit(0);
+    }
+}
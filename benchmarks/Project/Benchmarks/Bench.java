@@ -0,0 +1,168 @@
+package Project.Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal microbenchmark harness: warmup iterations followed by timed
+ * iterations of a fixed wall-clock length, reporting operations per second.
+ * <p>
+ * Results passed to {@link #consume(Object)} or {@link #consume(long)} are
+ * published to a volatile field so the JIT can't discard the work.
+ * </p>
+ * <p>
+ * Each benchmark's main ends with {@link #save(String)}, which compares the
+ * run with the results stored in benchmarks/results and then replaces them,
+ * so a regression shows up both on the console and in the diff.
+ * </p>
+ */
+public abstract class Bench {
+    private static volatile Object objectSink;
+    private static volatile long longSink;
+    // everything run() measured in this JVM, for save()
+    private static final List<Result> results = new ArrayList<>();
+
+    /**
+     * A single benchmarked operation
+     */
+    public interface Op {
+        void run() throws Exception;
+    }
+
+    /**
+     * Outcome of one benchmark
+     */
+    public static class Result {
+        private final String name;
+        private final double opsPerSecond;
+        private final double errorPercent;
+
+        public Result(String name, double opsPerSecond, double errorPercent) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.errorPercent = errorPercent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getOpsPerSecond() {
+            return opsPerSecond;
+        }
+
+        public double getErrorPercent() {
+            return errorPercent;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-48s %14.0f ops/s  +/- %.1f%%", name, opsPerSecond, errorPercent);
+        }
+    }
+
+    public static void consume(Object value) {
+        objectSink = value;
+    }
+
+    public static void consume(long value) {
+        longSink = value;
+    }
+
+    /**
+     * Runs an operation with the default 3 warmup and 5 measured iterations of
+     * 500ms each.
+     *
+     * @param name label for the result
+     * @param op   operation to measure
+     * @return the measured throughput
+     */
+    public static Result run(String name, Op op) throws Exception {
+        return run(name, 3, 5, 500, op);
+    }
+
+    /**
+     * Runs an operation and prints its result.
+     *
+     * @param name           label for the result
+     * @param warmups        untimed iterations
+     * @param iterations     timed iterations
+     * @param iterationMillis length of each iteration
+     * @param op             operation to measure
+     * @return the measured throughput
+     */
+    public static Result run(String name, int warmups, int iterations, long iterationMillis, Op op) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            iterate(op, iterationMillis);
+        }
+        List<Double> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            samples.add(iterate(op, iterationMillis));
+        }
+        double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = samples.stream().mapToDouble(s -> (s - mean) * (s - mean)).sum()
+                / Math.max(1, samples.size() - 1);
+        double errorPercent = mean == 0 ? 0 : 100.0 * Math.sqrt(variance) / mean;
+        Result result = new Result(name, mean, errorPercent);
+        System.out.println(result);
+        results.add(result);
+        return result;
+    }
+
+    /**
+     * Compares this run's results with the stored ones for the suite, then
+     * stores this run in their place. The directory is benchmarks/results
+     * unless -Dbench.results=dir says otherwise; -Dbench.save=false only
+     * compares.
+     *
+     * @param suite name of the results file, usually the benchmark class
+     * @throws IOException if the results can't be read or written
+     */
+    public static void save(String suite) throws IOException {
+        Path dir = Paths.get(System.getProperty("bench.results", "benchmarks/results"));
+        Path file = dir.resolve(suite + ".tsv");
+        if (Files.exists(file)) {
+            System.out.println();
+            System.out.println("=== Compared with " + file + " ===");
+            BenchCompare.compare(BenchCompare.read(file), results, BenchCompare.THRESHOLD_PERCENT);
+        }
+        if (!Boolean.parseBoolean(System.getProperty("bench.save", "true"))) {
+            return;
+        }
+        Files.createDirectories(dir);
+        List<String> lines = new ArrayList<>();
+        lines.add("# suite\t" + suite);
+        lines.add("# date\t" + Instant.now());
+        lines.add("# java\t" + System.getProperty("java.version"));
+        lines.add("# cores\t" + Runtime.getRuntime().availableProcessors());
+        lines.add("name\tops_per_second\terror_percent");
+        for (Result result : results) {
+            lines.add(String.format(Locale.ROOT, "%s\t%.0f\t%.1f", result.getName(), result.getOpsPerSecond(),
+                    result.getErrorPercent()));
+        }
+        Files.write(file, lines);
+        System.out.println("Saved " + results.size() + " results to " + file);
+    }
+
+    private static double iterate(Op op, long iterationMillis) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            // check the clock every 64 ops to keep timer overhead out of the result
+            for (int i = 0; i < 64; i++) {
+                op.run();
+            }
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return ops / ((now - start) / 1e9);
+    }
+}
@@ -0,0 +1,97 @@
+package Project.Benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two stored benchmark runs (the .tsv files {@link Bench#save}
+ * writes), e.g. the committed baseline and a run on a branch.
+ * <p>
+ * A benchmark regressed when it lost more throughput than the threshold
+ * (-Dbench.threshold, 10% by default) plus both runs' own error, so noisy
+ * results need a bigger drop to be flagged.
+ * </p>
+ * Usage: {@code BenchCompare <before.tsv> <after.tsv>}; exits with 1 if
+ * anything regressed.
+ */
+public class BenchCompare {
+    static final double THRESHOLD_PERCENT = Double.parseDouble(System.getProperty("bench.threshold", "10"));
+
+    /**
+     * @param file results written by {@link Bench#save}
+     * @return its results, in file order
+     * @throws IOException if the file can't be read or is malformed
+     */
+    public static List<Bench.Result> read(Path file) throws IOException {
+        List<Bench.Result> results = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("name\t")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                throw new IOException(file + ": expected name, ops/s and error but got: " + line);
+            }
+            try {
+                results.add(new Bench.Result(fields[0], Double.parseDouble(fields[1]),
+                        Double.parseDouble(fields[2])));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ": bad number in: " + line);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Prints the change of every benchmark present in both runs
+     *
+     * @param before           the earlier run
+     * @param after            the later run
+     * @param thresholdPercent drop (beyond the runs' error) that counts as a
+     *                         regression
+     * @return number of regressions
+     */
+    public static int compare(List<Bench.Result> before, List<Bench.Result> after, double thresholdPercent) {
+        Map<String, Bench.Result> earlier = new LinkedHashMap<>();
+        for (Bench.Result result : before) {
+            earlier.put(result.getName(), result);
+        }
+        int regressions = 0;
+        System.out.printf("%-48s %14s %14s %8s%n", "benchmark", "before ops/s", "after ops/s", "change");
+        for (Bench.Result now : after) {
+            Bench.Result then = earlier.remove(now.getName());
+            if (then == null) {
+                System.out.printf("%-48s %14s %14.0f %8s%n", now.getName(), "-", now.getOpsPerSecond(), "new");
+                continue;
+            }
+            double change = then.getOpsPerSecond() == 0 ? 0
+                    : 100.0 * (now.getOpsPerSecond() - then.getOpsPerSecond()) / then.getOpsPerSecond();
+            boolean regressed = change < -(thresholdPercent + then.getErrorPercent() + now.getErrorPercent());
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-48s %14.0f %14.0f %+7.1f%%%s%n", now.getName(), then.getOpsPerSecond(),
+                    now.getOpsPerSecond(), change, regressed ? "  REGRESSION" : "");
+        }
+        for (Bench.Result gone : earlier.values()) {
+            System.out.printf("%-48s %14.0f %14s %8s%n", gone.getName(), gone.getOpsPerSecond(), "-", "gone");
+        }
+        System.out.printf("%d regression(s) beyond %.0f%% plus error%n", regressions, thresholdPercent);
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchCompare <before.tsv> <after.tsv>");
+            System.exit(2);
+        }
+        int regressions = compare(read(Paths.get(args[0])), read(Paths.get(args[1])), THRESHOLD_PERCENT);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,156 @@
+package Project.Benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import Project.Common.*;
+
+/**
+ * Compares bytes per message and encode+decode throughput for the wire
+ * formats: the legacy long-lived ObjectOutputStream, JAVA frames (one
+ * standalone serialized object per frame) and BINARY frames.
+ */
+public class CodecBenchmark {
+
+    // a distinct String instance per message, otherwise the legacy stream sends
+    // back-references for repeated literals and looks unrealistically small
+    private static String fresh(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static Map<String, Supplier<Payload>> samples() {
+        Map<String, Supplier<Payload>> samples = new LinkedHashMap<>();
+        samples.put("Payload(MESSAGE)", () -> {
+            Payload p = new Payload();
+            p.setPayloadType(PayloadType.MESSAGE);
+            p.setClientId(42);
+            p.setMessage(fresh("alice#42: good game everyone, rematch?"));
+            return p;
+        });
+        samples.put("ConnectionPayload", () -> {
+            ConnectionPayload p = new ConnectionPayload();
+            p.setPayloadType(PayloadType.ROOM_JOIN);
+            p.setClientId(42);
+            p.setClientName(fresh("alice"));
+            return p;
+        });
+        samples.put("PointsPayload", () -> {
+            PointsPayload p = new PointsPayload();
+            p.setPayloadType(PayloadType.SYNC_POINTS);
+            p.setClientId(42);
+            p.setPoints(7);
+            return p;
+        });
+        samples.put("PlayerStatusPayload", () -> new PlayerStatusPayload(42, PlayerStatus.PICKED));
+        samples.put("RoundStartPayload", () -> new RoundStartPayload(3, 30));
+        samples.put("ReadyPayload", () -> {
+            ReadyPayload p = new ReadyPayload();
+            p.setExtraOptionsEnabled(true);
+            return p;
+        });
+        samples.put("RoomResultPayload(10 rooms)", () -> {
+            RoomResultPayload p = new RoomResultPayload();
+            List<RoomResultPayload.RoomInfo> rooms = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                rooms.add(new RoomResultPayload.RoomInfo(fresh("room-" + i), 3, i % 2 == 0, "classic"));
+            }
+            p.setRooms(rooms);
+            p.setCursor(fresh("room-9"));
+            return p;
+        });
+        samples.put("GameResultPayload(3 players)", () -> {
+            GameResultPayload p = new GameResultPayload();
+            p.setWinnerName(fresh("alice"));
+            Map<User, Integer> points = new HashMap<>();
+            String[] names = { "alice", "bob", "carol" };
+            for (int i = 0; i < names.length; i++) {
+                User user = new User();
+                user.setClientId(i + 1);
+                user.setClientName(fresh(names[i]));
+                points.put(user, 5 - i);
+            }
+            p.setPlayerPoints(points);
+            return p;
+        });
+        samples.put("RoomListPayload(10 rooms)", () -> {
+            RoomListPayload p = new RoomListPayload();
+            List<String> rooms = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                rooms.add(fresh("room-" + i));
+            }
+            p.setRooms(rooms);
+            return p;
+        });
+        samples.put("RoundResultPayload(3 players)", () -> {
+            RoundResultPayload p = new RoundResultPayload();
+            p.setRoundNumber(3);
+            Map<String, Integer> choicePoints = new LinkedHashMap<>();
+            choicePoints.put(fresh("rock"), 1);
+            choicePoints.put(fresh("scissors"), 0);
+            p.setChoicePoints(choicePoints);
+            Map<Long, String> picks = new HashMap<>();
+            picks.put(1L, "rock");
+            picks.put(2L, "scissors");
+            p.setPlayerPicks(picks);
+            p.setMissedPicks(List.of(3L));
+            p.setPlayerPoints(Map.of(1L, 4, 2L, 2, 3L, 1));
+            return p;
+        });
+        samples.put("PingPayload", () -> {
+            PingPayload p = new PingPayload();
+            p.setPingNanos(System.nanoTime());
+            p.setServerTime(System.currentTimeMillis());
+            p.setRttNanos(350_000);
+            return p;
+        });
+        return samples;
+    }
+
+    /**
+     * Average bytes per message once a long-lived ObjectOutputStream has already
+     * sent the class descriptors (the steady state of the legacy protocol).
+     */
+    private static double legacyStreamBytes(Supplier<Payload> sample) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sample.get());
+            out.flush();
+            int warm = bytes.size();
+            int count = 1000;
+            for (int i = 0; i < count; i++) {
+                out.writeObject(sample.get());
+            }
+            out.flush();
+            return (bytes.size() - warm) / (double) count;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Supplier<Payload>> samples = samples();
+        System.out.println("=== Bytes per message (frames include the 4 byte length prefix) ===");
+        System.out.printf("%-30s %14s %12s %12s%n", "payload", "legacy stream", "JAVA frame", "BINARY frame");
+        for (Map.Entry<String, Supplier<Payload>> entry : samples.entrySet()) {
+            Payload payload = entry.getValue().get();
+            System.out.printf("%-30s %14.1f %12d %12d%n", entry.getKey(), legacyStreamBytes(entry.getValue()),
+                    4 + FrameCodec.encode(payload, WireFormat.JAVA).length,
+                    4 + FrameCodec.encode(payload, WireFormat.BINARY).length);
+        }
+        System.out.println();
+        System.out.println("=== Encode + decode round trips ===");
+        for (Map.Entry<String, Supplier<Payload>> entry : samples.entrySet()) {
+            Payload payload = entry.getValue().get();
+            for (WireFormat format : WireFormat.values()) {
+                Bench.run(entry.getKey() + " " + format, () -> {
+                    byte[] data = FrameCodec.encode(payload, format);
+                    Bench.consume(FrameCodec.decode(data, 0, data.length, format));
+                });
+            }
+        }
+        Bench.save("CodecBenchmark");
+    }
+}
@@ -0,0 +1,97 @@
+package Project.Benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import Project.Common.LogFormatter;
+import Project.Common.TextFX;
+
+/**
+ * Log records formatted per second, and bytes allocated per record, for the
+ * previous LoggerUtil formatter and {@link LogFormatter} with and without the
+ * calling-class lookup. The records look like the server's busiest line, a
+ * colorized "Thread[id]: ..." INFO message.
+ */
+public class LoggerFormatBenchmark {
+
+    /**
+     * The formatter LoggerUtil used before LogFormatter, kept as the baseline
+     */
+    private static class LegacyFormatter extends Formatter {
+        private static final String PATTERN = "MM/dd/yyyy HH:mm:ss";
+        private static final String RESET = "\u001B[0m";
+        private static final String GREEN = "\u001B[32m";
+
+        @Override
+        public String format(LogRecord record) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(PATTERN);
+            String date = dateFormat.format(new Date(record.getMillis()));
+            String callingClass = getCallingClassName();
+            String source = callingClass != null ? callingClass
+                    : record.getSourceClassName() != null ? record.getSourceClassName() : "unknown";
+            String message = formatMessage(record);
+            String level = GREEN + record.getLevel().getName() + RESET;
+            return String.format("%s [%s] (%s):\n> %s%s\n", date, source, level, message, "");
+        }
+
+        private static String getCallingClassName() {
+            StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
+            for (StackTraceElement element : stackTrace) {
+                String className = element.getClassName();
+                if (!className.startsWith("java.util.logging") &&
+                        !className.startsWith("Project.Common") &&
+                        !className.equals(Thread.class.getName())) {
+                    return className;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static LogRecord record() {
+        LogRecord record = new LogRecord(Level.INFO,
+                TextFX.colorize("Thread[42]: Sending payload: Payload[MESSAGE] Client Id [7] Message: [hello]",
+                        TextFX.Color.CYAN));
+        // as if LoggerUtil had already set it; keeps inference out of the baseline
+        record.setSourceClassName("Project.Server.ServerThread");
+        return record;
+    }
+
+    private static double bytesPerRecord(Formatter formatter, LogRecord record) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int count = 100_000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < count; i++) {
+            Bench.consume(formatter.format(record));
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / (double) count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogRecord record = record();
+        Formatter[] formatters = {
+                new LegacyFormatter(),
+                new LogFormatter(10, Level.ALL),
+                new LogFormatter(10, Level.WARNING),
+        };
+        String[] names = {
+                "legacy (SimpleDateFormat, getStackTrace)",
+                "LogFormatter, source on INFO",
+                "LogFormatter, source from WARNING",
+        };
+        for (int i = 0; i < formatters.length; i++) {
+            Formatter formatter = formatters[i];
+            Bench.run(names[i], () -> Bench.consume(formatter.format(record)));
+        }
+        System.out.println();
+        for (int i = 0; i < formatters.length; i++) {
+            System.out.printf("%-48s %10.0f bytes/record%n", names[i], bytesPerRecord(formatters[i], record));
+        }
+        Bench.save("LoggerFormatBenchmark");
+    }
+}
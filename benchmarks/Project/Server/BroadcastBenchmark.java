@@ -0,0 +1,85 @@
+package Project.Server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.logging.Level;
+import Project.Benchmarks.Bench;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PlayerStatus;
+import Project.Common.PlayerStatusPayload;
+import Project.Common.WireFormat;
+
+/**
+ * Cost of {@link Room#broadcastPayload}: encoding a payload once per wire
+ * format and handing the shared frame to every member.
+ * <p>
+ * Members are {@link SinkClient}s that fetch the frame in their format, the
+ * way a writer would, instead of queueing it for a socket. The room runs its
+ * mailbox on the calling thread, so the joins are done before measuring.
+ * </p>
+ * Lives in Project.Server for access to the package-private room API.
+ */
+public class BroadcastBenchmark {
+
+    /**
+     * Room member that takes the frame and drops it
+     */
+    private static class SinkClient extends ServerThread {
+        private SinkClient(long id, WireFormat format) {
+            super(new Socket(), client -> {
+            });
+            setClientId(id);
+            wireFormat = format;
+        }
+
+        @Override
+        protected void info(String message) {
+            // silent
+        }
+
+        @Override
+        protected boolean sendToClient(EncodedPayload encoded) {
+            try {
+                Bench.consume(encoded.getFrame(wireFormat));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param members    room size
+     * @param javaEvery  every this many members uses JAVA frames, 0 for none
+     * @return a room with its members joined
+     */
+    private static Room room(int members, int javaEvery) {
+        Room room = new Room("bench-" + members, Runnable::run);
+        for (int i = 0; i < members; i++) {
+            boolean java = javaEvery > 0 && i % javaEvery == 0;
+            room.addClient(new SinkClient(i + 1, java ? WireFormat.JAVA : WireFormat.BINARY));
+        }
+        return room;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation(File.createTempFile("broadcast-bench", ".log").getPath());
+        config.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(config);
+        Payload message = ServerThread.createMessage(1, "alice#1: good game everyone, rematch?");
+        Payload status = new PlayerStatusPayload(1, PlayerStatus.PICKED);
+        for (int members : new int[] { 1, 8, 64, 512 }) {
+            Room room = room(members, 0);
+            Bench.run("MESSAGE to " + members + " BINARY members", () -> room.broadcastPayload(message));
+            Bench.run("PLAYER_STATUS to " + members + " BINARY members", () -> room.broadcastPayload(status));
+        }
+        // every other member on JAVA frames: two encodings per broadcast
+        Room mixed = room(64, 2);
+        Bench.run("MESSAGE to 64 members, half JAVA", () -> mixed.broadcastPayload(message));
+        Bench.save("BroadcastBenchmark");
+    }
+}
@@ -0,0 +1,526 @@
+package Project.Server;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import Project.Common.GameResultPayload;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PayloadType;
+import Project.Common.ReadyPayload;
+import Project.Common.RoundResultPayload;
+import Project.Common.RoundStartPayload;
+import Project.Common.User;
+
+/**
+ * Plays whole games against a real {@link GameSession} on a
+ * {@link VirtualClock}, with no sockets, threads or waiting.
+ * <p>
+ * The simulator is the session's room: it runs posted messages inline and
+ * checks every payload the session broadcasts. Seeded bots ready up (the
+ * host picks classic or lizard-spock rules), pick at random times within the
+ * round or miss it, send invalid and duplicate picks, toggle away and back,
+ * and leave mid-game. Round timers fire as soon as the clock reaches them.
+ * </p>
+ * Every round result is checked against an independent model: who was
+ * expected to pick or miss, scores replayed pair by pair with
+ * {@link RuleSet#compare}, rounds that end as soon as the last pick is in
+ * and only then; the game result must name the top scorers
+ * after {@link GameSession#TOTAL_ROUNDS} rounds. The report covers games and
+ * rounds per second, bytes allocated per game and the violations found, and
+ * the exit code is 1 if there were any.
+ * <p>
+ * Usage: {@code GameSimulator [games=1000000] [warmup=20000] [seed=1] [away=5] [leave=2] [miss=10]
+ * [invalid=2]}, the last four in percent per player and round. Player counts
+ * follow -Dgame.minPlayers and -Dgame.maxPlayers.
+ * </p>
+ * Lives in Project.Server for access to the session's package-private
+ * settings.
+ */
+public class GameSimulator implements GameRoom {
+    private static final int MAX_REPORTED_VIOLATIONS = 20;
+    private static final int NAMES = 1000;
+    private static final long ROUND_NANOS = TimeUnit.SECONDS.toNanos(GameSession.ROUND_TIME_SECONDS);
+    private static final long READY_NANOS = TimeUnit.SECONDS.toNanos(GameSession.READY_WINDOW_SECONDS);
+
+    private final VirtualClock clock = new VirtualClock(0);
+    private final GameSession session = new GameSession(this, clock);
+    // the simulator's own, so games don't land in the server's tables
+    private final Ratings ratings = new Ratings();
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final EventLog events = EventLog.disabled();
+    private final Random random;
+    private final int awayPercent;
+    private final int leavePercent;
+    private final int missPercent;
+    private final int invalidPercent;
+
+    // the current game
+    private final List<Bot> bots = new ArrayList<>();
+    private final List<Bot> participants = new ArrayList<>();
+    private long nextId = 1;
+    private int game = 0;
+    private int readied = 0;
+    private int round = 0;
+    private long roundStart;
+    private boolean over;
+
+    // totals
+    private long games = 0;
+    private long rounds = 0;
+    private long timedOut = 0;
+    private long picks = 0;
+    private long violationCount = 0;
+    private final List<String> violations = new ArrayList<>();
+
+    /**
+     * A simulated client
+     */
+    private static final class Bot implements GamePlayer {
+        private final User user = new User();
+        private boolean ready;
+        private boolean away;
+        private boolean gone;
+        // the pick the session should hold for this round, or null
+        private String pick;
+        private int points;
+
+        private Bot(long id) {
+            user.setClientId(id);
+            // a pool of names, so the same players keep coming back and their ratings settle
+            user.setClientName("bot" + id % NAMES);
+        }
+
+        @Override
+        public long getClientId() {
+            return user.getClientId();
+        }
+
+        @Override
+        public String getClientName() {
+            return user.getClientName();
+        }
+
+        @Override
+        public User getUser() {
+            return user;
+        }
+
+        @Override
+        public boolean isSpectator() {
+            return false;
+        }
+
+        @Override
+        public boolean sendMessage(long clientId, String message) {
+            return true;
+        }
+
+        private boolean isActive() {
+            return !gone && !away;
+        }
+    }
+
+    private GameSimulator(Map<String, String> options) {
+        random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+        awayPercent = Integer.parseInt(options.getOrDefault("away", "5"));
+        leavePercent = Integer.parseInt(options.getOrDefault("leave", "2"));
+        missPercent = Integer.parseInt(options.getOrDefault("miss", "10"));
+        invalidPercent = Integer.parseInt(options.getOrDefault("invalid", "2"));
+    }
+
+    private boolean chance(int percent) {
+        return random.nextInt(100) < percent;
+    }
+
+    private void violation(String message) {
+        violationCount++;
+        if (violations.size() < MAX_REPORTED_VIOLATIONS) {
+            violations.add("game " + game + ", round " + round + ": " + message);
+        }
+    }
+
+    /**
+     * Runs a bot action later unless the game or round has moved on by then
+     */
+    private void later(long delayNanos, boolean sameRound, Runnable action) {
+        int actionGame = game;
+        int actionRound = round;
+        clock.schedule(() -> {
+            if (game == actionGame && (!sameRound || round == actionRound)) {
+                action.run();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Plays one game from the first ready to the reset
+     */
+    private void playGame() {
+        game++;
+        bots.clear();
+        participants.clear();
+        readied = 0;
+        round = 0;
+        over = false;
+        // one more than fits, so the last may find the game full
+        int count = GameSession.MIN_PLAYERS
+                + random.nextInt(GameSession.MAX_PLAYERS - GameSession.MIN_PLAYERS + 2);
+        for (int i = 0; i < count; i++) {
+            Bot bot = new Bot(nextId++);
+            bots.add(bot);
+            boolean host = i == 0;
+            // readies trickle in over a window and a half
+            later(host ? 0 : (long) (random.nextDouble() * READY_NANOS * 1.5), false, () -> ready(bot, host));
+        }
+        while (!over && clock.runNext()) {
+            // the session and the bots drive each other through the clock
+        }
+        if (!over) {
+            violation("game never finished");
+        }
+        // leftovers of this game skip themselves
+        while (clock.runNext()) {
+        }
+        games++;
+    }
+
+    private void ready(Bot bot, boolean host) {
+        ReadyPayload payload = new ReadyPayload();
+        if (host) {
+            payload.setExtraOptionsEnabled(random.nextBoolean());
+        }
+        if (!session.isInProgress() && readied < GameSession.MAX_PLAYERS) {
+            bot.ready = true;
+            readied++;
+        }
+        session.markReady(bot, payload);
+    }
+
+    private void onRoundStart(RoundStartPayload start) {
+        if (start.getRoundNumber() != round + 1) {
+            violation("round " + start.getRoundNumber() + " started after round " + round);
+        }
+        round = start.getRoundNumber();
+        roundStart = clock.nanoTime();
+        if (start.getDeadline() != clock.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(ROUND_NANOS)) {
+            violation("deadline " + start.getDeadline() + " isn't a round from now");
+        }
+        if (round == 1) {
+            for (Bot bot : bots) {
+                if (bot.ready) {
+                    participants.add(bot);
+                }
+            }
+            if (participants.size() < GameSession.MIN_PLAYERS) {
+                violation("started with " + participants.size() + " players");
+            }
+        }
+        for (Bot bot : participants) {
+            bot.pick = null;
+            if (bot.gone) {
+                continue;
+            }
+            if (bot.away) {
+                if (random.nextBoolean()) {
+                    later(randomInRound(), true, () -> toggleAway(bot));
+                }
+                continue;
+            }
+            if (chance(leavePercent)) {
+                later(randomInRound(), true, () -> leave(bot));
+            }
+            if (chance(awayPercent)) {
+                later(randomInRound(), true, () -> toggleAway(bot));
+            }
+            if (chance(invalidPercent)) {
+                later(randomInRound(), true, () -> session.registerPick(bot, "banana", 0, 0));
+            }
+            if (!chance(missPercent)) {
+                // a tenth of picks land after the deadline and miss
+                later((long) (random.nextDouble() * ROUND_NANOS * 1.1), true, () -> pick(bot));
+            }
+        }
+    }
+
+    private long randomInRound() {
+        return (long) (random.nextDouble() * ROUND_NANOS);
+    }
+
+    private void pick(Bot bot) {
+        RuleSet rules = session.getRules();
+        String choice = rules.getPick(random.nextInt(rules.size()));
+        if (bot.isActive() && bot.pick == null) {
+            bot.pick = choice;
+            picks++;
+        }
+        int pickRound = round;
+        long traceId = random.nextBoolean() ? 1 + random.nextInt(Integer.MAX_VALUE) : 0;
+        session.registerPick(bot, choice, traceId, System.nanoTime());
+        // unless that pick ended the round
+        if (round == pickRound && !over && chance(invalidPercent)) {
+            // a double click; the first pick stands
+            session.registerPick(bot, choice, 0, 0);
+        }
+    }
+
+    private void toggleAway(Bot bot) {
+        if (bot.gone) {
+            return;
+        }
+        bot.away = !bot.away;
+        // coming back mid-round starts over without a pick
+        bot.pick = null;
+        session.toggleAwayStatus(bot);
+        if (bot.away && random.nextBoolean()) {
+            later(randomInRound(), true, () -> toggleAway(bot));
+        } else if (!bot.away && !chance(missPercent)) {
+            later(randomInRound(), true, () -> pick(bot));
+        }
+    }
+
+    private void leave(Bot bot) {
+        if (!bot.gone) {
+            bot.gone = true;
+            session.removePlayer(bot.getClientId());
+        }
+    }
+
+    private void onRoundResult(RoundResultPayload result) {
+        rounds++;
+        if (result.getRoundNumber() != round) {
+            violation("result for round " + result.getRoundNumber());
+        }
+        RuleSet rules = session.getRules();
+        Map<Long, String> resultPicks = result.getPlayerPicks();
+        Set<Long> missed = new HashSet<>(result.getMissedPicks());
+        List<Bot> pickers = new ArrayList<>();
+        for (Bot bot : participants) {
+            long id = bot.getClientId();
+            if (!bot.isActive()) {
+                if (resultPicks.containsKey(id) || missed.contains(id)) {
+                    violation(bot.getClientName() + " was scored while away or gone");
+                }
+            } else if (bot.pick == null) {
+                if (!missed.contains(id)) {
+                    violation(bot.getClientName() + " didn't pick but isn't listed as missed");
+                }
+            } else if (!bot.pick.equals(resultPicks.get(id))) {
+                violation(bot.getClientName() + " picked " + bot.pick + " but the result says "
+                        + resultPicks.get(id));
+            } else {
+                pickers.add(bot);
+            }
+        }
+        if (resultPicks.size() != pickers.size()) {
+            violation(resultPicks.size() + " picks reported but " + pickers.size() + " made");
+        }
+        boolean timedOutRound = clock.nanoTime() - roundStart >= ROUND_NANOS;
+        if (timedOutRound) {
+            timedOut++;
+            // a round nobody can play (all away or gone) does wait it out
+            if (missed.isEmpty() && !pickers.isEmpty()) {
+                violation("ran out the clock though every pick was in");
+            }
+        } else if (!missed.isEmpty()) {
+            violation("ended early with " + missed.size() + " picks missing");
+        }
+        // replay every battle of the round
+        Map<String, Integer> choicePoints = new HashMap<>();
+        for (Bot bot : pickers) {
+            int mine = rules.indexOf(bot.pick);
+            int won = 0;
+            for (Bot other : pickers) {
+                if (other != bot && rules.compare(mine, rules.indexOf(other.pick)) > 0) {
+                    won++;
+                }
+            }
+            Integer previous = choicePoints.put(bot.pick, won);
+            if (previous != null && previous != won) {
+                violation("players who picked " + bot.pick + " scored differently");
+            }
+            bot.points += won;
+        }
+        if (!choicePoints.equals(result.getChoicePoints())) {
+            violation("choice points " + result.getChoicePoints() + ", expected " + choicePoints);
+        }
+        Map<Long, Integer> totals = result.getPlayerPoints();
+        int present = 0;
+        for (Bot bot : participants) {
+            if (bot.gone) {
+                continue;
+            }
+            present++;
+            Integer total = totals.get(bot.getClientId());
+            if (total == null || total != bot.points) {
+                violation(bot.getClientName() + " has " + total + " points, expected " + bot.points);
+            }
+        }
+        if (totals.size() != present) {
+            violation(totals.size() + " totals for " + present + " players still in the game");
+        }
+    }
+
+    private void onGameResult(GameResultPayload result) {
+        if (round != GameSession.TOTAL_ROUNDS) {
+            violation("game ended after " + round + " rounds");
+        }
+        int best = 0;
+        for (Bot bot : participants) {
+            if (!bot.gone) {
+                best = Math.max(best, bot.points);
+            }
+        }
+        Set<String> expected = new HashSet<>();
+        for (Bot bot : participants) {
+            if (!bot.gone && bot.points == best && best > 0) {
+                expected.add(bot.getClientName());
+            }
+            Integer total = result.getPlayerPoints().get(bot.getUser());
+            if (bot.gone ? total != null : (total == null || total != bot.points)) {
+                violation("final points for " + bot.getClientName() + ": " + total + ", expected "
+                        + (bot.gone ? "none" : bot.points));
+            }
+        }
+        Set<String> winners = new HashSet<>();
+        if (result.getWinnerName() != null) {
+            winners.addAll(List.of(result.getWinnerName().split(", ")));
+        }
+        if (!winners.equals(expected)) {
+            violation("winners " + winners + ", expected " + expected);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "simulation";
+    }
+
+    @Override
+    public void broadcastPayload(Payload payload) {
+        if (payload instanceof RoundStartPayload start) {
+            onRoundStart(start);
+        } else if (payload instanceof RoundResultPayload result) {
+            onRoundResult(result);
+        } else if (payload instanceof GameResultPayload result) {
+            onGameResult(result);
+        } else if (payload.getPayloadType() == PayloadType.RESET_GAME_STATE) {
+            over = true;
+        }
+    }
+
+    @Override
+    public void broadcastMessage(String message) {
+        // nobody reads them
+    }
+
+    @Override
+    public void execute(String handler, Runnable task) {
+        // the clock runs everything on this thread already
+        task.run();
+    }
+
+    @Override
+    public void gameStateChanged() {
+        // there's no room list to update
+    }
+
+    @Override
+    public Ratings getRatings() {
+        return ratings;
+    }
+
+    @Override
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    @Override
+    public RuleSet getRuleSet(String name) {
+        // the built-in variants; the host picks between them with the extra options flag
+        for (RuleSet rules : new RuleSet[] { RuleSet.CLASSIC, RuleSet.LIZARD_SPOCK }) {
+            if (rules.getName().equalsIgnoreCase(name.trim())) {
+                return rules;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public EventLog getEvents() {
+        return events;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        GameSimulator simulator;
+        long gameCount;
+        long warmup;
+        try {
+            Map<String, String> options = parseOptions(args);
+            gameCount = Long.parseLong(options.getOrDefault("games", "1000000"));
+            warmup = Long.parseLong(options.getOrDefault("warmup", "20000"));
+            simulator = new GameSimulator(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: GameSimulator [games=1000000] [warmup=20000] [seed=1] [away=5] [leave=2] "
+                    + "[miss=10] [invalid=2]");
+            System.exit(2);
+            return;
+        }
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation(File.createTempFile("game-simulator", ".log").getPath());
+        config.setConsoleLogLevel(Level.WARNING);
+        config.setFileLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(config);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+
+        for (long i = 0; i < warmup; i++) {
+            simulator.playGame();
+        }
+        long warmupGames = simulator.games;
+        long warmupRounds = simulator.rounds;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (long i = 0; i < gameCount; i++) {
+            simulator.playGame();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        long measuredGames = simulator.games - warmupGames;
+        long measuredRounds = simulator.rounds - warmupRounds;
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d games (%d rounds) in %.2f s after %d warmup games, players %d-%d%n", measuredGames,
+                measuredRounds, seconds, warmupGames, GameSession.MIN_PLAYERS, GameSession.MAX_PLAYERS);
+        System.out.printf("throughput: %.0f games/s, %.0f rounds resolved/s%n", measuredGames / seconds,
+                measuredRounds / seconds);
+        System.out.printf("allocated: %d bytes/game%n", measuredGames == 0 ? 0 : allocated / measuredGames);
+        System.out.printf("picks: %d, rounds timed out: %d of %d%n", simulator.picks, simulator.timedOut,
+                simulator.rounds);
+        System.out.printf("invariant violations: %d%n", simulator.violationCount);
+        simulator.violations.forEach(violation -> System.out.println("  " + violation));
+        System.exit(simulator.violationCount > 0 ? 1 : 0);
+    }
+}
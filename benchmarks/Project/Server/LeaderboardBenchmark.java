@@ -0,0 +1,129 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import Project.Benchmarks.Bench;
+import Project.Common.User;
+
+/**
+ * {@link Leaderboard} queries and updates as the number of ranked players
+ * grows.
+ * <p>
+ * "record game" adds a 4 player game, "rank" finds one player's rank,
+ * "top 10" is the first page and "around" the page around one player.
+ * "sort for top 10" is the same page found the way PlayerTableModel orders
+ * its players: copy everyone and sort them.
+ * </p>
+ * Lives in Project.Server for access to PlayerState and GamePlayer.
+ */
+public class LeaderboardBenchmark {
+    private static final int GAME_SIZE = 4;
+
+    /**
+     * A player with a name
+     */
+    private static class NamedPlayer implements GamePlayer {
+        private final String name;
+
+        private NamedPlayer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public long getClientId() {
+            return 0;
+        }
+
+        @Override
+        public String getClientName() {
+            return name;
+        }
+
+        @Override
+        public User getUser() {
+            return null;
+        }
+
+        @Override
+        public boolean isSpectator() {
+            return false;
+        }
+
+        @Override
+        public boolean sendMessage(long clientId, String message) {
+            return true;
+        }
+    }
+
+    /**
+     * What the sort baseline sorts
+     */
+    private static class Row {
+        private final String name;
+        private final long points;
+        private final int wins;
+
+        private Row(String name, long points, int wins) {
+            this.name = name;
+            this.points = points;
+            this.wins = wins;
+        }
+    }
+
+    private static List<PlayerState> game(String[] names, int count, Random random) {
+        List<PlayerState> game = new ArrayList<>(GAME_SIZE);
+        for (int i = 0; i < GAME_SIZE; i++) {
+            PlayerState player = new PlayerState(new NamedPlayer(names[random.nextInt(count)]));
+            player.setPoints(random.nextInt(5));
+            game.add(player);
+        }
+        return game;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        int largest = 1_000_000;
+        String[] names = new String[largest];
+        for (int i = 0; i < largest; i++) {
+            names[i] = "player" + i;
+        }
+        Leaderboard board = new Leaderboard();
+        List<Row> rows = new ArrayList<>();
+        Comparator<Row> order = Comparator.comparingLong((Row row) -> row.points).reversed()
+                .thenComparing(Comparator.comparingInt((Row row) -> row.wins).reversed())
+                .thenComparing(row -> row.name);
+        int ranked = 0;
+        for (int count : new int[] { 10_000, 100_000, 1_000_000 }) {
+            List<PlayerState> joined = new ArrayList<>(GAME_SIZE);
+            while (ranked < count) {
+                PlayerState player = new PlayerState(new NamedPlayer(names[ranked]));
+                player.setPoints(random.nextInt(100));
+                int wins = random.nextInt(10);
+                joined.add(player);
+                rows.add(new Row(names[ranked], player.getPoints(), wins));
+                ranked++;
+                if (joined.size() == GAME_SIZE || ranked == count) {
+                    board.recordGame(joined, List.of());
+                    joined.clear();
+                }
+            }
+            Bench.run("record game, " + count + " players", () -> {
+                board.recordGame(game(names, count, random), List.of());
+                Bench.consume(board);
+            });
+            Bench.run("rank, " + count + " players",
+                    () -> Bench.consume(board.getRank(names[random.nextInt(count)])));
+            Bench.run("top 10, " + count + " players", () -> Bench.consume(board.getPage(1, 10)));
+            Bench.run("around, " + count + " players",
+                    () -> Bench.consume(board.getAround(names[random.nextInt(count)], 10)));
+            Bench.run("sort for top 10, " + count + " players", () -> {
+                List<Row> sorted = new ArrayList<>(rows);
+                sorted.sort(order);
+                Bench.consume(sorted.subList(0, 10));
+            });
+        }
+        Bench.save("LeaderboardBenchmark");
+    }
+}
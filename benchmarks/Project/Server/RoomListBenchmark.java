@@ -0,0 +1,45 @@
+package Project.Server;
+
+import java.io.File;
+import java.util.logging.Level;
+import Project.Benchmarks.Bench;
+import Project.Common.LoggerUtil;
+
+/**
+ * {@link Server#listRooms} as the number of rooms grows.
+ * <p>
+ * "any" matches every room and stops at the first page, "one" matches a
+ * single room and "none" matches nothing. "next page" is a page of every
+ * room from a cursor halfway down the list. "short none" is a two letter
+ * query that matches nothing, answered from the two letter index instead
+ * of the trigrams. Rooms are added to the server's own registry;
+ * none of them get members.
+ * </p>
+ * Lives in Project.Server for access to the package-private room API.
+ */
+public class RoomListBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation(File.createTempFile("room-list-bench", ".log").getPath());
+        config.setConsoleLogLevel(Level.WARNING);
+        config.setFileLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(config);
+        Server server = Server.INSTANCE;
+        int created = 0;
+        for (int rooms : new int[] { 100, 1_000, 10_000, 100_000 }) {
+            while (created < rooms) {
+                server.createRoom("Room-" + created++);
+            }
+            String one = "room-" + (rooms / 2);
+            Bench.run("any, " + rooms + " rooms", () -> Bench.consume(server.listRooms("", null, 10)));
+            Bench.run("one, " + rooms + " rooms", () -> Bench.consume(server.listRooms(one, null, 10)));
+            Bench.run("none, " + rooms + " rooms",
+                    () -> Bench.consume(server.listRooms("no such room", null, 10)));
+            Bench.run("next page, " + rooms + " rooms", () -> Bench.consume(server.listRooms("", one, 10)));
+            Bench.run("short none, " + rooms + " rooms", () -> Bench.consume(server.listRooms("zz", null, 10)));
+        }
+        Bench.save("RoomListBenchmark");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,168 @@
+package Project.Server;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import Project.Common.LoggerUtil;
+
+/**
+ * Chat throughput across many concurrent rooms.
+ * <p>
+ * Reader threads post MESSAGE payloads to random rooms; each room fans every
+ * message out to its members. Members are {@link SinkClient}s that count
+ * deliveries instead of writing to a socket, so this measures room dispatch
+ * only. "mailbox" is the actor design (post and return); "locked" emulates
+ * the previous design, where the reader thread relayed while holding a
+ * per-room lock. Besides end-to-end throughput it reports the CPU time a
+ * reader thread spends per message, i.e. how long a client's reader is kept
+ * from reading its next payload.
+ * </p>
+ * Lives in Project.Server for access to the package-private room API.
+ */
+public class RoomThroughputBenchmark {
+    private static final int MEMBERS = 8;
+    private static final int PRODUCERS = 8;
+    private static final int MESSAGES = 400_000;
+
+    /**
+     * Room member that counts deliveries
+     */
+    private static class SinkClient extends ServerThread {
+        private final LongAdder delivered;
+
+        private SinkClient(long id, LongAdder delivered) {
+            super(new Socket(), client -> {
+            });
+            this.delivered = delivered;
+            setClientId(id);
+        }
+
+        @Override
+        protected void info(String message) {
+            // silent
+        }
+
+        @Override
+        protected boolean sendToClient(EncodedPayload encoded) {
+            delivered.increment();
+            return true;
+        }
+    }
+
+    /**
+     * Outcome of one configuration
+     */
+    private static class Result {
+        private final double messagesPerSecond;
+        private final double readerNanosPerMessage;
+
+        private Result(double messagesPerSecond, double readerNanosPerMessage) {
+            this.messagesPerSecond = messagesPerSecond;
+            this.readerNanosPerMessage = readerNanosPerMessage;
+        }
+    }
+
+    private static Result run(String mode, int roomCount, int workerCount) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "BenchRoomWorker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LongAdder delivered = new LongAdder();
+        List<Room> rooms = new ArrayList<>();
+        List<ReentrantLock> locks = new ArrayList<>();
+        List<SinkClient[]> members = new ArrayList<>();
+        long nextId = 1;
+        for (int r = 0; r < roomCount; r++) {
+            Room room = new Room("bench-" + r, workers);
+            SinkClient[] clients = new SinkClient[MEMBERS];
+            for (int m = 0; m < MEMBERS; m++) {
+                clients[m] = new SinkClient(nextId++, delivered);
+                room.addClient(clients[m]);
+            }
+            rooms.add(room);
+            locks.add(new ReentrantLock());
+            members.add(clients);
+        }
+        // wait for the joins (and their own broadcasts) to finish
+        for (Room room : rooms) {
+            while (room.getMailbox().size() > 0) {
+                Thread.onSpinWait();
+            }
+        }
+        Thread.sleep(100);
+        long base = delivered.sum();
+        long expected = base + (long) MESSAGES * MEMBERS;
+        boolean locked = mode.equals("locked");
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        LongAdder readerCpuNanos = new LongAdder();
+        Thread[] producers = new Thread[PRODUCERS];
+        long start = System.nanoTime();
+        for (int p = 0; p < PRODUCERS; p++) {
+            producers[p] = new Thread(() -> {
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < MESSAGES / PRODUCERS; i++) {
+                    int r = random.nextInt(roomCount);
+                    Room room = rooms.get(r);
+                    SinkClient sender = members.get(r)[random.nextInt(MEMBERS)];
+                    if (locked) {
+                        ReentrantLock lock = locks.get(r);
+                        lock.lock();
+                        try {
+                            room.relay(sender, "hello everyone");
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else {
+                        room.handleMessage(sender, "hello everyone");
+                    }
+                }
+                readerCpuNanos.add(threads.getCurrentThreadCpuTime() - cpuStart);
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        while (delivered.sum() < expected) {
+            Thread.onSpinWait();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+        return new Result(MESSAGES / seconds, readerCpuNanos.sum() / (double) MESSAGES);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation(File.createTempFile("room-bench", ".log").getPath());
+        config.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(config);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] roomCounts = { 1, 16, 256, 4096 };
+        System.out.printf("%d producers, %d members per room, %d messages, %d cores%n", PRODUCERS, MEMBERS, MESSAGES,
+                cores);
+        System.out.printf("%-8s %8s %8s %14s %16s %16s%n", "mode", "rooms", "workers", "messages/s", "deliveries/s",
+                "reader ns/msg");
+        for (int rooms : roomCounts) {
+            for (String mode : new String[] { "locked", "mailbox" }) {
+                // warm up, then measure
+                run(mode, rooms, cores);
+                Result result = run(mode, rooms, cores);
+                System.out.printf("%-8s %8d %8d %,14.0f %,16.0f %,16.0f%n", mode, rooms, cores,
+                        result.messagesPerSecond, result.messagesPerSecond * MEMBERS, result.readerNanosPerMessage);
+            }
+        }
+    }
+}
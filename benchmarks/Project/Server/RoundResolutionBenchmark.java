@@ -0,0 +1,128 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import Project.Benchmarks.Bench;
+import Project.Common.User;
+
+/**
+ * Scoring a round, the work behind GameSession.resolveBattles.
+ * <p>
+ * "pairwise" plays every pair with {@link RuleSet#compare}, the way rounds
+ * were scored before {@link RoundResolver}; "resolver" groups players by
+ * pick. Both run on the same players, about 1 in 20 of whom missed the pick.
+ * "ratings" is the {@link Ratings} update that follows, against a table that
+ * already holds a million players.
+ * </p>
+ * Lives in Project.Server because PlayerState and the resolver are server
+ * internals.
+ */
+public class RoundResolutionBenchmark {
+    private static final int[] PLAYER_COUNTS = { 3, 30, 300, 3000, 30000 };
+    // past this the O(n^2) version takes seconds per iteration
+    private static final int MAX_PAIRWISE_PLAYERS = 3000;
+
+    private static final int RATED_PLAYERS = 1_000_000;
+
+    /**
+     * A player with a name, for the ratings
+     */
+    private static class NamedPlayer implements GamePlayer {
+        private final String name;
+
+        private NamedPlayer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public long getClientId() {
+            return 0;
+        }
+
+        @Override
+        public String getClientName() {
+            return name;
+        }
+
+        @Override
+        public User getUser() {
+            return null;
+        }
+
+        @Override
+        public boolean isSpectator() {
+            return false;
+        }
+
+        @Override
+        public boolean sendMessage(long clientId, String message) {
+            return true;
+        }
+    }
+
+    private static List<PlayerState> players(int count, RuleSet rules, Random random) {
+        List<PlayerState> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PlayerState player = new PlayerState(new NamedPlayer("player" + random.nextInt(RATED_PLAYERS)));
+            player.setPick(random.nextInt(20) == 0 ? RuleSet.NO_PICK : random.nextInt(rules.size()));
+            players.add(player);
+        }
+        return players;
+    }
+
+    private static long pairwise(List<PlayerState> players, RuleSet rules) {
+        long points = 0;
+        for (int i = 0; i < players.size(); i++) {
+            int pick = players.get(i).getPick();
+            for (int j = i + 1; j < players.size(); j++) {
+                points += rules.compare(pick, players.get(j).getPick());
+            }
+        }
+        return points;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        Ratings ratings = new Ratings();
+        List<PlayerState> everyone = new ArrayList<>();
+        for (int i = 0; i < RATED_PLAYERS; i++) {
+            PlayerState player = new PlayerState(new NamedPlayer("player" + i));
+            player.setPick(random.nextInt(RuleSet.CLASSIC.size()));
+            everyone.add(player);
+            if (everyone.size() == 2) {
+                ratings.recordRound(everyone, RuleSet.CLASSIC);
+                everyone.clear();
+            }
+        }
+        for (RuleSet rules : new RuleSet[] { RuleSet.CLASSIC, RuleSet.LIZARD_SPOCK }) {
+            int size = rules.size();
+            Bench.run("compare all pairs, " + rules.getName(), () -> {
+                long sum = 0;
+                for (int a = 0; a < size; a++) {
+                    for (int b = 0; b < size; b++) {
+                        sum += rules.compare(a, b);
+                    }
+                }
+                Bench.consume(sum);
+            });
+            for (int count : PLAYER_COUNTS) {
+                List<PlayerState> players = players(count, rules, random);
+                if (count <= MAX_PAIRWISE_PLAYERS) {
+                    Bench.run("pairwise, " + count + " players, " + rules.getName(),
+                            () -> Bench.consume(pairwise(players, rules)));
+                }
+                Bench.run("resolver, " + count + " players, " + rules.getName(), () -> {
+                    RoundResolver resolver = new RoundResolver(players, rules);
+                    resolver.applyPoints();
+                    Bench.consume(resolver);
+                });
+                Bench.run("ratings, " + count + " players, " + rules.getName(), () -> {
+                    ratings.recordRound(players, rules);
+                    Bench.consume(ratings);
+                });
+            }
+        }
+        Bench.save("RoundResolutionBenchmark");
+    }
+}
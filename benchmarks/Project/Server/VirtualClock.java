@@ -0,0 +1,91 @@
+package Project.Server;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GameClock} that only moves when it's told to.
+ * <p>
+ * Tasks wait in a queue ordered by due time, then by scheduling order, and
+ * run on the caller's thread from {@link #runNext}. Time jumps straight to
+ * the next due task, so a 30 second round timer costs nothing to wait for,
+ * and the same schedule always runs in the same order.
+ * </p>
+ */
+public class VirtualClock implements GameClock {
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private final long epochMillis;
+    private long nanos = 0;
+    private long sequence = 0;
+
+    private static final class Task implements GameClock.Timer, Comparable<Task> {
+        private final Runnable task;
+        private final long due;
+        private final long sequence;
+        private boolean cancelled;
+
+        private Task(Runnable task, long due, long sequence) {
+            this.task = task;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * @param epochMillis wall clock time at virtual time zero
+     */
+    public VirtualClock(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    @Override
+    public GameClock.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        Task scheduled = new Task(task, nanos + Math.max(0, unit.toNanos(delay)), sequence++);
+        queue.add(scheduled);
+        return scheduled;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return epochMillis + TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return virtual nanos since time zero
+     */
+    public long nanoTime() {
+        return nanos;
+    }
+
+    /**
+     * Moves time to the next task that wasn't cancelled and runs it
+     *
+     * @return false if nothing was left to run
+     */
+    public boolean runNext() {
+        Task next;
+        while ((next = queue.poll()) != null) {
+            if (!next.cancelled) {
+                nanos = next.due;
+                next.task.run();
+                return true;
+            }
+        }
+        return false;
+    }
+}